@@ -8,6 +8,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -62,13 +63,17 @@ class DpkgDebAnalyst implements DebAnalyst {
                     .arg(debFile.getAbsolutePath())
                     .arg(destination.toString())
                     .build();
-            ProcessResult<String, String> presult;
+            DpkgDebEvent event = new DpkgDebEvent();
+            event.begin();
+            ProcessResult<String, String> presult = null;
             try (ScopedProcessTracker tracker = new ScopedProcessTracker()) {
                 presult = s.launcher(tracker)
                         .outputStrings(Charset.defaultCharset())
                         .launch().await(30, TimeUnit.SECONDS);
             } catch (TimeoutException | InterruptedException e) {
                 throw new RuntimeException("failed to await result of dpkg --extract", e);
+            } finally {
+                commit(event, "dpkg", Arrays.asList("--extract", debFile.getAbsolutePath()), presult);
             }
             if (presult.exitCode() != 0) {
                 throw new IOException(String.format("exit code %s from dpkg --extract: %s", presult.exitCode(), presult.content().stderr()));
@@ -194,6 +199,16 @@ class DpkgDebAnalyst implements DebAnalyst {
         }
     }
 
+    private static void commit(DpkgDebEvent event, String executable, List<String> args, @Nullable ProcessResult<?, ?> result) {
+        event.end();
+        // the command line is formatted only if a recording wants the event
+        if (event.shouldCommit()) {
+            event.command = executable + " " + String.join(" ", args);
+            event.exitCode = result == null ? -1 : result.exitCode();
+            event.commit();
+        }
+    }
+
     private static class DpkgDebLoader<T> implements Callable<T> {
 
         private final List<String> args;
@@ -206,8 +221,11 @@ class DpkgDebAnalyst implements DebAnalyst {
 
         @Override
         public T call() throws DebUtilsException {
+            DpkgDebEvent event = new DpkgDebEvent();
+            event.begin();
+            ProcessResult<String, String> result = null;
             try (ScopedProcessTracker processTracker = new ScopedProcessTracker()) {
-                ProcessResult<String, String> result = Subprocess.running("dpkg-deb")
+                result = Subprocess.running("dpkg-deb")
                         .args(args)
                         .build()
                         .launcher(processTracker)
@@ -217,6 +235,8 @@ class DpkgDebAnalyst implements DebAnalyst {
                 return transform.apply(result);
             } catch (InterruptedException | RuntimeException e) {
                 throw new DpkgDebException(e);
+            } finally {
+                commit(event, "dpkg-deb", args, result);
             }
         }
 
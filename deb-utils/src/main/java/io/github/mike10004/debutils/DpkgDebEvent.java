@@ -0,0 +1,24 @@
+package io.github.mike10004.debutils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a run of {@code dpkg-deb} or {@code dpkg} by {@link DpkgDebAnalyst}.
+ */
+@Name("io.github.mike10004.debutils.DpkgDeb")
+@Label("Package Analysis")
+@Category({"Debian Maven Plugin"})
+@Description("A query of a Debian package file")
+class DpkgDebEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Exit Code")
+    @Description("Exit code of the process, or -1 if it did not finish")
+    int exitCode;
+}
@@ -1,6 +1,9 @@
 package io.github.mike10004.debutils;
 
 import com.google.common.io.Files;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -50,6 +53,25 @@ public class DebAnalystTest {
         assertEquals("bin dir", binDir.getEntryType(), DebEntryType.DIRECTORY);
     }
 
+    @Test
+    public void flightRecorderEvent() throws Exception {
+        File debFile = Tests.getGnuHelloDeb();
+        Path recordingFile = temporaryFolder.newFile("dpkg-deb.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(DpkgDebEvent.class);
+            recording.start();
+            DebAnalyst.createNew(debFile).info();
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals("io.github.mike10004.debutils.DpkgDeb"))
+                .collect(Collectors.toList());
+        assertEquals("events", 1, events.size());
+        assertEquals("command", "dpkg-deb --info " + debFile.getAbsolutePath(), events.get(0).getString("command"));
+        assertEquals("exit code", 0, events.get(0).getInt("exitCode"));
+    }
+
     @Test
     public void extract() throws Exception {
         File debFile = new File(getClass().getResource("/hello_2.10-1build1_amd64.deb").toURI());
@@ -0,0 +1,53 @@
+package io.github.mike10004.debianmaven;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ordering of control file lines. The generated fields of a control
+ * file are followed by configured lines, a quarter of which must follow
+ * another field.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ControlFileLineBenchmark {
+
+    private static final String[] KNOWN_FIELDS = {
+            "Package", "Version", "Section", "Priority", "Architecture", "Depends",
+            "Conflicts", "Installed-Size", "Maintainer", "Homepage", "Description",
+    };
+
+    @Param({"16", "256"})
+    public int configuredLineCount;
+
+    private List<ControlFileLine> lines;
+
+    @Setup(Level.Trial)
+    public void createLines() {
+        lines = new ArrayList<>();
+        for (String field : KNOWN_FIELDS) {
+            lines.add(new ControlFileLine(field, "value of " + field, null));
+        }
+        for (int i = 0; i < configuredLineCount; i++) {
+            String after = i % 4 == 0 ? KNOWN_FIELDS[i % KNOWN_FIELDS.length] : null;
+            lines.add(new ControlFileLine("X-Field-" + i, "value " + i, after));
+        }
+    }
+
+    @Benchmark
+    public List<ControlFileLine> sorted() {
+        return ControlFileLine.sorted(lines);
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.mike10004.debianmaven;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of a links file. One line in ten is a comment or blank,
+ * and one in twenty has quoted pathnames that contain spaces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DefaultLinksLineParserBenchmark {
+
+    @Param({"10000"})
+    public int lineCount;
+
+    private List<String> lines;
+    private DefaultLinksLineParser parser;
+
+    @Setup(Level.Trial)
+    public void createLines() {
+        lines = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            if (i % 20 == 0) {
+                lines.add("# links for group " + i);
+            } else if (i % 20 == 10) {
+                lines.add("");
+            } else if (i % 20 == 5) {
+                lines.add("\"/usr/share/foo/My Documents/file " + i + ".txt\" \"/usr/share/doc/foo/file " + i + ".txt\"");
+            } else {
+                lines.add("/usr/share/foo/lib/lib" + i + ".jar\t/usr/lib/foo/lib" + i + ".jar");
+            }
+        }
+        parser = new DefaultLinksLineParser();
+    }
+
+    @Benchmark
+    public void parseSpecification(Blackhole blackhole) throws LinksLineParser.InvalidLinkSpecificationException {
+        for (String line : lines) {
+            blackhole.consume(parser.parseSpecification(line));
+        }
+    }
+}
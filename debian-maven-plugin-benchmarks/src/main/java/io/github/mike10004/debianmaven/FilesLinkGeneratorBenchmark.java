@@ -0,0 +1,99 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the computation of link targets and the creation of links for a
+ * links file with many entries, such as one that links every library of an
+ * application into a shared directory. Links are created by a symlinker that
+ * does nothing, so that the benchmark measures the path arithmetic and the
+ * checks for parent directories rather than the cost of the system calls.
+ * The {@code generateLinks} benchmark also reads and parses the links file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FilesLinkGeneratorBenchmark {
+
+    @Param({"10000"})
+    public int linkCount;
+
+    private List<LinkSpecification> specifications;
+    private FilesLinkGenerator generator;
+    private Path stageDir;
+    private File linksFile;
+
+    @Setup(Level.Trial)
+    public void createSpecifications() throws IOException {
+        specifications = new ArrayList<>(linkCount);
+        for (int i = 0; i < linkCount; i++) {
+            switch (i % 4) {
+                case 0:
+                    specifications.add(new LinkSpecification("/usr/share/foo/lib/lib" + i + ".jar", "/usr/lib/foo/group" + (i % 100) + "/lib" + i + ".jar"));
+                    break;
+                case 1:
+                    specifications.add(new LinkSpecification("/usr/share/foo/bin/tool" + i, "/usr/bin/tool" + i));
+                    break;
+                case 2:
+                    specifications.add(new LinkSpecification("/etc/foo/conf.d/" + i + ".conf", "/usr/share/foo/conf/" + i + ".conf"));
+                    break;
+                default:
+                    specifications.add(new LinkSpecification("/usr/share/doc/foo/changelog" + i + ".gz", "/usr/share/doc/foo-common/changelog" + i + ".gz"));
+                    break;
+            }
+        }
+        generator = new FilesLinkGenerator(new DefaultLinksLineParser(), (source, link, attrs) -> {}, StandardCharsets.UTF_8);
+        stageDir = java.nio.file.Files.createTempDirectory("files-link-generator-benchmark");
+        StringBuilder text = new StringBuilder(linkCount * 80);
+        for (LinkSpecification specification : specifications) {
+            text.append(specification.sourcePath()).append(' ').append(specification.linkPath()).append('\n');
+        }
+        linksFile = java.nio.file.Files.createTempFile("files-link-generator-benchmark", ".links").toFile();
+        java.nio.file.Files.writeString(linksFile.toPath(), text, StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStage() throws IOException {
+        FileUtils.deleteDirectory(stageDir.toFile());
+        java.nio.file.Files.deleteIfExists(linksFile.toPath());
+    }
+
+    @Benchmark
+    public void relativizeSourcePath(Blackhole blackhole) throws IOException, MojoExecutionException {
+        for (LinkSpecification specification : specifications) {
+            blackhole.consume(generator.relativizeSourcePath(specification.sourcePath(), specification.linkPath()));
+        }
+    }
+
+    @Benchmark
+    public void createLink() throws IOException, MojoExecutionException {
+        for (LinkSpecification specification : specifications) {
+            generator.createLink(specification.sourcePath(), specification.linkPath(), stageDir);
+        }
+    }
+
+    @Benchmark
+    public void generateLinks() throws IOException, MojoExecutionException {
+        generator.generateLinks(new File[]{linksFile}, stageDir);
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.mike10004.debianmaven;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Builds a package from each {@link ScalingScenario synthetic stage tree} and records
+ * the wall time, peak resident set size and bytes read of the build. Each build runs
+ * in a new JVM (see {@link ScalingRun}). The results are written as JSON and compared
+ * with a baseline in the same format; the benchmark exits with status 1 if a measurement
+ * exceeds its baseline by more than the tolerance.
+ *
+ * <p>
+ * Arguments are the work directory, the result file and the baseline file. System properties:
+ * <ul>
+ *     <li>{@code scaling.scenarios}: comma-separated names of the scenarios to run; all by default</li>
+ *     <li>{@code scaling.maxFiles}: largest file count of a scenario to run; 100000 by default</li>
+ *     <li>{@code scaling.tolerance}: allowed increase relative to the baseline; 0.25 by default</li>
+ *     <li>{@code scaling.updateBaseline}: if true, the results of the scenarios replace those in the baseline</li>
+ *     <li>{@code scaling.jvmArgs}: options of the JVM that runs each build</li>
+ *     <li>{@code scaling.archiver} and {@code scaling.compression}: passed to the build</li>
+ * </ul>
+ * Scenarios with manual pages are skipped if {@code groff} is not installed.
+ * Baselines depend on the machine, so a baseline should be updated on the machine where it is compared.
+ */
+public class ScalingBenchmark {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("usage: ScalingBenchmark WORK_DIR RESULT_FILE BASELINE_FILE");
+            System.exit(1);
+        }
+        Path workDir = Paths.get(args[0]);
+        Path resultFile = Paths.get(args[1]);
+        Path baselineFile = Paths.get(args[2]);
+        List<ScalingScenario> scenarios = ScalingScenario.select(System.getProperty("scaling.scenarios"), Long.getLong("scaling.maxFiles", 100_000));
+        double tolerance = Double.parseDouble(System.getProperty("scaling.tolerance", "0.25"));
+        Results results = new Results();
+        for (ScalingScenario scenario : scenarios) {
+            if (scenario.getManPageCount() > 0 && !isOnPath("groff")) {
+                System.out.println("Skipping scenario " + scenario.getName() + " because groff is not installed");
+                continue;
+            }
+            Result result = run(scenario, workDir.resolve(scenario.getName()));
+            System.out.format(Locale.ROOT, "%-14s %8d files %9d ms %9d KiB peak RSS %14d bytes read%n",
+                    result.name, result.fileCount, result.measurement.wallMillis, result.measurement.peakRssKb, result.measurement.bytesRead);
+            results.scenarios.add(result);
+        }
+        write(results, resultFile);
+        Results baseline = java.nio.file.Files.isRegularFile(baselineFile) ? read(baselineFile) : new Results();
+        if (Boolean.getBoolean("scaling.updateBaseline")) {
+            write(baseline.update(results), baselineFile);
+            System.out.println("Updated baseline " + baselineFile);
+            return;
+        }
+        List<String> regressions = compare(results, baseline, tolerance);
+        regressions.forEach(System.out::println);
+        if (!regressions.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    private static Result run(ScalingScenario scenario, Path scenarioDir) throws IOException, InterruptedException {
+        FileUtils.deleteDirectory(scenarioDir.toFile());
+        Path stageDir = scenarioDir.resolve("target/deb");
+        Path sourceDir = scenarioDir.resolve("src/deb");
+        Path measurementFile = scenarioDir.resolve("measurement.json");
+        Result result = new Result();
+        result.name = scenario.getName();
+        result.fileCount = scenario.getFileCount();
+        result.stageBytes = new StageTreeGenerator(scenario).generate(stageDir, sourceDir);
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : System.getProperty("scaling.jvmArgs", "").trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                cmd.add(option);
+            }
+        }
+        for (String property : new String[]{"scaling.archiver", "scaling.compression"}) {
+            String value = System.getProperty(property);
+            if (value != null && !value.isEmpty()) {
+                cmd.add("-D" + property + "=" + value);
+            }
+        }
+        cmd.add("-classpath");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(ScalingRun.class.getName());
+        cmd.add(stageDir.toString());
+        cmd.add(sourceDir.toString());
+        cmd.add(scenarioDir.resolve("target").toString());
+        cmd.add(measurementFile.toString());
+        Path logFile = scenarioDir.resolve("build.log");
+        int exitCode = new ProcessBuilder(cmd)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile.toFile())
+                .start()
+                .waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("build of scenario " + scenario.getName() + " exited with status " + exitCode + "; see " + logFile);
+        }
+        result.measurement = GSON.fromJson(java.nio.file.Files.readString(measurementFile, StandardCharsets.UTF_8), ScalingRun.Measurement.class);
+        // the tree of a large scenario takes gigabytes; the log, report and measurement are kept
+        FileUtils.deleteDirectory(stageDir.toFile());
+        FileUtils.deleteDirectory(sourceDir.toFile());
+        return result;
+    }
+
+    private static boolean isOnPath(String executable) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            if (java.nio.file.Files.isExecutable(Paths.get(dir, executable))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares results with a baseline. Scenarios or measurements missing from
+     * the baseline are not compared.
+     * @param results the results
+     * @param baseline the baseline
+     * @param tolerance allowed increase, relative to the baseline
+     * @return descriptions of the regressions
+     */
+    static List<String> compare(Results results, Results baseline, double tolerance) {
+        Map<String, Result> baselines = baseline.byName();
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results.scenarios) {
+            Result expected = baselines.get(result.name);
+            if (expected == null) {
+                System.out.println("No baseline for scenario " + result.name);
+                continue;
+            }
+            check(regressions, result.name, "wallMillis", result.measurement.wallMillis, expected.measurement.wallMillis, tolerance);
+            check(regressions, result.name, "peakRssKb", result.measurement.peakRssKb, expected.measurement.peakRssKb, tolerance);
+            check(regressions, result.name, "bytesRead", result.measurement.bytesRead, expected.measurement.bytesRead, tolerance);
+        }
+        return regressions;
+    }
+
+    private static void check(List<String> regressions, String scenario, String name, long actual, long expected, double tolerance) {
+        if (actual < 0 || expected <= 0) {
+            return;
+        }
+        double limit = expected * (1 + tolerance);
+        if (actual > limit) {
+            regressions.add(String.format(Locale.ROOT, "Regression in scenario %s: %s is %d, baseline %d (limit %.0f)", scenario, name, actual, expected, limit));
+        }
+    }
+
+    private static Results read(Path file) throws IOException {
+        return GSON.fromJson(java.nio.file.Files.readString(file, StandardCharsets.UTF_8), Results.class);
+    }
+
+    private static void write(Results results, Path file) throws IOException {
+        java.nio.file.Files.createDirectories(file.toAbsolutePath().getParent());
+        java.nio.file.Files.writeString(file, GSON.toJson(results), StandardCharsets.UTF_8);
+    }
+
+    static class Results {
+
+        List<Result> scenarios = new ArrayList<>();
+
+        public Map<String, Result> byName() {
+            Map<String, Result> byName = new LinkedHashMap<>();
+            scenarios.forEach(result -> byName.put(result.name, result));
+            return byName;
+        }
+
+        /**
+         * Replaces the results of the scenarios that were run, and keeps the others.
+         * @param newer results of the scenarios that were run
+         * @return the updated results
+         */
+        public Results update(Results newer) {
+            Map<String, Result> byName = byName();
+            newer.scenarios.forEach(result -> byName.put(result.name, result));
+            Results updated = new Results();
+            updated.scenarios.addAll(byName.values());
+            return updated;
+        }
+    }
+
+    static class Result {
+
+        String name;
+        int fileCount;
+        long stageBytes;
+        ScalingRun.Measurement measurement;
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.mike10004.debianmaven;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Runs the package goal once against a generated stage tree. The {@link ScalingBenchmark}
+ * runs each scenario in a new JVM with this class as the main class, so that the
+ * peak resident set size is that of a single build. Writes a {@link Measurement} as
+ * JSON to the file named by the last argument.
+ *
+ * <p>
+ * The archiver and the compression are taken from the {@code scaling.archiver} and
+ * {@code scaling.compression} system properties, and default to those of the goal.
+ */
+public class ScalingRun {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4) {
+            System.err.println("usage: ScalingRun STAGE_DIR SOURCE_DIR TARGET_DIR RESULT_FILE");
+            System.exit(1);
+        }
+        PackageMojo mojo = new PackageMojo();
+        mojo.setPackageVersion("1.0");
+        mojo.packageName = "scaling";
+        mojo.packageRevision = "1";
+        mojo.packageArchitecture = "all";
+        mojo.maintainerName = "Scaling Benchmark";
+        mojo.maintainerEmail = "scaling@example.com";
+        mojo.packageTitle = "scaling";
+        mojo.packageDescription = "synthetic package built by the scaling benchmark";
+        mojo.packagePriority = "optional";
+        mojo.packageSection = "misc";
+        mojo.stageDir = new File(args[0]);
+        mojo.sourceDir = new File(args[1]);
+        mojo.targetDir = new File(args[2]);
+        mojo.archiver = System.getProperty("scaling.archiver");
+        mojo.compression = System.getProperty("scaling.compression");
+        resetPeakResidentSetSize();
+        ProcessIo before = ProcessIo.read();
+        long start = System.nanoTime();
+        mojo.executeDebMojo();
+        Measurement measurement = new Measurement();
+        measurement.wallMillis = (System.nanoTime() - start) / 1_000_000;
+        measurement.peakRssKb = readPeakResidentSetSize();
+        ProcessIo after = ProcessIo.read();
+        measurement.bytesRead = after.rchar < 0 ? -1 : after.rchar - before.rchar;
+        measurement.storageBytesRead = after.readBytes < 0 ? -1 : after.readBytes - before.readBytes;
+        measurement.packageBytes = mojo.getPackageFile().length();
+        java.nio.file.Files.writeString(Paths.get(args[3]), new Gson().toJson(measurement), StandardCharsets.UTF_8);
+        System.exit(0);
+    }
+
+    /**
+     * Resets the peak resident set size to the current size, so that the peak
+     * measures the build rather than the startup of the JVM. Linux only.
+     */
+    private static void resetPeakResidentSetSize() {
+        try {
+            java.nio.file.Files.writeString(Paths.get("/proc/self/clear_refs"), "5");
+        } catch (IOException | UnsupportedOperationException ignore) {
+            // the peak then includes the startup of the JVM
+        }
+    }
+
+    private static long readPeakResidentSetSize() throws IOException {
+        return readProcField(Paths.get("/proc/self/status"), "VmHWM");
+    }
+
+    private static long readProcField(Path file, String name) throws IOException {
+        if (!java.nio.file.Files.isReadable(file)) {
+            return -1;
+        }
+        List<String> lines = java.nio.file.Files.readAllLines(file, StandardCharsets.US_ASCII);
+        for (String line : lines) {
+            if (line.startsWith(name + ":")) {
+                String value = line.substring(name.length() + 1).trim();
+                int space = value.indexOf(' ');
+                return Long.parseLong(space < 0 ? value : value.substring(0, space));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Bytes read by the JVM and by the subprocesses it has waited for, from {@code /proc/self/io}.
+     */
+    private static class ProcessIo {
+
+        public final long rchar;
+        public final long readBytes;
+
+        private ProcessIo(long rchar, long readBytes) {
+            this.rchar = rchar;
+            this.readBytes = readBytes;
+        }
+
+        public static ProcessIo read() throws IOException {
+            Path file = Paths.get("/proc/self/io");
+            return new ProcessIo(readProcField(file, "rchar"), readProcField(file, "read_bytes"));
+        }
+    }
+
+    /**
+     * Resources used by one build. Values that cannot be measured on this platform are -1.
+     */
+    public static class Measurement {
+
+        /** Wall time of the goal in milliseconds. */
+        public long wallMillis;
+
+        /** Peak resident set size of the JVM in KiB, excluding subprocesses such as {@code dpkg-deb}. */
+        public long peakRssKb;
+
+        /** Bytes read with system calls, including reads satisfied by the page cache. */
+        public long bytesRead;
+
+        /** Bytes fetched from storage. */
+        public long storageBytesRead;
+
+        /** Size of the package file. */
+        public long packageBytes;
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.mike10004.debianmaven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Shape of a synthetic stage tree built by the scaling benchmark: how many files
+ * it holds, how large they are, what fraction of the entries are symlinks, and
+ * how many conffiles and manual pages the package has.
+ */
+public class ScalingScenario {
+
+    /**
+     * Distribution of the sizes of regular files.
+     */
+    public enum SizeDistribution {
+
+        /** Between 256 bytes and 4 KiB, like scripts, resources and documentation. */
+        SMALL {
+            @Override
+            public int nextSize(Random random) {
+                return 256 + random.nextInt(4096 - 256);
+            }
+        },
+
+        /** Mostly small files with one in twenty between 64 KiB and 1 MiB, like an application with its libraries. */
+        MIXED {
+            @Override
+            public int nextSize(Random random) {
+                if (random.nextInt(20) == 0) {
+                    return 64 * 1024 + random.nextInt(960 * 1024);
+                }
+                return SMALL.nextSize(random);
+            }
+        },
+
+        /** Between 64 KiB and 1 MiB, like native libraries and data files. */
+        LARGE {
+            @Override
+            public int nextSize(Random random) {
+                return 64 * 1024 + random.nextInt(960 * 1024);
+            }
+        };
+
+        public abstract int nextSize(Random random);
+    }
+
+    private final String name;
+    private final int fileCount;
+    private final SizeDistribution sizes;
+    private final double symlinkFraction;
+    private final int conffileCount;
+    private final int manPageCount;
+
+    public ScalingScenario(String name, int fileCount, SizeDistribution sizes, double symlinkFraction, int conffileCount, int manPageCount) {
+        this.name = requireNonNull(name, "name");
+        this.sizes = requireNonNull(sizes, "sizes");
+        if (fileCount < 1 || conffileCount < 0 || manPageCount < 0) {
+            throw new IllegalArgumentException("counts must be nonnegative and fileCount positive");
+        }
+        if (symlinkFraction < 0 || symlinkFraction >= 1) {
+            throw new IllegalArgumentException("symlinkFraction must be in [0, 1): " + symlinkFraction);
+        }
+        this.fileCount = fileCount;
+        this.symlinkFraction = symlinkFraction;
+        this.conffileCount = conffileCount;
+        this.manPageCount = manPageCount;
+    }
+
+    /**
+     * Gets the scenarios that are run by default, ordered by file count.
+     * Scenarios with manual pages need {@code groff}.
+     * @return the default scenarios
+     */
+    public static List<ScalingScenario> defaults() {
+        return Arrays.asList(
+                new ScalingScenario("files-1k", 1_000, SizeDistribution.MIXED, 0.05, 10, 0),
+                new ScalingScenario("large-1k", 1_000, SizeDistribution.LARGE, 0, 0, 0),
+                new ScalingScenario("manpages-1k", 1_000, SizeDistribution.SMALL, 0, 0, 200),
+                new ScalingScenario("files-10k", 10_000, SizeDistribution.MIXED, 0.05, 10, 0),
+                new ScalingScenario("symlinks-10k", 10_000, SizeDistribution.SMALL, 0.5, 0, 0),
+                new ScalingScenario("conffiles-10k", 10_000, SizeDistribution.SMALL, 0, 2_000, 0),
+                new ScalingScenario("files-100k", 100_000, SizeDistribution.MIXED, 0.05, 10, 0),
+                new ScalingScenario("files-1m", 1_000_000, SizeDistribution.SMALL, 0.05, 10, 0));
+    }
+
+    /**
+     * Selects scenarios from the {@link #defaults() defaults}.
+     * @param names comma-separated names of scenarios, or empty or null for all of them
+     * @param maxFiles maximum file count of a selected scenario
+     * @return the selected scenarios
+     */
+    public static List<ScalingScenario> select(String names, long maxFiles) {
+        Set<String> wanted = new LinkedHashSet<>();
+        if (names != null) {
+            for (String name : names.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    wanted.add(name.trim());
+                }
+            }
+        }
+        Set<String> unknown = new LinkedHashSet<>(wanted);
+        List<ScalingScenario> selected = new ArrayList<>();
+        for (ScalingScenario scenario : defaults()) {
+            unknown.remove(scenario.getName());
+            if ((wanted.isEmpty() || wanted.contains(scenario.getName())) && scenario.getFileCount() <= maxFiles) {
+                selected.add(scenario);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("unknown scenarios: " + unknown);
+        }
+        return selected;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public SizeDistribution getSizes() {
+        return sizes;
+    }
+
+    public double getSymlinkFraction() {
+        return symlinkFraction;
+    }
+
+    public int getConffileCount() {
+        return conffileCount;
+    }
+
+    public int getManPageCount() {
+        return manPageCount;
+    }
+
+    @Override
+    public String toString() {
+        return ScalingScenario.class.getSimpleName() + "{name=" + name + ", fileCount=" + fileCount + ", sizes=" + sizes
+                + ", symlinkFraction=" + symlinkFraction + ", conffileCount=" + conffileCount + ", manPageCount=" + manPageCount + "}";
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures hashing of a stage directory, as done to generate {@code md5sums}.
+ * The stage holds files of 1 to 64 KiB in nested directories, which is typical
+ * of a Java application with its libraries and resources. The files are read
+ * from the page cache after the first invocation, so the benchmark measures
+ * the CPU cost of hashing rather than disk throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StageDigesterBenchmark {
+
+    @Param({"2000"})
+    public int fileCount;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Path stageDir;
+    private StageManifest manifest;
+
+    @Setup(Level.Trial)
+    public void createStage() throws IOException {
+        stageDir = java.nio.file.Files.createTempDirectory("stage-digester-benchmark");
+        Random random = new Random(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            Path file = stageDir.resolve(String.format("usr/share/foo/lib%d/file%d.dat", i % 50, i));
+            java.nio.file.Files.createDirectories(file.getParent());
+            byte[] content = new byte[1024 + random.nextInt(63 * 1024)];
+            random.nextBytes(content);
+            java.nio.file.Files.write(file, content);
+        }
+        manifest = StageManifest.scan(stageDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStage() throws IOException {
+        FileUtils.deleteDirectory(stageDir.toFile());
+    }
+
+    @Benchmark
+    public Map<String, String> md5() throws IOException {
+        return new StageDigester(parallelism).digest(manifest);
+    }
+
+    @Benchmark
+    public Map<DigestAlgorithm, Map<String, String>> md5AndSha256() throws IOException {
+        Map<DigestAlgorithm, DigestCache> caches = new EnumMap<>(DigestAlgorithm.class);
+        caches.put(DigestAlgorithm.MD5, DigestCache.empty());
+        caches.put(DigestAlgorithm.SHA256, DigestCache.empty());
+        return new StageDigester(parallelism, caches).digestAll(manifest);
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.mike10004.debianmaven;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes the synthetic stage tree of a {@link ScalingScenario}. The tree depends
+ * only on the scenario, so every run of a scenario packages the same files.
+ * Half of the content is text, which compresses like documentation and scripts,
+ * and half is random bytes, which compress like archives and images.
+ */
+public class StageTreeGenerator {
+
+    private static final String[] WORDS = {
+            "package", "install", "the", "of", "configuration", "file", "a", "to", "service", "and",
+            "directory", "is", "user", "for", "default", "with", "system", "in", "value", "option",
+    };
+
+    private static final int POOL_HALF = 4 * 1024 * 1024;
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private final ScalingScenario scenario;
+    private final Random random;
+    private final byte[] pool;
+
+    public StageTreeGenerator(ScalingScenario scenario) {
+        this.scenario = requireNonNull(scenario, "scenario");
+        random = new Random(scenario.getName().hashCode());
+        pool = new byte[2 * POOL_HALF];
+        byte[] text = text(POOL_HALF);
+        System.arraycopy(text, 0, pool, 0, POOL_HALF);
+        byte[] noise = new byte[POOL_HALF];
+        random.nextBytes(noise);
+        System.arraycopy(noise, 0, pool, POOL_HALF, POOL_HALF);
+    }
+
+    /**
+     * Writes the stage tree and the manual page sources.
+     * @param stageDir the stage directory
+     * @param sourceDir the source directory, where manual page sources are written to the {@code man} subdirectory
+     * @return total size of the regular files written to the stage, in bytes
+     * @throws IOException on I/O error
+     */
+    public long generate(Path stageDir, Path sourceDir) throws IOException {
+        long bytes = 0;
+        int[] regularFiles = new int[scenario.getFileCount()];
+        int regularFileCount = 0;
+        for (int i = 0; i < scenario.getFileCount(); i++) {
+            Path file = stageDir.resolve(dataPath(i));
+            if (i % FILES_PER_DIRECTORY == 0) {
+                java.nio.file.Files.createDirectories(file.getParent());
+            }
+            if (regularFileCount > 0 && random.nextDouble() < scenario.getSymlinkFraction()) {
+                Path target = stageDir.resolve(dataPath(regularFiles[random.nextInt(regularFileCount)]));
+                java.nio.file.Files.createSymbolicLink(file, file.getParent().relativize(target));
+            } else {
+                bytes += write(file, scenario.getSizes().nextSize(random));
+                regularFiles[regularFileCount++] = i;
+            }
+        }
+        for (int i = 0; i < scenario.getConffileCount(); i++) {
+            Path file = stageDir.resolve(String.format("etc/scaling/conf%05d.conf", i));
+            if (i == 0) {
+                java.nio.file.Files.createDirectories(file.getParent());
+            }
+            byte[] content = text(256 + random.nextInt(2048));
+            java.nio.file.Files.write(file, content);
+            bytes += content.length;
+        }
+        for (int i = 0; i < scenario.getManPageCount(); i++) {
+            Path file = sourceDir.resolve(String.format("man/scaling-tool%04d.1", i));
+            if (i == 0) {
+                java.nio.file.Files.createDirectories(file.getParent());
+            }
+            java.nio.file.Files.write(file, manPage(i));
+        }
+        return bytes;
+    }
+
+    private static String dataPath(int index) {
+        int directory = index / FILES_PER_DIRECTORY;
+        return String.format("usr/share/scaling/d%03d/d%03d/f%07d.dat", directory / FILES_PER_DIRECTORY, directory % FILES_PER_DIRECTORY, index);
+    }
+
+    private int write(Path file, int size) throws IOException {
+        int offset = random.nextBoolean() ? 0 : POOL_HALF;
+        offset += random.nextInt(POOL_HALF - Math.min(size, POOL_HALF) + 1);
+        try (OutputStream out = java.nio.file.Files.newOutputStream(file)) {
+            int remaining = size;
+            while (remaining > 0) {
+                int length = Math.min(remaining, pool.length - offset);
+                out.write(pool, offset, length);
+                remaining -= length;
+                offset = 0;
+            }
+        }
+        return size;
+    }
+
+    private byte[] text(int size) {
+        StringBuilder sb = new StringBuilder(size + 16);
+        while (sb.length() < size) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            sb.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        sb.setLength(size);
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] manPage(int index) {
+        String name = String.format("scaling-tool%04d", index);
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append(".TH ").append(name.toUpperCase(Locale.ROOT)).append(" 1\n");
+        sb.append(".SH NAME\n").append(name).append(" \\- synthetic manual page\n");
+        sb.append(".SH SYNOPSIS\n.B ").append(name).append("\n[\\fIOPTION\\fR]...\n");
+        sb.append(".SH DESCRIPTION\n");
+        for (int paragraph = 0; paragraph < 8; paragraph++) {
+            sb.append(".PP\n").append(new String(text(400), StandardCharsets.US_ASCII).replace("\n", " ")).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
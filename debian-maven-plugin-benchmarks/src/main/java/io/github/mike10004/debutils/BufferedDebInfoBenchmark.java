@@ -0,0 +1,57 @@
+package io.github.mike10004.debutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lookup of fields in {@code dpkg-deb --info} output, including a
+ * field near the end and a description that continues over many lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BufferedDebInfoBenchmark {
+
+    private static final String[] FIELDS = {"Package", "Version", "Depends", "Description", "Homepage", "X-Absent"};
+
+    private BufferedDebInfo info;
+
+    @Setup(Level.Trial)
+    public void createInfo() {
+        StringBuilder text = new StringBuilder();
+        text.append(" new Debian package, version 2.0.\n");
+        text.append(" size 52428800 bytes: control archive=4096 bytes.\n");
+        text.append("     512 bytes,    12 lines      control\n");
+        text.append("  409600 bytes,  5000 lines      md5sums\n");
+        text.append(" Package: foo\n");
+        text.append(" Version: 1.2.3-1\n");
+        text.append(" Architecture: amd64\n");
+        text.append(" Maintainer: Bartholomew J. Simpson <bsimpson@springfield.net>\n");
+        text.append(" Installed-Size: 51200\n");
+        text.append(" Depends: default-jre-headless (>= 2:1.11), libc6 (>= 2.31), adduser\n");
+        text.append(" Section: java\n");
+        text.append(" Priority: optional\n");
+        text.append(" Description: The fooest of foos\n");
+        for (int i = 0; i < 40; i++) {
+            text.append("  Line ").append(i).append(" of the extended description of the foo package.\n");
+        }
+        text.append(" Homepage: https://example.com/foo\n");
+        info = new BufferedDebInfo(text.toString());
+    }
+
+    @Benchmark
+    public void getValue(Blackhole blackhole) {
+        for (String field : FIELDS) {
+            blackhole.consume(info.getValue(field));
+        }
+    }
+}
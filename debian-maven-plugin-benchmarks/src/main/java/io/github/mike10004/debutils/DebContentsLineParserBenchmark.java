@@ -0,0 +1,55 @@
+package io.github.mike10004.debutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of {@code dpkg-deb --contents} output. The listing has
+ * a directory for every ten files and a symbolic link for every twenty,
+ * like the listing of a large application package.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DebContentsLineParserBenchmark {
+
+    @Param({"100000"})
+    public int lineCount;
+
+    private List<String> lines;
+    private DebContentsLineParser parser;
+
+    @Setup(Level.Trial)
+    public void createLines() {
+        lines = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            if (i % 10 == 0) {
+                lines.add(String.format("drwxr-xr-x root/root         0 2021-03-01 12:00 ./usr/share/foo/dir%d/", i / 10));
+            } else if (i % 20 == 5) {
+                lines.add(String.format("lrwxrwxrwx root/root         0 2021-03-01 12:00 ./usr/lib/foo/lib%d.so -> ../../share/foo/dir%d/lib%d.so", i, i / 10, i));
+            } else {
+                lines.add(String.format("-rw-r--r-- root/root  %8d 2021-03-01 12:00 ./usr/share/foo/dir%d/file%d.dat", (i * 7919) % 10_000_000, i / 10, i));
+            }
+        }
+        parser = new DebContentsLineParser();
+    }
+
+    @Benchmark
+    public void parseEntry(Blackhole blackhole) throws DebUtilsException {
+        for (String line : lines) {
+            blackhole.consume(parser.parseEntry(line));
+        }
+    }
+}
@@ -1,19 +1,27 @@
 package io.github.mike10004.debianmaven;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Map;
 
 public abstract class AbstractDebianMojo extends AbstractMojo
 {
 	private static final String SKIP_DEB_PROPERTY = "skipDeb";
 	private static final String RUN_DEB_PROPERTY = "runDeb";
+	private static final String PROCESS_OUTPUT_LOG = "log";
+	private static final String PROCESS_OUTPUT_TAIL = "tail";
+	static final String SOURCE_DATE_EPOCH = "SOURCE_DATE_EPOCH";
 
 	/**
 	 * Package name.
@@ -76,7 +84,8 @@ public abstract class AbstractDebianMojo extends AbstractMojo
 	 */
 	private File snapshotRevisionFile = null;
 
-	private static final DateFormat DEFAULT_SNAPSHOT_TIMESTAMP_FORMAT = new SimpleDateFormat("yyyyMMddHHmm");
+	// immutable, so that modules built concurrently may share it
+	private static final DateTimeFormatter DEFAULT_SNAPSHOT_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmm").withZone(ZoneId.systemDefault());
 
 	/**
 	 * Snapshot revision string.
@@ -85,15 +94,65 @@ public abstract class AbstractDebianMojo extends AbstractMojo
 	 */
 	private String snapshotRevision = null;
 
+	/**
+	 * How the output of tools such as {@code dpkg-deb} and {@code groff} is logged.
+	 * With {@code log}, each line is logged at info level. With {@code tail}, each
+	 * line is logged at debug level and the last lines are kept in memory; they are
+	 * logged only if the tool exits with a nonzero code or times out, which keeps
+	 * failures diagnosable without flooding the console of a successful build.
+	 * @parameter property="deb.processOutput" default-value="log"
+	 * @since 3.4
+	 */
+	protected String processOutput;
+
+	/**
+	 * Maximum number of lines of tool output kept when {@code processOutput} is {@code tail}.
+	 * @parameter property="deb.processOutput.tailLines" default-value="200"
+	 * @since 3.4
+	 */
+	protected int processOutputTailLines;
+
+	/**
+	 * Maximum number of characters of tool output kept when {@code processOutput} is {@code tail}.
+	 * @parameter property="deb.processOutput.tailChars" default-value="65536"
+	 * @since 3.4
+	 */
+	protected int processOutputTailChars;
+
+	/**
+	 * Whether identical inputs produce a byte-identical package. In reproducible
+	 * mode, the time of the build is replaced by the source date epoch: the
+	 * {@code SOURCE_DATE_EPOCH} environment variable or, if that is not set,
+	 * {@code outputTimestamp}. The epoch sets the year of a generated copyright
+	 * file and the revision of a snapshot version, modification times later than
+	 * the epoch are clamped to it. Permissions are archived as staged, so the
+	 * stage must not depend on the umask of the machine that builds the package.
+	 * The build fails if there is no epoch.
+	 * @parameter property="deb.reproducible" default-value="false"
+	 * @since 3.4
+	 */
+	protected boolean reproducible;
+
+	/**
+	 * Source date epoch of a reproducible build, if the {@code SOURCE_DATE_EPOCH}
+	 * environment variable is not set: either seconds since the epoch or an
+	 * ISO-8601 date-time with an offset, such as {@code 2024-01-01T00:00:00Z}.
+	 * @parameter default-value="${project.build.outputTimestamp}"
+	 * @since 3.4
+	 */
+	protected String outputTimestamp;
+
 	protected String processVersion(String version)
 	{
 		if (snapshotRevision == null)
 		{
-			Date revtime = snapshotRevisionFile != null
-					? new Date(snapshotRevisionFile.lastModified())
-					: new Date();
+			Instant epoch = getSourceDateEpoch();
+			Instant revtime = snapshotRevisionFile != null
+					? Instant.ofEpochMilli(snapshotRevisionFile.lastModified())
+					: epoch != null ? epoch : Instant.now();
 
-			snapshotRevision = "+" + DEFAULT_SNAPSHOT_TIMESTAMP_FORMAT.format(revtime);
+			// a reproducible revision must not depend on the time zone of the build machine
+			snapshotRevision = "+" + (epoch != null ? DEFAULT_SNAPSHOT_TIMESTAMP_FORMAT.withZone(ZoneOffset.UTC) : DEFAULT_SNAPSHOT_TIMESTAMP_FORMAT).format(revtime);
 		}
 
 		return version.replaceAll("-SNAPSHOT", snapshotRevision);
@@ -113,11 +172,82 @@ public abstract class AbstractDebianMojo extends AbstractMojo
 		return processVersion(packageVersion);
 	}
 
+	/**
+	 * Gets the source date epoch, which replaces the time of the build in reproducible mode.
+	 * @return the epoch, or null if the build is not reproducible
+	 * @throws IllegalStateException if the build is reproducible but there is no valid epoch;
+	 *         {@link #execute()} checks for that before the mojo runs
+	 */
+	@Nullable
+	protected Instant getSourceDateEpoch()
+	{
+		if (!reproducible)
+			return null;
+		try
+		{
+			Instant epoch = parseSourceDateEpoch(System.getenv(SOURCE_DATE_EPOCH), outputTimestamp);
+			if (epoch == null)
+				throw new IllegalStateException("reproducible mode requires " + SOURCE_DATE_EPOCH + " or outputTimestamp");
+			return epoch;
+		}
+		catch (MojoExecutionException e)
+		{
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Parses a source date epoch. An {@code outputTimestamp} of a single character
+	 * is ignored, because Maven uses such values to disable reproducible timestamps.
+	 * @param environmentValue value of {@code SOURCE_DATE_EPOCH}, which takes precedence, or null
+	 * @param outputTimestamp seconds since the epoch or an ISO-8601 date-time with an offset, or null
+	 * @return the epoch, or null if neither value is set
+	 * @throws MojoExecutionException if the value that takes precedence is invalid
+	 */
+	@Nullable
+	static Instant parseSourceDateEpoch(@Nullable String environmentValue, @Nullable String outputTimestamp) throws MojoExecutionException
+	{
+		if (environmentValue != null && !environmentValue.trim().isEmpty())
+		{
+			try
+			{
+				return Instant.ofEpochSecond(Long.parseLong(environmentValue.trim()));
+			}
+			catch (NumberFormatException e)
+			{
+				throw new MojoExecutionException(SOURCE_DATE_EPOCH + " must be a number of seconds: " + StringUtils.abbreviate(environmentValue, 128));
+			}
+		}
+		if (outputTimestamp == null || outputTimestamp.trim().length() < 2)
+			return null;
+		String value = outputTimestamp.trim();
+		try
+		{
+			if (value.chars().allMatch(Character::isDigit))
+				return Instant.ofEpochSecond(Long.parseLong(value));
+			return OffsetDateTime.parse(value).toInstant();
+		}
+		catch (NumberFormatException | DateTimeParseException e)
+		{
+			throw new MojoExecutionException("outputTimestamp must be a number of seconds or an ISO-8601 date-time with an offset: " + StringUtils.abbreviate(value, 128));
+		}
+	}
+
 	protected File getPackageFile()
 	{
 		return new File(targetDir, String.format("%s_%s-%s_all.deb", packageName, getPackageVersion(), packageRevision));
 	}
 
+	/**
+	 * Gets the file where the fingerprint of the inputs to the package file is stored.
+	 * @return the fingerprint file
+	 */
+	protected File getFingerprintFile()
+	{
+		File packageFile = getPackageFile();
+		return new File(packageFile.getParentFile(), packageFile.getName() + ".fingerprint");
+	}
+
 	/**
 	 * Runs a process and throws a mojo execution exception if the process exit code is nonzero.
 	 * @param cmd the command line
@@ -131,10 +261,15 @@ public abstract class AbstractDebianMojo extends AbstractMojo
 
 	protected void runProcess(String[] cmd, Map<String, String> env, @SuppressWarnings("SameParameterValue") NonzeroProcessExitAction nonzeroExitAction) throws IOException, MojoExecutionException
 	{
-		createProcessRunner().runProcess(cmd, nonzeroExitAction);
+		createProcessRunner().runProcess(cmd, env, nonzeroExitAction);
 	}
 
 	protected ProcessRunner createProcessRunner() {
+		if (PROCESS_OUTPUT_TAIL.equals(processOutput)) {
+			return SubprocessProcessRunner.tailing(this::getLog,
+					processOutputTailLines > 0 ? processOutputTailLines : OutputTail.DEFAULT_MAX_LINES,
+					processOutputTailChars > 0 ? processOutputTailChars : OutputTail.DEFAULT_MAX_CHARS);
+		}
 		return new SubprocessProcessRunner(this::getLog);
 	}
 
@@ -142,6 +277,14 @@ public abstract class AbstractDebianMojo extends AbstractMojo
 
 	public final void execute() throws MojoExecutionException
 	{
+		if (processOutput != null && !PROCESS_OUTPUT_LOG.equals(processOutput) && !PROCESS_OUTPUT_TAIL.equals(processOutput))
+		{
+			throw new MojoExecutionException("unsupported processOutput: " + StringUtils.abbreviate(processOutput, 128) + "; supported values are " + PROCESS_OUTPUT_LOG + " and " + PROCESS_OUTPUT_TAIL);
+		}
+		if (reproducible && parseSourceDateEpoch(System.getenv(SOURCE_DATE_EPOCH), outputTimestamp) == null)
+		{
+			throw new MojoExecutionException("reproducible mode requires the " + SOURCE_DATE_EPOCH + " environment variable or outputTimestamp (project.build.outputTimestamp)");
+		}
 		if (System.getProperties().containsKey(RUN_DEB_PROPERTY))
 		{
 			getLog().info("debian-maven execution forced (-DrunDeb)");
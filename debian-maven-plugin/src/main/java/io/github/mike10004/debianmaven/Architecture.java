@@ -0,0 +1,48 @@
+package io.github.mike10004.debianmaven;
+
+import java.io.File;
+
+/**
+ * Declares one of several architectures that a package is built for.
+ * Only {@code name} is required.
+ */
+public class Architecture {
+
+    private String name;
+    private File overlayDir;
+
+    public Architecture() {
+    }
+
+    /**
+     * Gets the Debian architecture name, such as {@code amd64} or {@code arm64}.
+     * @return the architecture name
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the directory of files that are installed only by the package for this
+     * architecture, laid out like the stage directory. If not set, the sibling of
+     * the stage directory with the architecture name appended, such as
+     * {@code target/deb-amd64}, is used if it exists.
+     * @return the overlay directory
+     */
+    public File getOverlayDir() {
+        return overlayDir;
+    }
+
+    public void setOverlayDir(File overlayDir) {
+        this.overlayDir = overlayDir;
+    }
+
+    @Override
+    public String toString() {
+        return Architecture.class.getSimpleName() + "(name='" + name + "')";
+    }
+}
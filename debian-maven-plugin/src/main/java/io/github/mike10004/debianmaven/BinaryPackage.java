@@ -0,0 +1,159 @@
+package io.github.mike10004.debianmaven;
+
+import java.io.File;
+
+/**
+ * Declares one of several binary packages built by a single execution.
+ * Only {@code name} is required. The title, description, section, priority,
+ * dependencies and conflicts default to the values configured for the execution;
+ * the control lines, packaging files, links files and mappings apply only to
+ * the package that declares them.
+ */
+public class BinaryPackage {
+
+    private String name;
+    private File stageDir;
+    private File sourceDir;
+    private String filename;
+    private String title;
+    private String description;
+    private String section;
+    private String priority;
+    private String[] dependencies;
+    private String[] conflicts;
+    private ControlFileLine[] control;
+    private File[] packagingFiles;
+    private File[] linksFiles;
+    private Mapping[] mappings;
+
+    public BinaryPackage() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the stage directory of the package. If not set, the subdirectory
+     * of the execution's stage directory with the package name is used.
+     * @return the stage directory
+     */
+    public File getStageDir() {
+        return stageDir;
+    }
+
+    public void setStageDir(File stageDir) {
+        this.stageDir = stageDir;
+    }
+
+    /**
+     * Gets the source directory of the package, which may contain manual pages
+     * in a {@code man} subdirectory. If not set, the subdirectory of the
+     * execution's source directory with the package name is used.
+     * @return the source directory
+     */
+    public File getSourceDir() {
+        return sourceDir;
+    }
+
+    public void setSourceDir(File sourceDir) {
+        this.sourceDir = sourceDir;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    public void setSection(String section) {
+        this.section = section;
+    }
+
+    public String getPriority() {
+        return priority;
+    }
+
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+
+    public String[] getDependencies() {
+        return dependencies;
+    }
+
+    public void setDependencies(String[] dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    public String[] getConflicts() {
+        return conflicts;
+    }
+
+    public void setConflicts(String[] conflicts) {
+        this.conflicts = conflicts;
+    }
+
+    public ControlFileLine[] getControl() {
+        return control;
+    }
+
+    public void setControl(ControlFileLine[] control) {
+        this.control = control;
+    }
+
+    public File[] getPackagingFiles() {
+        return packagingFiles;
+    }
+
+    public void setPackagingFiles(File[] packagingFiles) {
+        this.packagingFiles = packagingFiles;
+    }
+
+    public File[] getLinksFiles() {
+        return linksFiles;
+    }
+
+    public void setLinksFiles(File[] linksFiles) {
+        this.linksFiles = linksFiles;
+    }
+
+    public Mapping[] getMappings() {
+        return mappings;
+    }
+
+    public void setMappings(Mapping[] mappings) {
+        this.mappings = mappings;
+    }
+
+    @Override
+    public String toString() {
+        return BinaryPackage.class.getSimpleName() + "(name='" + name + "')";
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.mike10004.debianmaven;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Wall time, file count and byte count of each phase of a package build.
+ * Packages built concurrently record their phases in the same report, so
+ * the methods of this class may be called from any thread. Each phase
+ * defines what it counts: for example, the scan counts staged entries and
+ * their sizes, the checksum phase counts the files it hashes, and the package
+ * phase counts the entries it archives. Each phase is also emitted as a
+ * {@link PhaseEvent} for the flight recorder.
+ */
+public class BuildReport {
+
+    private final long startNanos;
+    private final List<Phase> phases;
+
+    public BuildReport() {
+        startNanos = System.nanoTime();
+        phases = new ArrayList<>();
+    }
+
+    /**
+     * Starts timing a phase. The phase is added to the report when it is
+     * {@link Timer#stop(long, long) stopped}.
+     * @param packageFilename filename of the package built by the phase, or null if the phase is shared by several packages
+     * @param name name of the phase
+     * @return a new timer
+     */
+    public Timer start(@Nullable String packageFilename, String name) {
+        return new Timer(packageFilename, requireNonNull(name, "name"));
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return new ArrayList<>(phases);
+    }
+
+    private synchronized void add(Phase phase) {
+        phases.add(phase);
+    }
+
+    /**
+     * Gets the time elapsed since this report was created.
+     * @return elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Formats the report as JSON.
+     * @return the JSON text
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\n");
+        sb.append("  \"wallMillis\": ").append(formatMillis(getElapsedNanos())).append(",\n");
+        sb.append("  \"phases\": [");
+        List<Phase> phases = getPhases();
+        for (int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {");
+            sb.append("\"package\": ").append(quote(phase.getPackageFilename())).append(", ");
+            sb.append("\"phase\": ").append(quote(phase.getName())).append(", ");
+            sb.append("\"wallMillis\": ").append(formatMillis(phase.getWallNanos())).append(", ");
+            sb.append("\"files\": ").append(phase.getFiles()).append(", ");
+            sb.append("\"bytes\": ").append(phase.getBytes()).append(", ");
+            sb.append("\"bytesPerSecond\": ").append(phase.getBytesPerSecond());
+            sb.append('}');
+        }
+        sb.append(phases.isEmpty() ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Writes the report as JSON.
+     * @param file the destination
+     * @throws IOException on I/O error
+     */
+    public void write(Path file) throws IOException {
+        java.nio.file.Files.createDirectories(file.getParent());
+        java.nio.file.Files.writeString(file, toJson(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Formats one line per phase for the build log.
+     * @return lines of text
+     */
+    public List<String> summarize() {
+        List<String> lines = new ArrayList<>();
+        for (Phase phase : getPhases()) {
+            lines.add(String.format(Locale.ROOT, "%s%-14s %9.1f ms %7d files %12d bytes %10.1f MB/s",
+                    phase.getPackageFilename() == null ? "" : phase.getPackageFilename() + " ",
+                    phase.getName(), phase.getWallNanos() / 1e6, phase.getFiles(), phase.getBytes(), phase.getBytesPerSecond() / 1e6));
+        }
+        return lines;
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String quote(@Nullable String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (char ch : value.toCharArray()) {
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                sb.append(String.format("\\u%04x", (int) ch));
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Measures the wall time of a phase in progress.
+     */
+    public class Timer {
+
+        @Nullable
+        private final String packageFilename;
+        private final String name;
+        private final long startNanos;
+        private final PhaseEvent event;
+
+        private Timer(@Nullable String packageFilename, String name) {
+            this.packageFilename = packageFilename;
+            this.name = name;
+            event = new PhaseEvent();
+            event.begin();
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Adds the phase to the report.
+         * @param files number of files processed
+         * @param bytes number of bytes processed
+         */
+        public void stop(long files, long bytes) {
+            add(new Phase(packageFilename, name, System.nanoTime() - startNanos, files, bytes));
+            event.end();
+            if (event.shouldCommit()) {
+                event.packageFilename = packageFilename;
+                event.phase = name;
+                event.files = files;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    public static class Phase {
+
+        @Nullable
+        private final String packageFilename;
+        private final String name;
+        private final long wallNanos;
+        private final long files;
+        private final long bytes;
+
+        public Phase(@Nullable String packageFilename, String name, long wallNanos, long files, long bytes) {
+            this.packageFilename = packageFilename;
+            this.name = requireNonNull(name, "name");
+            this.wallNanos = wallNanos;
+            this.files = files;
+            this.bytes = bytes;
+        }
+
+        @Nullable
+        public String getPackageFilename() {
+            return packageFilename;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets the throughput of the phase.
+         * @return bytes processed per second of wall time, or 0 if no time elapsed
+         */
+        public long getBytesPerSecond() {
+            return wallNanos <= 0 ? 0 : Math.round(bytes / (wallNanos / 1e9));
+        }
+
+        @Override
+        public String toString() {
+            return Phase.class.getSimpleName() + "{name=" + name + ", packageFilename=" + packageFilename + "}";
+        }
+    }
+}
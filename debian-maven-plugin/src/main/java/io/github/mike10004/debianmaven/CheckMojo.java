@@ -12,6 +12,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  *
  * @goal check
  * @phase package
+ * @threadSafe
  */
 public class CheckMojo extends AbstractDebianMojo
 {
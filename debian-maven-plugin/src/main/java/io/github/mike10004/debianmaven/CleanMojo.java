@@ -10,6 +10,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  *
  * @goal clean
  * @phase clean
+ * @threadSafe
  */
 public class CleanMojo extends AbstractDebianMojo
 {
@@ -19,6 +20,7 @@ public class CleanMojo extends AbstractDebianMojo
 		{
 			FileUtils.deleteDirectory(stageDir);
 			getPackageFile().delete();
+			getFingerprintFile().delete();
 		}
 		catch (IOException e)
 		{
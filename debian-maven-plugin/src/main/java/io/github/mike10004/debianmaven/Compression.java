@@ -0,0 +1,76 @@
+package io.github.mike10004.debianmaven;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Compression format of a member of a package file.
+ */
+public enum Compression {
+
+    GZIP("gzip", ".gz", 1, 9),
+    XZ("xz", ".xz", 0, 9),
+    ZSTD("zstd", ".zst", 1, 22),
+    NONE("none", "", 0, 0);
+
+    private final String name;
+    private final String extension;
+    private final int minLevel;
+    private final int maxLevel;
+
+    Compression(String name, String extension, int minLevel, int maxLevel) {
+        this.name = name;
+        this.extension = extension;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Gets the name of the format, as given to {@code dpkg-deb -Z}.
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the filename extension, including the leading dot.
+     * @return the extension
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Tests whether a compression level is valid for this format.
+     * @param level the level
+     * @return true if the level is valid
+     */
+    public boolean isValidLevel(int level) {
+        return level >= minLevel && level <= maxLevel;
+    }
+
+    public String describeLevels() {
+        return minLevel + " to " + maxLevel;
+    }
+
+    /**
+     * Gets the format with a given name.
+     * @param name the name
+     * @return the format, or null if there is no format with the given name
+     */
+    @Nullable
+    public static Compression fromName(String name) {
+        for (Compression compression : values()) {
+            if (compression.name.equals(name)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    static String describeNames() {
+        return Arrays.stream(values()).map(Compression::getName).collect(Collectors.joining(", "));
+    }
+}
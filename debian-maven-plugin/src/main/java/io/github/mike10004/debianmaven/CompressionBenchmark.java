@@ -0,0 +1,319 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Measures how well and how fast the content of a stage compresses with
+ * each of a set of candidate formats and levels. Rather than compressing
+ * the whole stage, a sample is taken from the beginning of every regular
+ * file, in proportion to the file's size, so that the mix of content types
+ * in the sample resembles the mix in the stage.
+ */
+public class CompressionBenchmark {
+
+    public static final int DEFAULT_SAMPLE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Fraction by which an output may exceed the smallest output and still
+     * be preferred because it is faster to produce.
+     */
+    static final double SIZE_TOLERANCE = 0.02;
+
+    private final int sampleSize;
+    private final List<Candidate> candidates;
+
+    public CompressionBenchmark(int sampleSize, List<Candidate> candidates) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sample size must be positive: " + sampleSize);
+        }
+        this.sampleSize = sampleSize;
+        this.candidates = List.copyOf(candidates);
+    }
+
+    public CompressionBenchmark() {
+        this(DEFAULT_SAMPLE_SIZE, getDefaultCandidates(false));
+    }
+
+    /**
+     * Gets the default candidates: several levels of each format, and no compression.
+     * The slowest levels, xz 9 and zstd 19, are left out: they are the most expensive
+     * to measure, and their windows exceed the default sample, on which they hardly
+     * differ from the levels below them. Packages compressed with zstd
+     * cannot be installed by dpkg before 1.21.18, so zstd is a candidate only on request.
+     * @param zstd whether to include levels of zstd
+     * @return list of candidates
+     */
+    public static List<Candidate> getDefaultCandidates(boolean zstd) {
+        List<Candidate> candidates = new ArrayList<>();
+        candidates.add(new Candidate(Compression.NONE, null));
+        for (int level : new int[]{1, 6, 9}) {
+            candidates.add(new Candidate(Compression.GZIP, level));
+        }
+        for (int level : new int[]{0, 3, 6}) {
+            candidates.add(new Candidate(Compression.XZ, level));
+        }
+        if (zstd) {
+            for (int level : new int[]{1, 3, 9}) {
+                candidates.add(new Candidate(Compression.ZSTD, level));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Measures compression of a sample of the regular files in a manifest.
+     * @param manifest the manifest
+     * @return the report
+     * @throws IOException on I/O error
+     */
+    public Report run(StageManifest manifest) throws IOException {
+        byte[] sample = createSample(manifest);
+        List<Result> results = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            results.add(measure(candidate, sample));
+        }
+        long totalSize = manifest.regularFiles().mapToLong(StageEntry::getSize).sum();
+        return new Report(totalSize, sample.length, results);
+    }
+
+    byte[] createSample(StageManifest manifest) throws IOException {
+        List<StageEntry> files = manifest.regularFiles().collect(Collectors.toList());
+        long totalSize = files.stream().mapToLong(StageEntry::getSize).sum();
+        if (totalSize == 0) {
+            return new byte[0];
+        }
+        int length = (int) Math.min(totalSize, sampleSize);
+        byte[] sample = new byte[length];
+        int offset = 0;
+        long sizeBefore = 0;
+        for (StageEntry file : files) {
+            // shares are bounded by the proportional positions of the cumulative sizes,
+            // so they add up to the length and no file takes the share of a later one
+            long sizeThrough = sizeBefore + file.getSize();
+            int start = toSamplePosition(sizeBefore, totalSize, length);
+            int end = toSamplePosition(sizeThrough, totalSize, length);
+            sizeBefore = sizeThrough;
+            int n = Math.min(end - start, length - offset);
+            if (n <= 0) {
+                continue;
+            }
+            try (InputStream in = java.nio.file.Files.newInputStream(file.getPath())) {
+                offset += in.readNBytes(sample, offset, n);
+            }
+        }
+        return offset == length ? sample : Arrays.copyOf(sample, offset);
+    }
+
+    private static int toSamplePosition(long size, long totalSize, int length) {
+        return size >= totalSize ? length : (int) ((double) size * length / totalSize);
+    }
+
+    private static Result measure(Candidate candidate, byte[] sample) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        long start = System.nanoTime();
+        try (OutputStream out = candidate.toSettings(1).openStream(counter)) {
+            out.write(sample);
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Result(candidate, sample.length, counter.getByteCount(), Duration.ofNanos(elapsed));
+    }
+
+    /**
+     * Compression format and level.
+     */
+    public static class Candidate {
+
+        private final Compression compression;
+        @Nullable
+        private final Integer level;
+
+        public Candidate(Compression compression, @Nullable Integer level) {
+            this.compression = requireNonNull(compression, "compression");
+            this.level = level;
+        }
+
+        public Compression getCompression() {
+            return compression;
+        }
+
+        @Nullable
+        public Integer getLevel() {
+            return level;
+        }
+
+        public CompressionSettings toSettings(int threads) {
+            return new CompressionSettings(compression, level, threads, ParallelCompressorOutputStream.DEFAULT_BLOCK_SIZE);
+        }
+
+        @Override
+        public String toString() {
+            return level == null ? compression.getName() : compression.getName() + "-" + level;
+        }
+    }
+
+    /**
+     * Result of compressing the sample with one candidate.
+     */
+    public static class Result {
+
+        private final Candidate candidate;
+        private final long inputSize;
+        private final long outputSize;
+        private final Duration elapsed;
+
+        public Result(Candidate candidate, long inputSize, long outputSize, Duration elapsed) {
+            this.candidate = requireNonNull(candidate, "candidate");
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            this.elapsed = requireNonNull(elapsed, "elapsed");
+        }
+
+        public Candidate getCandidate() {
+            return candidate;
+        }
+
+        public long getInputSize() {
+            return inputSize;
+        }
+
+        public long getOutputSize() {
+            return outputSize;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * Gets the ratio of output size to input size.
+         * @return the ratio; 1 if the input is empty
+         */
+        public double getRatio() {
+            return inputSize == 0 ? 1 : (double) outputSize / inputSize;
+        }
+
+        /**
+         * Estimates the time to compress a given amount of data, assuming throughput
+         * scales with the number of threads.
+         * @param size uncompressed size in bytes
+         * @param threads number of compression threads
+         * @return the estimated duration
+         */
+        public Duration estimateTime(long size, int threads) {
+            if (inputSize == 0) {
+                return Duration.ZERO;
+            }
+            double nanos = (double) elapsed.toNanos() * size / inputSize / Math.max(1, threads);
+            return Duration.ofNanos((long) nanos);
+        }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", Result.class.getSimpleName() + "[", "]")
+                    .add("candidate=" + candidate)
+                    .add("inputSize=" + inputSize)
+                    .add("outputSize=" + outputSize)
+                    .add("elapsed=" + elapsed)
+                    .toString();
+        }
+    }
+
+    /**
+     * Results of a benchmark run.
+     */
+    public static class Report {
+
+        private final long totalSize;
+        private final long sampleSize;
+        private final List<Result> results;
+
+        public Report(long totalSize, long sampleSize, List<Result> results) {
+            this.totalSize = totalSize;
+            this.sampleSize = sampleSize;
+            this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        }
+
+        /**
+         * Gets the total size of the regular files in the stage.
+         * @return size in bytes
+         */
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        public long getSampleSize() {
+            return sampleSize;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * Chooses the candidate with the smallest output among those estimated
+         * to compress the whole stage within a time budget. A faster candidate whose
+         * output is at most {@link #SIZE_TOLERANCE} larger is preferred, so content
+         * that barely compresses, such as jar files, gets cheap or no compression.
+         * If no candidate fits the budget, the fastest is chosen.
+         * @param timeBudget the time budget
+         * @param threads number of compression threads
+         * @return the chosen result
+         */
+        public Result choose(Duration timeBudget, int threads) {
+            if (results.isEmpty()) {
+                throw new IllegalStateException("no results");
+            }
+            Comparator<Result> byTime = Comparator.comparing(Result::getElapsed);
+            List<Result> affordable = results.stream()
+                    .filter(result -> result.estimateTime(totalSize, threads).compareTo(timeBudget) <= 0)
+                    .collect(Collectors.toList());
+            if (affordable.isEmpty()) {
+                return results.stream().min(byTime).orElseThrow();
+            }
+            long smallest = affordable.stream().mapToLong(Result::getOutputSize).min().orElseThrow();
+            return affordable.stream()
+                    .filter(result -> result.getOutputSize() <= smallest * (1 + SIZE_TOLERANCE))
+                    .min(byTime)
+                    .orElseThrow();
+        }
+
+        /**
+         * Formats the results as a table, one row per candidate.
+         * @param threads number of compression threads assumed in the time estimates
+         * @return the table
+         */
+        public String format(int threads) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("sampled %d of %d bytes; estimates assume %d thread(s)%n", sampleSize, totalSize, threads));
+            sb.append(String.format("%-10s %12s %8s %12s %14s %14s%n", "candidate", "sample out", "ratio", "MB/s", "est. size", "est. time (s)"));
+            for (Result result : results) {
+                double seconds = result.getElapsed().toNanos() / 1e9;
+                double throughput = seconds == 0 ? Double.POSITIVE_INFINITY : result.getInputSize() / seconds / 1e6;
+                sb.append(String.format("%-10s %12d %8.3f %12.1f %14d %14.2f%n",
+                        result.getCandidate(),
+                        result.getOutputSize(),
+                        result.getRatio(),
+                        throughput,
+                        Math.round(result.getRatio() * totalSize),
+                        result.estimateTime(totalSize, threads).toNanos() / 1e9));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Measures how the content of the stage directory compresses with each supported
+ * format at several levels, and reports compression ratio, throughput, and estimated
+ * size and time for the whole stage. The report is logged and written to
+ * {@code deb-compression-report.txt} in the target directory. It also shows which
+ * candidate {@code <compression>auto</compression>} would choose.
+ *
+ * @goal compression-report
+ * @since 3.4
+ * @threadSafe
+ */
+public class CompressionReportMojo extends AbstractDebianMojo
+{
+	/**
+	 * Maximum number of bytes sampled from the stage directory.
+	 * @parameter property="deb.compression.sampleSize" default-value="4194304"
+	 */
+	protected int compressionSampleSize;
+
+	/**
+	 * Number of compression threads assumed when estimating the time to compress the whole stage.
+	 * Defaults to the number of available processors.
+	 * @parameter property="deb.compression.threads"
+	 */
+	protected Integer compressionThreads;
+
+	/**
+	 * Time budget in seconds used to choose a candidate, as with {@code <compression>auto</compression>}.
+	 * @parameter property="deb.compression.timeBudget" default-value="30"
+	 */
+	protected int compressionTimeBudget;
+
+	/**
+	 * Whether {@code zstd} is measured, as with {@code <compressionAutoZstd>}.
+	 * @parameter property="deb.compression.autoZstd" default-value="false"
+	 */
+	protected boolean compressionAutoZstd;
+
+	protected void executeDebMojo() throws MojoExecutionException
+	{
+		if (!stageDir.isDirectory())
+		{
+			throw new MojoExecutionException("stage directory not found: " + stageDir);
+		}
+		try
+		{
+			int threads = compressionThreads == null || compressionThreads < 1 ? Runtime.getRuntime().availableProcessors() : compressionThreads;
+			StageManifest manifest = StageManifest.scan(stageDir.toPath());
+			CompressionBenchmark benchmark = new CompressionBenchmark(Math.max(1, compressionSampleSize), CompressionBenchmark.getDefaultCandidates(compressionAutoZstd));
+			CompressionBenchmark.Report report = benchmark.run(manifest);
+			CompressionBenchmark.Result choice = report.choose(Duration.ofSeconds(compressionTimeBudget), threads);
+			String text = report.format(threads) + String.format("auto with a budget of %ds chooses %s%n", compressionTimeBudget, choice.getCandidate());
+			text.lines().forEach(getLog()::info);
+			File reportFile = new File(targetDir, "deb-compression-report.txt");
+			java.nio.file.Files.writeString(reportFile.toPath(), text, StandardCharsets.UTF_8);
+			getLog().info("Compression report written to " + reportFile);
+		}
+		catch (IOException e)
+		{
+			getLog().error(e.toString());
+			throw new MojoExecutionException(e.toString());
+		}
+	}
+}
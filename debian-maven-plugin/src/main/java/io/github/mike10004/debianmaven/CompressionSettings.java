@@ -0,0 +1,178 @@
+package io.github.mike10004.debianmaven;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.StringJoiner;
+import java.util.zip.Deflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Value class that specifies how a member of a package file is compressed.
+ */
+public class CompressionSettings {
+
+    private static final int DEFAULT_XZ_PRESET = 6;
+    private static final int DEFAULT_ZSTD_LEVEL = 3;
+
+    private final Compression compression;
+    @Nullable
+    private final Integer level;
+    private final int threads;
+    private final int blockSize;
+
+    /**
+     * Constructs an instance.
+     * @param compression the format
+     * @param level the compression level, or null for the default level of the format
+     * @param threads number of compression threads
+     * @param blockSize uncompressed size of each independently compressed block, if gzip
+     *                  or xz is compressed on more than one thread
+     */
+    public CompressionSettings(Compression compression, @Nullable Integer level, int threads, int blockSize) {
+        this.compression = requireNonNull(compression, "compression");
+        if (level != null && !compression.isValidLevel(level)) {
+            throw new IllegalArgumentException("level " + level + " is not valid for " + compression.getName() + "; valid levels are " + compression.describeLevels());
+        }
+        this.level = level;
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.threads = threads;
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Creates an instance that specifies single-threaded compression at the default level.
+     * @param compression the format
+     * @return a new instance
+     */
+    public static CompressionSettings of(Compression compression) {
+        return new CompressionSettings(compression, null, 1, ParallelCompressorOutputStream.DEFAULT_BLOCK_SIZE);
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    @Nullable
+    public Integer getLevel() {
+        return level;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Opens a stream that compresses data written to it. Closing
+     * the returned stream closes the underlying stream.
+     * @param out the destination of the compressed data
+     * @return a new stream
+     * @throws IOException on I/O error
+     */
+    public OutputStream openStream(OutputStream out) throws IOException {
+        switch (compression) {
+            case GZIP:
+                int gzipLevel = level == null ? Deflater.DEFAULT_COMPRESSION : level;
+                if (threads > 1) {
+                    return ParallelCompressorOutputStream.gzip(out, threads, blockSize, gzipLevel);
+                }
+                GzipParameters parameters = new GzipParameters();
+                parameters.setCompressionLevel(gzipLevel);
+                return new GzipCompressorOutputStream(out, parameters);
+            case XZ:
+                int preset = level == null ? DEFAULT_XZ_PRESET : level;
+                if (threads > 1) {
+                    return ParallelCompressorOutputStream.xz(out, threads, blockSize, preset);
+                }
+                return new XZCompressorOutputStream(out, preset);
+            case ZSTD:
+                ZstdOutputStream zstd = new ZstdOutputStream(out, level == null ? DEFAULT_ZSTD_LEVEL : level);
+                if (threads > 1) {
+                    // zstd splits its input into jobs and compresses them on its own worker threads
+                    zstd.setWorkers(threads);
+                }
+                return zstd;
+            case NONE:
+                return out;
+            default:
+                throw new IllegalStateException("unsupported compression: " + compression);
+        }
+    }
+
+    /**
+     * Opens a stream that compresses data as {@link #openStream(OutputStream)} does, except
+     * that the compressed bytes do not depend on the number of threads: gzip and xz are
+     * always written in independent blocks, and zstd always uses its worker threads.
+     * Closing the returned stream closes the underlying stream.
+     * @param out the destination of the compressed data
+     * @return a new stream
+     * @throws IOException on I/O error
+     */
+    public OutputStream openReproducibleStream(OutputStream out) throws IOException {
+        if (compression == Compression.ZSTD) {
+            ZstdOutputStream zstd = new ZstdOutputStream(out, level == null ? DEFAULT_ZSTD_LEVEL : level);
+            // output of the multithreaded mode is the same for any number of workers
+            zstd.setWorkers(threads);
+            return zstd;
+        }
+        if (compression == Compression.NONE) {
+            return out;
+        }
+        return openBlockStream(out, false);
+    }
+
+    /**
+     * Opens a stream that compresses data in independent blocks, so that blocks
+     * compressed ahead of time can be spliced into it. Unlike {@link #openStream(OutputStream)},
+     * this uses the block format for every thread count.
+     * Closing the returned stream closes the underlying stream.
+     * @param out the destination of the compressed data
+     * @param collect whether the stream writes bare blocks for splicing into other streams
+     * @return a new stream
+     * @throws IOException on I/O error
+     * @throws IllegalStateException if the compression cannot be written in blocks
+     * @see ParallelCompressorOutputStream#isSupported(Compression)
+     */
+    public ParallelCompressorOutputStream openBlockStream(OutputStream out, boolean collect) throws IOException {
+        int effectiveLevel;
+        switch (compression) {
+            case GZIP:
+                effectiveLevel = level == null ? Deflater.DEFAULT_COMPRESSION : level;
+                break;
+            case XZ:
+                effectiveLevel = level == null ? DEFAULT_XZ_PRESET : level;
+                break;
+            case NONE:
+                effectiveLevel = 0;
+                break;
+            default:
+                throw new IllegalStateException(compression.getName() + " cannot be written in blocks");
+        }
+        return ParallelCompressorOutputStream.create(out, compression, effectiveLevel, threads, blockSize, collect);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", CompressionSettings.class.getSimpleName() + "[", "]")
+                .add("compression=" + compression)
+                .add("level=" + level)
+                .add("threads=" + threads)
+                .add("blockSize=" + blockSize)
+                .toString();
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import javax.annotation.Nullable;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Digest algorithm for the checksums of installed files.
+ */
+public enum DigestAlgorithm {
+
+    MD5("md5", "MD5"),
+    SHA256("sha256", "SHA-256"),
+    SHA512("sha512", "SHA-512");
+
+    private final String name;
+    private final String javaName;
+
+    DigestAlgorithm(String name, String javaName) {
+        this.name = name;
+        this.javaName = javaName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the name of the file that lists the checksums, e.g. {@code md5sums}.
+     * @return the filename
+     */
+    public String getSumsFileName() {
+        return name + "sums";
+    }
+
+    public MessageDigest createMessageDigest() {
+        return DigestUtils.getDigest(javaName);
+    }
+
+    /**
+     * Gets the algorithm with a given name.
+     * @param name the name
+     * @return the algorithm, or null if there is no algorithm with the given name
+     */
+    @Nullable
+    public static DigestAlgorithm fromName(String name) {
+        for (DigestAlgorithm algorithm : values()) {
+            if (algorithm.name.equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    static String describeNames() {
+        return Arrays.stream(values()).map(DigestAlgorithm::getName).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,198 @@
+package io.github.mike10004.debianmaven;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Cache of file digests that persists between builds. A cached digest is
+ * reused only if the file's relative path, size, last-modified time and
+ * file key (inode) are unchanged. Only entries that were looked up or stored
+ * since the cache was loaded are saved, so entries for files that no longer
+ * exist in the stage are evicted automatically.
+ *
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public class DigestCache {
+
+    private static final String HEADER = "# debian-maven-plugin digest cache v1";
+    private static final String NO_FILE_KEY = "-";
+
+    private final Map<String, Record> loaded;
+    private final Map<String, Record> retained;
+    private final String keyPrefix;
+
+    private DigestCache(Map<String, Record> loaded) {
+        this(loaded, new ConcurrentHashMap<>(), "");
+    }
+
+    private DigestCache(Map<String, Record> loaded, Map<String, Record> retained, String keyPrefix) {
+        this.loaded = requireNonNull(loaded);
+        this.retained = requireNonNull(retained);
+        this.keyPrefix = requireNonNull(keyPrefix);
+    }
+
+    public static DigestCache empty() {
+        return new DigestCache(Map.of());
+    }
+
+    /**
+     * Loads a cache from a file. If the file does not exist or is not in
+     * the expected format, an empty cache is returned.
+     * @param cacheFile the cache file
+     * @return the cache
+     * @throws IOException on I/O error
+     */
+    public static DigestCache load(Path cacheFile) throws IOException {
+        Map<String, Record> records = new ConcurrentHashMap<>();
+        try (BufferedReader reader = java.nio.file.Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return empty();
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record = Record.parse(line);
+                if (record == null) {
+                    return empty();
+                }
+                records.put(record.relativePath, record);
+            }
+        } catch (NoSuchFileException e) {
+            return empty();
+        }
+        return new DigestCache(records);
+    }
+
+    /**
+     * Creates a view of this cache in which every relative pathname is prefixed,
+     * so that the files of several stages can share one cache. Entries looked up
+     * or stored through the view are saved with this cache.
+     * @param keyPrefix prefix of relative pathnames
+     * @return a view of this cache
+     */
+    public DigestCache scoped(String keyPrefix) {
+        return new DigestCache(loaded, retained, this.keyPrefix + keyPrefix);
+    }
+
+    /**
+     * Gets the cached digest of a file.
+     * @param entry the stage entry
+     * @return the digest, or null if the file is not cached or has changed
+     */
+    @Nullable
+    public String get(StageEntry entry) {
+        Record record = loaded.get(keyPrefix + entry.getRelativePath());
+        if (record == null || !record.matches(entry)) {
+            return null;
+        }
+        retained.put(record.relativePath, record);
+        return record.digest;
+    }
+
+    /**
+     * Retains every loaded entry whose relative pathname has the prefix of this
+     * cache, as if each had been looked up, so that entries of a stage that was
+     * not digested are not evicted when the cache is saved.
+     */
+    public void retainLoaded() {
+        loaded.forEach((relativePath, record) -> {
+            if (relativePath.startsWith(keyPrefix)) {
+                retained.putIfAbsent(relativePath, record);
+            }
+        });
+    }
+
+    public void put(StageEntry entry, String digest) {
+        if (entry.getRelativePath().indexOf('\n') >= 0 || entry.getRelativePath().indexOf('\r') >= 0) {
+            return;
+        }
+        Record record = new Record(keyPrefix + entry.getRelativePath(), entry.getSize(), entry.getLastModified(), entry.getFileKey(), digest);
+        retained.put(record.relativePath, record);
+    }
+
+    /**
+     * Writes the entries that were looked up or stored to a file.
+     * @param cacheFile the cache file
+     * @throws IOException on I/O error
+     */
+    public void save(Path cacheFile) throws IOException {
+        java.nio.file.Files.createDirectories(cacheFile.getParent());
+        Path tempFile = java.nio.file.Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = java.nio.file.Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Record record : new TreeMap<>(retained).values()) {
+                    writer.write(record.format());
+                    writer.newLine();
+                }
+            }
+            java.nio.file.Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            java.nio.file.Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static class Record {
+
+        public final String relativePath;
+        public final long size;
+        public final long lastModified;
+        @Nullable
+        public final String fileKey;
+        public final String digest;
+
+        public Record(String relativePath, long size, long lastModified, @Nullable String fileKey, String digest) {
+            this.relativePath = relativePath;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = normalizeFileKey(fileKey);
+            this.digest = digest;
+        }
+
+        @Nullable
+        private static String normalizeFileKey(@Nullable String fileKey) {
+            return fileKey == null ? null : fileKey.replace(' ', '_');
+        }
+
+        public boolean matches(StageEntry entry) {
+            return size == entry.getSize()
+                    && lastModified == entry.getLastModified()
+                    && Objects.equals(fileKey, normalizeFileKey(entry.getFileKey()));
+        }
+
+        /*
+         * Format is digest, size, mtime, file key, path, separated by spaces.
+         * The path comes last because it may contain spaces.
+         */
+        public String format() {
+            return String.format("%s %d %d %s %s", digest, size, lastModified, fileKey == null ? NO_FILE_KEY : fileKey, relativePath);
+        }
+
+        @Nullable
+        public static Record parse(String line) {
+            String[] parts = line.split(" ", 5);
+            if (parts.length != 5) {
+                return null;
+            }
+            try {
+                String fileKey = NO_FILE_KEY.equals(parts[3]) ? null : parts[3];
+                return new Record(parts[4], Long.parseLong(parts[1]), Long.parseLong(parts[2]), fileKey, parts[0]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
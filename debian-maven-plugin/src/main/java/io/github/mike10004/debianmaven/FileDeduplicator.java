@@ -0,0 +1,76 @@
+package io.github.mike10004.debianmaven;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Finds regular files in a manifest that are byte-identical to an earlier file,
+ * so that they can be stored in the data archive as hard links. Files are compared
+ * by size and digest, using digests that have already been computed for the
+ * {@code md5sums} control file. Because every name of a hard link shares one
+ * inode when installed, files are grouped only if their mode and ownership match too.
+ */
+public class FileDeduplicator {
+
+    private FileDeduplicator() {}
+
+    /**
+     * Finds duplicate files.
+     * @param manifest the manifest
+     * @param digests map of relative pathname to digest of each regular file
+     * @return map of the relative pathname of each duplicate to the relative pathname
+     * of the first file in manifest order with the same content, in manifest order
+     */
+    public static Map<String, String> findDuplicates(StageManifest manifest, Map<String, String> digests) {
+        Map<Key, String> originals = new HashMap<>();
+        Map<String, String> duplicates = new LinkedHashMap<>();
+        manifest.regularFiles().forEach(entry -> {
+            String digest = digests.get(entry.getRelativePath());
+            // empty files cost nothing to store, so linking them saves nothing
+            if (digest == null || entry.getSize() == 0) {
+                return;
+            }
+            String original = originals.putIfAbsent(new Key(entry, digest), entry.getRelativePath());
+            if (original != null) {
+                duplicates.put(entry.getRelativePath(), original);
+            }
+        });
+        return duplicates;
+    }
+
+    private static class Key {
+
+        private final long size;
+        private final String digest;
+        private final int mode;
+        private final String userName;
+        private final String groupName;
+
+        public Key(StageEntry entry, String digest) {
+            size = entry.getSize();
+            this.digest = digest;
+            mode = entry.getMode();
+            userName = entry.getUserName();
+            groupName = entry.getGroupName();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return size == key.size &&
+                    mode == key.mode &&
+                    digest.equals(key.digest) &&
+                    Objects.equals(userName, key.userName) &&
+                    Objects.equals(groupName, key.groupName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, digest, mode, userName, groupName);
+        }
+    }
+}
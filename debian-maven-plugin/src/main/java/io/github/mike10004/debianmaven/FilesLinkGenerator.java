@@ -5,6 +5,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 
 import javax.annotation.Nullable;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -13,16 +14,31 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileAttribute;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import static java.util.Objects.requireNonNull;
 
 /**
  * Link generator implementation that uses {@link java.nio.file.Files}.
+ * The links files are read line by line into one map from link to target,
+ * so that duplicate entries are created once and conflicting entries are
+ * rejected before any link is created. The parent directory of each link is
+ * created once, and the links of each directory are created by a separate task,
+ * so a package with many directories of links creates them in parallel.
  */
 public class FilesLinkGenerator implements LinkGenerator {
 
+    /**
+     * Minimum number of links for which links are created in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 256;
+
     private final FilesSymlinker symlinker;
     private final LinksLineParser linksLineParser;
     private final Charset encoding;
@@ -44,29 +60,78 @@ public class FilesLinkGenerator implements LinkGenerator {
         if (linksFiles == null || linksFiles.length == 0) {
             return;
         }
-        List<String> linksFileTexts = new ArrayList<>();
+        Map<Path, Map<Path, Path>> linksByDirectory = new LinkedHashMap<>();
+        int linkCount = 0;
         for (File linksFile : linksFiles) {
-            linksFileTexts.add(readLinksFileText(linksFile));
-        }
-        List<LinkSpecification> specifications = new ArrayList<>();
-        for (String linksFileText : linksFileTexts) {
-            List<String> lines = linksFileText.lines().collect(Collectors.toUnmodifiableList());
-            for (String line : lines) {
-                @Nullable LinkSpecification specification = linksLineParser.parseSpecification(line);
-                if (specification != null) {
-                    specifications.add(specification);
+            try (BufferedReader reader = java.nio.file.Files.newBufferedReader(linksFile.toPath(), encoding)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    @Nullable LinkSpecification specification = linksLineParser.parseSpecification(line);
+                    if (specification == null) {
+                        continue;
+                    }
+                    Path source = relativizeSourcePath(specification.sourcePath(), specification.linkPath());
+                    Path link = stageDir.resolve(removeRoot(specification.linkPath()));
+                    Path previous = linksByDirectory.computeIfAbsent(link.getParent(), directory -> new LinkedHashMap<>()).putIfAbsent(link, source);
+                    if (previous == null) {
+                        linkCount++;
+                    } else if (!previous.equals(source)) {
+                        throw new MojoExecutionException("conflicting targets of link " + StringUtils.abbreviate(specification.linkPath(), 256)
+                                + " in " + linksFile.getName() + ": " + StringUtils.abbreviate(previous.toString(), 256) + " and " + StringUtils.abbreviate(source.toString(), 256));
+                    }
                 }
             }
         }
-        for (LinkSpecification specification : specifications) {
-            createLink(specification.sourcePath(), specification.linkPath(), stageDir);
+        for (Path directory : linksByDirectory.keySet()) {
+            java.nio.file.Files.createDirectories(directory);
+        }
+        if (linkCount < PARALLEL_THRESHOLD || linksByDirectory.size() < 2) {
+            for (Map<Path, Path> links : linksByDirectory.values()) {
+                createLinks(links);
+            }
+        } else {
+            createLinksConcurrently(linksByDirectory.values());
         }
     }
 
-    private String readLinksFileText(File linksFile) throws IOException {
-        return java.nio.file.Files.readString(linksFile.toPath(), encoding);
+    private void createLinks(Map<Path, Path> links) throws IOException {
+        for (Map.Entry<Path, Path> link : links.entrySet()) {
+            symlinker.createSymlink(link.getValue(), link.getKey());
+        }
     }
 
+    private void createLinksConcurrently(Collection<Map<Path, Path>> linksByDirectory) throws IOException {
+        Executor executor = WorkerPool.limited(WorkerPool.getParallelism());
+        List<FutureTask<Void>> futures = new ArrayList<>(linksByDirectory.size());
+        for (Map<Path, Path> links : linksByDirectory) {
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                createLinks(links);
+                return null;
+            });
+            futures.add(task);
+            executor.execute(task);
+        }
+        try {
+            for (FutureTask<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while creating links", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("failed to create links", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * Creates symbolic links. Links in different directories may be created
+     * concurrently, so implementations must be thread-safe.
+     */
     public interface FilesSymlinker {
 
         void createSymlink(Path source, Path link, FileAttribute<?>...attrs) throws IOException;
@@ -0,0 +1,161 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+/**
+ * Accumulates a SHA-256 hash over the inputs of a package build.
+ * Stage entries contribute their metadata (path, type, size, mode,
+ * modification time, file key, and link target) rather than their content,
+ * so that computing the fingerprint does not require reading the staged files.
+ * Each stage entry is hashed on its own and the entry hashes are fed into
+ * the overall hash, so the fingerprint is a flat Merkle hash over the stage.
+ */
+public class InputFingerprint {
+
+    private static final String VERSION = "debian-maven-plugin input fingerprint v1";
+
+    private final MessageDigest digest;
+
+    public InputFingerprint() {
+        digest = DigestUtils.getSha256Digest();
+        putString(VERSION);
+    }
+
+    /**
+     * Adds a string value. Values are length-prefixed, so that adjacent
+     * values cannot be confused with each other.
+     * @param value the value; null is distinct from the empty string
+     * @return this instance
+     */
+    public InputFingerprint putString(@Nullable String value) {
+        update(digest, value);
+        return this;
+    }
+
+    public InputFingerprint putStrings(@Nullable String[] values) {
+        if (values == null) {
+            putString(null);
+        } else {
+            putString(String.valueOf(values.length));
+            for (String value : values) {
+                putString(value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the pathname, content and mode of a file. The mode is included because
+     * packaging files such as maintainer scripts are installed with it. A file
+     * that does not exist contributes only its pathname.
+     * @param file the file
+     * @return this instance
+     * @throws IOException on I/O error
+     */
+    public InputFingerprint putFile(File file) throws IOException {
+        putString(file.getAbsolutePath());
+        byte[] content;
+        try {
+            content = java.nio.file.Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            putString(null);
+            return this;
+        }
+        digest.update(DigestUtils.sha256(content));
+        putString(String.valueOf(StageManifest.readMode(file.toPath())));
+        return this;
+    }
+
+    public InputFingerprint putFiles(@Nullable File[] files) throws IOException {
+        if (files == null) {
+            putString(null);
+        } else {
+            putString(String.valueOf(files.length));
+            for (File file : files) {
+                putFile(file);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the metadata of each entry in a manifest. Modification times
+     * of directories are excluded because they change whenever the set of
+     * children changes, and that is already captured by the child entries.
+     * @param manifest the manifest
+     * @return this instance
+     */
+    public InputFingerprint putManifest(StageManifest manifest) {
+        putString(String.valueOf(manifest.entries().size()));
+        MessageDigest entryDigest = DigestUtils.getSha256Digest();
+        for (StageEntry entry : manifest.entries()) {
+            entryDigest.reset();
+            update(entryDigest, entry.getRelativePath());
+            update(entryDigest, entry.getType().name());
+            update(entryDigest, String.valueOf(entry.getMode()));
+            if (entry.getType() != StageEntry.Type.DIRECTORY) {
+                update(entryDigest, String.valueOf(entry.getSize()));
+                update(entryDigest, String.valueOf(entry.getLastModified()));
+                update(entryDigest, entry.getFileKey());
+            }
+            update(entryDigest, entry.getLinkTarget());
+            update(entryDigest, entry.getPath().toString());
+            update(entryDigest, entry.getUserName());
+            update(entryDigest, entry.getGroupName());
+            digest.update(entryDigest.digest());
+        }
+        return this;
+    }
+
+    /**
+     * Gets the fingerprint as a hexadecimal string. This instance should not be used afterwards.
+     * @return the fingerprint
+     */
+    public String toHex() {
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, @Nullable String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) 1);
+        digest.update(new byte[]{
+                (byte) (bytes.length >>> 24),
+                (byte) (bytes.length >>> 16),
+                (byte) (bytes.length >>> 8),
+                (byte) bytes.length,
+        });
+        digest.update(bytes);
+    }
+
+    /**
+     * Reads a fingerprint previously stored in a file.
+     * @param file the file
+     * @return the fingerprint, or null if the file does not exist
+     * @throws IOException on I/O error
+     */
+    @Nullable
+    public static String read(Path file) throws IOException {
+        try {
+            return java.nio.file.Files.readString(file, StandardCharsets.US_ASCII).trim();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    public static void write(Path file, String fingerprint) throws IOException {
+        java.nio.file.Files.writeString(file, fingerprint + System.lineSeparator(), StandardCharsets.US_ASCII);
+    }
+}
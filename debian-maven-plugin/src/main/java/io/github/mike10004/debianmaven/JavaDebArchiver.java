@@ -0,0 +1,410 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Archiver that writes a deb file in-process. This is an alternative to
+ * running {@code fakeroot -- dpkg-deb --build}. Entries are owned by
+ * {@code root:root} in the tar headers, or by the user and group named
+ * by the manifest entry, so no ownership emulation is needed. Regular
+ * files are read from their paths in the manifest, which may be outside
+ * the stage directory.
+ *
+ * <p>
+ * The package file is an {@code ar} archive containing {@code debian-binary},
+ * {@code control.tar} (built from the {@code DEBIAN/} directory of the stage)
+ * and {@code data.tar} (built from everything else in the stage), each
+ * compressed as specified by its {@link CompressionSettings}.
+ * Permission bits, including the setuid, setgid and sticky bits, are copied from
+ * the staged files.
+ *
+ * <p>
+ * With more than one compression thread, gzip and xz archives are compressed in
+ * independent blocks on concurrent threads; see {@link ParallelCompressorOutputStream}.
+ *
+ * <p>
+ * If a source date epoch is given, the package is reproducible: the same manifest and
+ * files produce the same bytes. Members of the package are dated at the epoch, later
+ * modification times of entries are clamped to it, and the data archive is compressed in a layout that does not
+ * depend on the number of threads (see {@link CompressionSettings#openReproducibleStream(OutputStream)}).
+ * Entries are always written in the order of the manifest, which is sorted by pathname.
+ *
+ * <p>
+ * Entries shared by several packages, such as the architecture-independent files of
+ * packages built for several architectures, can be archived and compressed once with
+ * {@link #precompress(StageManifest, Set)}, if the data compression is supported by
+ * {@link ParallelCompressorOutputStream}. The compressed blocks are then spliced into
+ * the data archive of each package, ahead of the entries specific to it.
+ */
+public class JavaDebArchiver {
+
+    static final String CONTROL_DIR_NAME = "DEBIAN";
+
+    private static final String ROOT = "root";
+    private static final String DEBIAN_BINARY_VERSION = "2.0\n";
+    private static final int AR_MEMBER_MODE = 0100644;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path scratchDir;
+    private final CompressionSettings controlCompression;
+    private final CompressionSettings dataCompression;
+    @Nullable
+    private final Instant sourceDateEpoch;
+
+    /**
+     * Constructs an instance that compresses the control archive with gzip
+     * and the data archive with xz, each on a single thread.
+     * @param scratchDir directory where the temporary data archive is written
+     */
+    public JavaDebArchiver(Path scratchDir) {
+        this(scratchDir, CompressionSettings.of(Compression.GZIP), CompressionSettings.of(Compression.XZ));
+    }
+
+    /**
+     * Constructs an instance.
+     * @param scratchDir directory where the temporary data archive is written
+     * @param controlCompression compression of the control archive
+     * @param dataCompression compression of the data archive
+     */
+    public JavaDebArchiver(Path scratchDir, CompressionSettings controlCompression, CompressionSettings dataCompression) {
+        this(scratchDir, controlCompression, dataCompression, null);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param scratchDir directory where the temporary data archive is written
+     * @param controlCompression compression of the control archive
+     * @param dataCompression compression of the data archive
+     * @param sourceDateEpoch source date epoch of a reproducible package, or null
+     */
+    public JavaDebArchiver(Path scratchDir, CompressionSettings controlCompression, CompressionSettings dataCompression, @Nullable Instant sourceDateEpoch) {
+        this.scratchDir = requireNonNull(scratchDir, "scratchDir");
+        this.controlCompression = requireNonNull(controlCompression, "controlCompression");
+        this.dataCompression = requireNonNull(dataCompression, "dataCompression");
+        this.sourceDateEpoch = sourceDateEpoch;
+    }
+
+    /**
+     * Builds a package file from a stage directory.
+     * @param manifest manifest of the stage directory, which must contain the {@code DEBIAN/} directory
+     * @param packageFile pathname of the package file to write
+     * @throws IOException on I/O error
+     */
+    public void buildPackage(StageManifest manifest, Path packageFile) throws IOException {
+        buildPackage(manifest, packageFile, Collections.emptyMap());
+    }
+
+    /**
+     * Builds a package file from a stage directory, storing some regular files as
+     * hard links to others. The content of a linked file is not read.
+     * @param manifest manifest of the stage directory, which must contain the {@code DEBIAN/} directory
+     * @param packageFile pathname of the package file to write
+     * @param hardLinks map of relative pathname of a file to the relative pathname of the
+     *                  file it is a link to, which must precede it in the manifest
+     * @throws IOException on I/O error
+     * @see FileDeduplicator
+     */
+    public void buildPackage(StageManifest manifest, Path packageFile, Map<String, String> hardLinks) throws IOException {
+        buildPackage(manifest, packageFile, hardLinks, Set.of(), null);
+    }
+
+    /**
+     * Builds a package file from a stage directory, optionally computing digests
+     * of each regular file from the same buffer that feeds the data archive,
+     * so that each file is read once. The data archive is written first, and the
+     * control archive is created from the {@code DEBIAN/} directory after the
+     * digests have been passed to the consumer, which may add files to it.
+     * @param manifest manifest of the stage directory, which must contain the {@code DEBIAN/} directory
+     * @param packageFile pathname of the package file to write
+     * @param hardLinks map of relative pathname of a file to the relative pathname of the
+     *                  file it is a link to, which must precede it in the manifest
+     * @param digestAlgorithms algorithms of the digests to compute
+     * @param digestConsumer consumer of the digests, or null if digests are not to be computed
+     * @throws IOException on I/O error
+     */
+    public void buildPackage(StageManifest manifest, Path packageFile, Map<String, String> hardLinks, Set<DigestAlgorithm> digestAlgorithms, @Nullable DigestConsumer digestConsumer) throws IOException {
+        buildPackage(manifest, packageFile, hardLinks, digestAlgorithms, digestConsumer, null);
+    }
+
+    /**
+     * Builds a package file from a stage directory, as {@link #buildPackage(StageManifest, Path, Map, Set, DigestConsumer)}
+     * does, except that entries that were precompressed are not read again. The data archive
+     * begins with the precompressed entries, followed by the other entries of the manifest.
+     * @param manifest manifest of the stage directory, which must contain the {@code DEBIAN/} directory
+     *                 and every entry of the precompressed data
+     * @param packageFile pathname of the package file to write
+     * @param hardLinks map of relative pathname of a file to the relative pathname of the
+     *                  file it is a link to, which must precede it in the data archive
+     * @param digestAlgorithms algorithms of the digests to compute
+     * @param digestConsumer consumer of the digests, or null if digests are not to be computed
+     * @param precompressed entries compressed by an archiver with the same data compression,
+     *                      or null
+     * @throws IOException on I/O error
+     */
+    public void buildPackage(StageManifest manifest, Path packageFile, Map<String, String> hardLinks, Set<DigestAlgorithm> digestAlgorithms, @Nullable DigestConsumer digestConsumer, @Nullable PrecompressedData precompressed) throws IOException {
+        Path controlDir = manifest.getStageDir().resolve(CONTROL_DIR_NAME);
+        if (!java.nio.file.Files.isDirectory(controlDir)) {
+            throw new IOException("control directory not found: " + controlDir);
+        }
+        String controlTarName = "control.tar" + controlCompression.getCompression().getExtension();
+        String dataTarName = "data.tar" + dataCompression.getCompression().getExtension();
+        Path dataTar = java.nio.file.Files.createTempFile(scratchDir, "data", ".tar" + dataCompression.getCompression().getExtension());
+        try {
+            Map<DigestAlgorithm, Map<String, String>> digests = null;
+            if (digestConsumer != null) {
+                digests = new EnumMap<>(DigestAlgorithm.class);
+                for (DigestAlgorithm algorithm : digestAlgorithms) {
+                    digests.put(algorithm, new LinkedHashMap<>());
+                }
+            }
+            OutputStream fileOut = new BufferedOutputStream(java.nio.file.Files.newOutputStream(dataTar), BUFFER_SIZE);
+            if (precompressed == null) {
+                try (OutputStream out = openStream(dataCompression, fileOut)) {
+                    writeTar(manifest, hardLinks, digests, out, null, false);
+                }
+            } else {
+                if (digests != null) {
+                    for (Map.Entry<DigestAlgorithm, Map<String, String>> entry : digests.entrySet()) {
+                        Map<String, String> precomputed = precompressed.digests.get(entry.getKey());
+                        if (precomputed == null) {
+                            throw new IllegalArgumentException("precompressed data has no " + entry.getKey() + " digests");
+                        }
+                        entry.getValue().putAll(precomputed);
+                    }
+                }
+                try (ParallelCompressorOutputStream out = dataCompression.openBlockStream(fileOut, false);
+                     InputStream blocks = new BufferedInputStream(java.nio.file.Files.newInputStream(precompressed.blocksFile), BUFFER_SIZE)) {
+                    out.writeBlocks(blocks, precompressed.blockLengths);
+                    writeTar(manifest, hardLinks, digests, out, precompressed.manifest, false);
+                }
+            }
+            if (digestConsumer != null) {
+                digestConsumer.accept(precompressed == null ? digests : toManifestOrder(manifest, digests));
+            }
+            byte[] controlTar = createControlTar(StageManifest.scan(controlDir));
+            long now = sourceDateEpoch == null ? System.currentTimeMillis() / 1000 : sourceDateEpoch.getEpochSecond();
+            try (ArArchiveOutputStream ar = new ArArchiveOutputStream(new BufferedOutputStream(java.nio.file.Files.newOutputStream(packageFile), BUFFER_SIZE))) {
+                byte[] debianBinary = DEBIAN_BINARY_VERSION.getBytes(StandardCharsets.US_ASCII);
+                ar.putArchiveEntry(new ArArchiveEntry("debian-binary", debianBinary.length, 0, 0, AR_MEMBER_MODE, now));
+                ar.write(debianBinary);
+                ar.closeArchiveEntry();
+                ar.putArchiveEntry(new ArArchiveEntry(controlTarName, controlTar.length, 0, 0, AR_MEMBER_MODE, now));
+                ar.write(controlTar);
+                ar.closeArchiveEntry();
+                ar.putArchiveEntry(new ArArchiveEntry(dataTarName, java.nio.file.Files.size(dataTar), 0, 0, AR_MEMBER_MODE, now));
+                java.nio.file.Files.copy(dataTar, ar);
+                ar.closeArchiveEntry();
+            }
+        } finally {
+            java.nio.file.Files.deleteIfExists(dataTar);
+        }
+    }
+
+    /**
+     * Archives and compresses the entries of a manifest ahead of time, so that they can
+     * be included in the data archives of several packages without being read and
+     * compressed for each. The compressed data is written to a file in the scratch
+     * directory, which is deleted when the returned object is closed.
+     * @param manifest manifest of the entries; its {@code DEBIAN/} directory is not used
+     * @param digestAlgorithms algorithms of the digests to compute while the entries are read
+     * @return the precompressed data
+     * @throws IOException on I/O error
+     */
+    public PrecompressedData precompress(StageManifest manifest, Set<DigestAlgorithm> digestAlgorithms) throws IOException {
+        Path blocksFile = java.nio.file.Files.createTempFile(scratchDir, "data", ".blocks");
+        try {
+            Map<DigestAlgorithm, Map<String, String>> digests = new EnumMap<>(DigestAlgorithm.class);
+            for (DigestAlgorithm algorithm : digestAlgorithms) {
+                digests.put(algorithm, new LinkedHashMap<>());
+            }
+            long[] blockLengths;
+            try (ParallelCompressorOutputStream out = dataCompression.openBlockStream(new BufferedOutputStream(java.nio.file.Files.newOutputStream(blocksFile), BUFFER_SIZE), true)) {
+                writeTar(manifest, Collections.emptyMap(), digests, out, null, true);
+                out.finish();
+                blockLengths = out.getCollectedBlockLengths();
+            }
+            return new PrecompressedData(manifest, blocksFile, blockLengths, digests);
+        } catch (IOException | RuntimeException e) {
+            java.nio.file.Files.deleteIfExists(blocksFile);
+            throw e;
+        }
+    }
+
+    private static Map<DigestAlgorithm, Map<String, String>> toManifestOrder(StageManifest manifest, Map<DigestAlgorithm, Map<String, String>> digests) {
+        Map<DigestAlgorithm, Map<String, String>> ordered = new EnumMap<>(DigestAlgorithm.class);
+        digests.forEach((algorithm, values) -> {
+            Map<String, String> orderedValues = new LinkedHashMap<>(values.size() * 2);
+            manifest.regularFiles().map(StageEntry::getRelativePath).forEach(relativePath -> {
+                String value = values.get(relativePath);
+                if (value != null) {
+                    orderedValues.put(relativePath, value);
+                }
+            });
+            ordered.put(algorithm, orderedValues);
+        });
+        return ordered;
+    }
+
+    private OutputStream openStream(CompressionSettings compression, OutputStream out) throws IOException {
+        return sourceDateEpoch == null ? compression.openStream(out) : compression.openReproducibleStream(out);
+    }
+
+    private byte[] createControlTar(StageManifest controlManifest) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+        try (OutputStream out = openStream(controlCompression, buffer)) {
+            writeTar(controlManifest, Collections.emptyMap(), null, out, null, false);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes entries of a manifest as a tar archive.
+     * @param excluded manifest of entries not to write, because they were precompressed, or null
+     * @param segment whether to write the entries without the end-of-archive marker, so that
+     *                other entries can follow them
+     */
+    private void writeTar(StageManifest manifest, Map<String, String> hardLinks, @Nullable Map<DigestAlgorithm, Map<String, String>> digests, OutputStream out, @Nullable StageManifest excluded, boolean segment) throws IOException {
+        // a segment is padded to single records, so that nothing remains buffered when it ends
+        TarArchiveOutputStream tar = segment ? new TarArchiveOutputStream(out, TarConstants.DEFAULT_RCDSIZE) : new TarArchiveOutputStream(out);
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_STAR);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        MultiDigest digest = digests == null ? null : new MultiDigest(digests.keySet());
+        for (StageEntry stageEntry : manifest.entries()) {
+            String relative = stageEntry.getRelativePath();
+            if (excluded != null && excluded.get(relative) != null) {
+                continue;
+            }
+            TarArchiveEntry entry;
+            switch (stageEntry.getType()) {
+                case DIRECTORY:
+                    entry = new TarArchiveEntry(relative.isEmpty() ? "./" : "./" + relative + "/");
+                    entry.setMode(TarArchiveEntry.DEFAULT_DIR_MODE & ~07777 | stageEntry.getMode());
+                    break;
+                case SYMLINK:
+                    entry = new TarArchiveEntry("./" + relative, TarConstants.LF_SYMLINK);
+                    entry.setLinkName(stageEntry.getLinkTarget());
+                    entry.setMode(0120777);
+                    break;
+                case FILE:
+                    String linkTarget = hardLinks.get(relative);
+                    if (linkTarget != null) {
+                        entry = new TarArchiveEntry("./" + relative, TarConstants.LF_LINK);
+                        entry.setLinkName("./" + linkTarget);
+                    } else {
+                        entry = new TarArchiveEntry("./" + relative);
+                        entry.setSize(stageEntry.getSize());
+                    }
+                    entry.setMode(TarArchiveEntry.DEFAULT_FILE_MODE & ~07777 | stageEntry.getMode());
+                    break;
+                default:
+                    throw new IOException("unsupported file type in stage: " + stageEntry.getPath());
+            }
+            entry.setModTime(sourceDateEpoch == null ? stageEntry.getLastModified() : Math.min(stageEntry.getLastModified(), sourceDateEpoch.toEpochMilli()));
+            setOwnership(entry, stageEntry);
+            tar.putArchiveEntry(entry);
+            if (stageEntry.isRegularFile() && !entry.isLink()) {
+                try (InputStream in = java.nio.file.Files.newInputStream(stageEntry.getPath())) {
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        tar.write(buffer, 0, n);
+                        if (digest != null) {
+                            digest.update(buffer, 0, n);
+                        }
+                    }
+                }
+                if (digest != null) {
+                    digest.finish().forEach((algorithm, value) -> digests.get(algorithm).put(relative, value));
+                }
+            } else if (stageEntry.isRegularFile() && digests != null) {
+                // the original of a hard link precedes it, so its digests are already known
+                digests.values().forEach(values -> values.put(relative, values.get(hardLinks.get(relative))));
+            }
+            tar.closeArchiveEntry();
+        }
+        if (!segment) {
+            tar.finish();
+        }
+    }
+
+    private static void setOwnership(TarArchiveEntry entry, StageEntry stageEntry) {
+        // dpkg resolves owner names at install time; the numeric ids are used only for names it cannot resolve
+        entry.setUserId(0);
+        entry.setGroupId(0);
+        entry.setUserName(stageEntry.getUserName() == null ? ROOT : stageEntry.getUserName());
+        entry.setGroupName(stageEntry.getGroupName() == null ? ROOT : stageEntry.getGroupName());
+    }
+
+    /**
+     * Entries of a data archive that have been archived and compressed ahead of time.
+     */
+    public static class PrecompressedData implements Closeable {
+
+        private final StageManifest manifest;
+        private final Path blocksFile;
+        private final long[] blockLengths;
+        private final Map<DigestAlgorithm, Map<String, String>> digests;
+
+        private PrecompressedData(StageManifest manifest, Path blocksFile, long[] blockLengths, Map<DigestAlgorithm, Map<String, String>> digests) {
+            this.manifest = requireNonNull(manifest, "manifest");
+            this.blocksFile = requireNonNull(blocksFile, "blocksFile");
+            this.blockLengths = requireNonNull(blockLengths, "blockLengths");
+            this.digests = requireNonNull(digests, "digests");
+        }
+
+        public StageManifest getManifest() {
+            return manifest;
+        }
+
+        /**
+         * Gets the digests computed while the entries were archived.
+         * @return map of algorithm to map of relative pathname to hex-encoded digest of each regular file
+         */
+        public Map<DigestAlgorithm, Map<String, String>> getDigests() {
+            return digests;
+        }
+
+        @Override
+        public void close() throws IOException {
+            java.nio.file.Files.deleteIfExists(blocksFile);
+        }
+    }
+
+    /**
+     * Receives the digests computed while the data archive is written.
+     */
+    public interface DigestConsumer {
+
+        /**
+         * Accepts digests. Invoked after the data archive has been written and
+         * before the control archive is created.
+         * @param digests map of algorithm to map of relative pathname to hex-encoded
+         *                digest of each regular file, in manifest order
+         * @throws IOException on I/O error
+         */
+        void accept(Map<DigestAlgorithm, Map<String, String>> digests) throws IOException;
+    }
+}
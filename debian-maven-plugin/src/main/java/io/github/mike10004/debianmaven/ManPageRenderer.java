@@ -0,0 +1,190 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Renders manual pages with {@code groff} and writes them, compressed, into a stage directory.
+ * Pages are rendered concurrently by a bounded pool of workers. Compressed output is cached
+ * in a directory keyed by the page name and a hash of the command and the source content, so
+ * that a page whose source is unchanged is copied from the cache without running {@code groff}.
+ * Only the latest rendering of each page name is kept in the cache. Files included
+ * by a page source (e.g. with {@code .so}) are not part of the key. Sources with the same
+ * file name, which would be installed at the same pathname, are rejected.
+ */
+public class ManPageRenderer {
+
+    private static final String[] RENDER_COMMAND = {"groff", "-man", "-Tascii"};
+
+    private final ProcessRunner processRunner;
+    private final Path cacheDir;
+    private final int parallelism;
+
+    /**
+     * Constructs an instance.
+     * @param processRunner process runner; must be safe for use by multiple threads
+     * @param cacheDir directory where rendered pages are cached
+     * @param parallelism maximum number of pages rendered concurrently
+     */
+    public ManPageRenderer(ProcessRunner processRunner, Path cacheDir, int parallelism) {
+        this.processRunner = requireNonNull(processRunner, "processRunner");
+        this.cacheDir = requireNonNull(cacheDir, "cacheDir");
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public static int getDefaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Tests whether a file is a manual page source, that is, whether its name ends with a section number.
+     * @param file the file
+     * @return true if the file is a manual page source
+     */
+    public static boolean isManPageSource(File file) {
+        return file.isFile() && file.getName().matches(".*[.][1-9]$");
+    }
+
+    /**
+     * Renders manual pages into the stage directory. A page whose
+     * staged copy already has the rendered content is not rewritten.
+     * @param sources the manual page sources
+     * @param stageDir the stage directory
+     * @throws IOException on I/O error
+     * @throws MojoExecutionException if rendering a page fails
+     */
+    public void render(Collection<File> sources, Path stageDir) throws IOException, MojoExecutionException {
+        if (sources.isEmpty()) {
+            return;
+        }
+        // pages are written concurrently, so two sources must not share a target
+        Map<String, File> sourcesByTarget = new HashMap<>(sources.size() * 2);
+        for (File source : sources) {
+            File other = sourcesByTarget.putIfAbsent(getTargetPath(source), source);
+            if (other != null) {
+                throw new MojoExecutionException("manual pages " + other + " and " + source + " would both be installed as /" + getTargetPath(source));
+            }
+        }
+        java.nio.file.Files.createDirectories(cacheDir);
+        List<Callable<Void>> tasks = new ArrayList<>(sources.size());
+        for (File source : sources) {
+            tasks.add(() -> {
+                renderPage(source, stageDir);
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("interrupted while rendering manual pages", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof MojoExecutionException) {
+                throw (MojoExecutionException) cause;
+            }
+            throw new MojoExecutionException("failed to render manual pages", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void renderPage(File source, Path stageDir) throws IOException, MojoExecutionException {
+        Path target = stageDir.resolve(getTargetPath(source));
+        byte[] sourceContent = java.nio.file.Files.readAllBytes(source.toPath());
+        Path cachedPage = cacheDir.resolve(source.getName() + "-" + computeCacheKey(sourceContent) + ".gz");
+        if (!java.nio.file.Files.isRegularFile(cachedPage)) {
+            renderToCache(source, cachedPage);
+            pruneCache(source, cachedPage);
+        }
+        // leave an identical page untouched so that its modification time does not defeat the up-to-date check
+        if (!FileUtils.contentEquals(cachedPage.toFile(), target.toFile())) {
+            java.nio.file.Files.createDirectories(target.getParent());
+            java.nio.file.Files.copy(cachedPage, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the cached renderings of a page other than the latest, so that the cache
+     * does not grow with every edit of a page.
+     */
+    private void pruneCache(File source, Path latest) throws IOException {
+        String prefix = source.getName() + "-";
+        // the key is a SHA-256 in hex, so the length tells entries of this page from those of a page whose name extends it
+        int length = latest.getFileName().toString().length();
+        try (DirectoryStream<Path> entries = java.nio.file.Files.newDirectoryStream(cacheDir)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(".gz") && name.length() == length && !entry.equals(latest)) {
+                    java.nio.file.Files.deleteIfExists(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the pathname of a rendered page relative to the stage directory.
+     */
+    private static String getTargetPath(File source) {
+        char section = source.getName().charAt(source.getName().length() - 1);
+        return String.format("usr/share/man/man%c/%s.gz", section, source.getName());
+    }
+
+    private static String computeCacheKey(byte[] sourceContent) {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        digest.update(String.join(" ", RENDER_COMMAND).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(sourceContent);
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private void renderToCache(File source, Path cachedPage) throws IOException, MojoExecutionException {
+        String[] cmd = Arrays.copyOf(RENDER_COMMAND, RENDER_COMMAND.length + 1);
+        cmd[RENDER_COMMAND.length] = source.getPath();
+        // concurrent builds may populate the same cache entry, so never expose a partially written file
+        Path tempFile = java.nio.file.Files.createTempFile(cacheDir, cachedPage.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(java.nio.file.Files.newOutputStream(tempFile)))) {
+                processRunner.runProcessWithOutput(cmd, out, NonzeroProcessExitAction.throwMojoExecutionException());
+            }
+            java.nio.file.Files.move(tempFile, cachedPage, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            java.nio.file.Files.deleteIfExists(tempFile);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.mike10004.debianmaven;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * Declares files to be installed by a package, read from where they are
+ * rather than copied into the stage directory. Exactly one of {@code artifact},
+ * {@code file} and {@code directory} must be set.
+ */
+public class Mapping {
+
+    private String artifact;
+    private File file;
+    private File directory;
+    private String[] includes;
+    private String[] excludes;
+    private String destination;
+    private String mode;
+    private String directoryMode;
+    private String user;
+    private String group;
+
+    public Mapping() {
+    }
+
+    /**
+     * Gets the pattern that selects resolved project artifacts, of the form
+     * {@code groupId:artifactId[:type[:classifier]]}, where any part may be
+     * {@code *}. The project's own artifact is also matched.
+     * @return the artifact pattern
+     */
+    public String getArtifact() {
+        return artifact;
+    }
+
+    public void setArtifact(String artifact) {
+        this.artifact = artifact;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the Ant-style patterns of files to include from the directory.
+     * All files are included if none are specified.
+     * @return the include patterns
+     */
+    public String[] getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(String[] includes) {
+        this.includes = includes;
+    }
+
+    public String[] getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(String[] excludes) {
+        this.excludes = excludes;
+    }
+
+    /**
+     * Gets the absolute install path. For an artifact or a directory, this is
+     * the directory into which files are installed. For a file, it is the
+     * install path of the file, or the directory into which it is installed
+     * if it ends with {@code /}.
+     * @return the destination
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+
+    /**
+     * Gets the octal permission bits of installed files, e.g. {@code 0644}
+     * or {@code 4755} for a setuid executable. If not set, the permissions of the source files are used.
+     * @return the mode
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Gets the octal permission bits of installed directories. If not set, the
+     * permissions of the source directories are used, and directories that
+     * have no source get {@code 0755}.
+     * @return the directory mode
+     */
+    public String getDirectoryMode() {
+        return directoryMode;
+    }
+
+    public void setDirectoryMode(String directoryMode) {
+        this.directoryMode = directoryMode;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", Mapping.class.getSimpleName() + "(", ")");
+        if (artifact != null) {
+            joiner.add("artifact='" + artifact + "'");
+        }
+        if (file != null) {
+            joiner.add("file=" + file);
+        }
+        if (directory != null) {
+            joiner.add("directory=" + directory);
+            if (includes != null) {
+                joiner.add("includes=" + Arrays.toString(includes));
+            }
+            if (excludes != null) {
+                joiner.add("excludes=" + Arrays.toString(excludes));
+            }
+        }
+        return joiner.add("destination='" + destination + "'").toString();
+    }
+}
@@ -0,0 +1,228 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Adds the files declared by {@link Mapping}s to a stage manifest. Each mapped
+ * entry keeps the path of its source, such as an artifact in the local repository,
+ * so that digests, sizes and archive content are all read from the source and
+ * nothing is copied into the stage directory. Directories that contain mapped
+ * entries but exist neither in the stage nor in a source are added to the manifest
+ * with mode {@code 0755}, or the mapping's directory mode if they are at or below
+ * its destination.
+ */
+public class MappingResolver {
+
+    private static final int DEFAULT_DIRECTORY_MODE = 0755;
+    private static final String WILDCARD = "*";
+
+    private final Collection<Artifact> artifacts;
+
+    /**
+     * Constructs an instance.
+     * @param artifacts resolved artifacts that artifact mappings select from
+     */
+    public MappingResolver(Collection<Artifact> artifacts) {
+        this.artifacts = List.copyOf(artifacts);
+    }
+
+    /**
+     * Creates a manifest that contains the entries of a stage manifest and the mapped entries.
+     * @param staged manifest of the stage directory
+     * @param mappings the mappings
+     * @return a new manifest
+     * @throws IOException on I/O error
+     * @throws MojoExecutionException if a mapping is invalid, matches nothing, or maps
+     * a file to a path that is already taken
+     */
+    public StageManifest resolve(StageManifest staged, Collection<Mapping> mappings) throws IOException, MojoExecutionException {
+        Map<String, StageEntry> entries = new LinkedHashMap<>(staged.entries().size() * 2);
+        staged.entries().forEach(entry -> entries.put(entry.getRelativePath(), entry));
+        for (Mapping mapping : mappings) {
+            ResolvedMapping resolved = new ResolvedMapping(mapping);
+            for (StageEntry entry : resolved.createEntries()) {
+                StageEntry existing = entries.get(entry.getRelativePath());
+                if (existing == null) {
+                    addParents(entries, entry, resolved, staged.getStageDir());
+                    entries.put(entry.getRelativePath(), entry);
+                } else if (existing.getType() != StageEntry.Type.DIRECTORY || entry.getType() != StageEntry.Type.DIRECTORY) {
+                    throw new MojoExecutionException(mapping + " maps " + entry.getPath() + " to /" + entry.getRelativePath() + ", which is already taken by " + existing.getPath());
+                }
+            }
+        }
+        return new StageManifest(staged.getStageDir(), new ArrayList<>(entries.values()));
+    }
+
+    private static void addParents(Map<String, StageEntry> entries, StageEntry entry, ResolvedMapping mapping, Path stageDir) {
+        String relativePath = entry.getRelativePath();
+        for (int slash = relativePath.lastIndexOf('/'); slash > 0; slash = relativePath.lastIndexOf('/', slash - 1)) {
+            String parent = relativePath.substring(0, slash);
+            if (entries.containsKey(parent)) {
+                return;
+            }
+            boolean withinDestination = parent.equals(mapping.destinationDir) || parent.startsWith(mapping.destinationDir + "/");
+            int mode = withinDestination && mapping.directoryMode != null ? mapping.directoryMode : DEFAULT_DIRECTORY_MODE;
+            String userName = withinDestination ? mapping.user : null;
+            String groupName = withinDestination ? mapping.group : null;
+            entries.put(parent, new StageEntry(parent, stageDir.resolve(parent), StageEntry.Type.DIRECTORY, 0, mode, entry.getLastModified(), null, null, userName, groupName));
+        }
+    }
+
+    private static boolean matches(String pattern, Artifact artifact) throws MojoExecutionException {
+        String[] parts = pattern.split(":", -1);
+        if (parts.length < 2 || parts.length > 4) {
+            throw new MojoExecutionException("artifact pattern must have the form groupId:artifactId[:type[:classifier]]: " + StringUtils.abbreviate(pattern, 128));
+        }
+        String[] values = {artifact.getGroupId(), artifact.getArtifactId(), artifact.getType(), StringUtils.defaultString(artifact.getClassifier())};
+        for (int i = 0; i < parts.length; i++) {
+            if (!WILDCARD.equals(parts[i]) && !parts[i].equals(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static Integer parseMode(@Nullable String mode, String name) throws MojoExecutionException {
+        if (mode == null) {
+            return null;
+        }
+        if (!mode.matches("0?[0-7]{1,4}")) {
+            throw new MojoExecutionException(name + " must be an octal number from 0 to 07777: " + StringUtils.abbreviate(mode, 32));
+        }
+        return Integer.parseInt(mode, 8);
+    }
+
+    private static String normalizeDestination(@Nullable String destination) throws MojoExecutionException {
+        if (destination == null || !destination.startsWith("/")) {
+            throw new MojoExecutionException("mapping destination must be an absolute path: " + StringUtils.abbreviate(destination, 128));
+        }
+        String normalized = StringUtils.strip(destination, "/");
+        for (String segment : normalized.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment) || "..".equals(segment)) {
+                throw new MojoExecutionException("mapping destination must be a normalized path: " + StringUtils.abbreviate(destination, 128));
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Mapping with validated parameters.
+     */
+    private class ResolvedMapping {
+
+        private final Mapping mapping;
+        private final String destination;
+        private final String destinationDir;
+        @Nullable
+        private final Integer mode;
+        @Nullable
+        private final Integer directoryMode;
+        @Nullable
+        private final String user;
+        @Nullable
+        private final String group;
+
+        public ResolvedMapping(Mapping mapping) throws MojoExecutionException {
+            this.mapping = requireNonNull(mapping, "mapping");
+            int sources = (mapping.getArtifact() == null ? 0 : 1) + (mapping.getFile() == null ? 0 : 1) + (mapping.getDirectory() == null ? 0 : 1);
+            if (sources != 1) {
+                throw new MojoExecutionException("exactly one of artifact, file and directory must be specified in " + mapping);
+            }
+            destination = normalizeDestination(mapping.getDestination());
+            // a file mapping whose destination does not end with a slash names the installed file
+            boolean destinationIsFile = mapping.getFile() != null && !mapping.getDestination().endsWith("/");
+            destinationDir = destinationIsFile ? StringUtils.substringBeforeLast(destination, "/") : destination;
+            mode = parseMode(mapping.getMode(), "mode");
+            directoryMode = parseMode(mapping.getDirectoryMode(), "directoryMode");
+            user = StringUtils.trimToNull(mapping.getUser());
+            group = StringUtils.trimToNull(mapping.getGroup());
+        }
+
+        public List<StageEntry> createEntries() throws IOException, MojoExecutionException {
+            if (mapping.getArtifact() != null) {
+                return createArtifactEntries();
+            }
+            if (mapping.getFile() != null) {
+                File file = mapping.getFile();
+                if (!file.isFile()) {
+                    throw new MojoExecutionException("mapped file not found: " + file);
+                }
+                String relativePath = destinationDir.equals(destination) ? destination + "/" + file.getName() : destination;
+                return List.of(createFileEntry(relativePath, file.toPath()));
+            }
+            return createDirectoryEntries();
+        }
+
+        private List<StageEntry> createArtifactEntries() throws IOException, MojoExecutionException {
+            List<StageEntry> entries = new ArrayList<>();
+            for (Artifact artifact : artifacts) {
+                if (matches(mapping.getArtifact(), artifact)) {
+                    File file = artifact.getFile();
+                    if (file == null || !file.isFile()) {
+                        throw new MojoExecutionException("artifact " + artifact + " has not been resolved to a file");
+                    }
+                    entries.add(createFileEntry(destination + "/" + file.getName(), file.toPath()));
+                }
+            }
+            if (entries.isEmpty()) {
+                throw new MojoExecutionException("no resolved artifact matches " + StringUtils.abbreviate(mapping.getArtifact(), 128));
+            }
+            return entries;
+        }
+
+        private List<StageEntry> createDirectoryEntries() throws IOException, MojoExecutionException {
+            File directory = mapping.getDirectory();
+            if (!directory.isDirectory()) {
+                throw new MojoExecutionException("mapped directory not found: " + directory);
+            }
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(directory);
+            scanner.setIncludes(mapping.getIncludes());
+            scanner.setExcludes(mapping.getExcludes());
+            scanner.addDefaultExcludes();
+            scanner.setFollowSymlinks(false);
+            scanner.scan();
+            List<StageEntry> entries = new ArrayList<>();
+            for (String name : scanner.getIncludedDirectories()) {
+                Path path = directory.toPath().resolve(name);
+                BasicFileAttributes attrs = java.nio.file.Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                entries.add(StageManifest.createEntry(toDestinationPath(name), path, attrs, directoryMode, user, group));
+            }
+            for (String name : scanner.getIncludedFiles()) {
+                Path path = directory.toPath().resolve(name);
+                BasicFileAttributes attrs = java.nio.file.Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                entries.add(StageManifest.createEntry(toDestinationPath(name), path, attrs, mode, user, group));
+            }
+            return entries;
+        }
+
+        private String toDestinationPath(String scannedName) {
+            String name = scannedName.replace(File.separatorChar, '/');
+            return name.isEmpty() ? destination : destination + "/" + name;
+        }
+
+        private StageEntry createFileEntry(String relativePath, Path path) throws IOException {
+            // artifacts in the local repository may be links, so the attributes of the target are used
+            BasicFileAttributes attrs = java.nio.file.Files.readAttributes(path, BasicFileAttributes.class);
+            return StageManifest.createEntry(relativePath, path, attrs, mode, user, group);
+        }
+    }
+}
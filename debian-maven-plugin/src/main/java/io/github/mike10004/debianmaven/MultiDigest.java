@@ -0,0 +1,50 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Computes digests with several algorithms from the same input, so that data
+ * read once feeds all of them. Instances are not safe for use by multiple threads.
+ */
+public class MultiDigest {
+
+    private final DigestAlgorithm[] algorithms;
+    private final MessageDigest[] digests;
+
+    public MultiDigest(Collection<DigestAlgorithm> algorithms) {
+        this.algorithms = algorithms.toArray(new DigestAlgorithm[0]);
+        digests = new MessageDigest[this.algorithms.length];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = this.algorithms[i].createMessageDigest();
+        }
+    }
+
+    public void update(byte[] buffer, int offset, int length) {
+        for (MessageDigest digest : digests) {
+            digest.update(buffer, offset, length);
+        }
+    }
+
+    public void reset() {
+        for (MessageDigest digest : digests) {
+            digest.reset();
+        }
+    }
+
+    /**
+     * Completes the computation and resets the digests.
+     * @return map of algorithm to hex-encoded digest
+     */
+    public Map<DigestAlgorithm, String> finish() {
+        Map<DigestAlgorithm, String> result = new EnumMap<>(DigestAlgorithm.class);
+        for (int i = 0; i < digests.length; i++) {
+            result.put(algorithms[i], Hex.encodeHexString(digests[i].digest()));
+        }
+        return result;
+    }
+}
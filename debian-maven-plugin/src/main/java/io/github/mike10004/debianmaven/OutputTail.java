@@ -0,0 +1,62 @@
+package io.github.mike10004.debianmaven;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Last lines of the output of a process. The tail holds at most a given number
+ * of lines and of characters; older lines are dropped as new lines are added.
+ * Lines may be added from any thread.
+ */
+public class OutputTail {
+
+    public static final int DEFAULT_MAX_LINES = 200;
+    public static final int DEFAULT_MAX_CHARS = 64 * 1024;
+
+    private static final String TRUNCATION_MARK = "...";
+
+    private final int maxLines;
+    private final int maxChars;
+    private final Deque<String> lines;
+    private long chars;
+    private long droppedLines;
+
+    public OutputTail(int maxLines, int maxChars) {
+        if (maxLines < 1 || maxChars <= TRUNCATION_MARK.length()) {
+            throw new IllegalArgumentException("tail must hold at least one line and a few characters");
+        }
+        this.maxLines = maxLines;
+        this.maxChars = maxChars;
+        lines = new ArrayDeque<>(Math.min(maxLines, 1024));
+    }
+
+    /**
+     * Adds a line. A line longer than the character limit keeps only its end.
+     * @param line the line
+     */
+    public synchronized void add(String line) {
+        if (line.length() > maxChars) {
+            line = TRUNCATION_MARK + line.substring(line.length() - maxChars + TRUNCATION_MARK.length());
+        }
+        lines.addLast(line);
+        chars += line.length();
+        while (lines.size() > maxLines || chars > maxChars) {
+            chars -= lines.removeFirst().length();
+            droppedLines++;
+        }
+    }
+
+    public synchronized List<String> getLines() {
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * Gets the number of lines that were added but are no longer held.
+     * @return the number of dropped lines
+     */
+    public synchronized long getDroppedLines() {
+        return droppedLines;
+    }
+}
@@ -1,46 +1,66 @@
 package io.github.mike10004.debianmaven;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 
 import javax.annotation.Nullable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Year;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
 
 /**
  * Generates a Debian package.
  *
- * Uses Debian utilities: <a href="http://www.debian.org/doc/manuals/debian-faq/ch-pkgtools.en.html">dpkg-deb</a> and fakeroot.
+ * Uses Debian utilities: <a href="http://www.debian.org/doc/manuals/debian-faq/ch-pkgtools.en.html">dpkg-deb</a> and fakeroot,
+ * unless the {@code java} archiver is selected.
  *
  * @goal package
  * @phase package
  * @requiresDependencyResolution
+ * @threadSafe
  */
-public class PackageMojo extends AbstractDebianMojo
+public class PackageMojo extends AbstractDebianMojo implements Cloneable
 {
 
+	private static final String ARCHIVER_DPKG_DEB = "dpkg-deb";
+	private static final String ARCHIVER_JAVA = "java";
+	private static final String COMPRESSION_AUTO = "auto";
+	private static final String DIGESTS_OUTPUT_CONTROL = "control";
+	private static final String DIGESTS_OUTPUT_TARGET = "target";
+
 	/**
 	 * Package priority.
 	 * @required
@@ -134,6 +154,105 @@ public class PackageMojo extends AbstractDebianMojo
 	 */
 	protected File[] linksFiles;
 
+	/**
+	 * Files to install from where they are, without copying them into the
+	 * stage directory first. Each element must have exactly one of the children
+	 * {@code <artifact>}, {@code <file>} and {@code <directory>}, and a
+	 * {@code <destination>} that is an absolute install path. Example:
+	 * <pre>
+	 *     &lt;mappings&gt;
+	 *         &lt;mapping&gt;
+	 *             &lt;artifact&gt;*:*:jar&lt;/artifact&gt;
+	 *             &lt;destination&gt;/usr/share/foo/lib&lt;/destination&gt;
+	 *         &lt;/mapping&gt;
+	 *         &lt;mapping&gt;
+	 *             &lt;directory&gt;${project.build.directory}/conf&lt;/directory&gt;
+	 *             &lt;includes&gt;&lt;include&gt;**&#47;*.properties&lt;/include&gt;&lt;/includes&gt;
+	 *             &lt;destination&gt;/etc/foo&lt;/destination&gt;
+	 *             &lt;mode&gt;0640&lt;/mode&gt;
+	 *             &lt;group&gt;foo&lt;/group&gt;
+	 *         &lt;/mapping&gt;
+	 *     &lt;/mappings&gt;
+	 * </pre>
+	 * An artifact pattern has the form {@code groupId:artifactId[:type[:classifier]]},
+	 * where any part may be {@code *}, and selects from the resolved dependencies and
+	 * the project's own artifact. The {@code java} archiver reads mapped files directly
+	 * and supports {@code <user>} and {@code <group>}. The {@code dpkg-deb} archiver
+	 * needs the files in the stage directory, so they are hard-linked there (or copied,
+	 * if that fails or the mode differs) for the duration of the build; it installs
+	 * every file as owned by root.
+	 * @parameter
+	 * @since 3.4
+	 */
+	protected Mapping[] mappings;
+
+	/**
+	 * Binary packages to build instead of the single package configured by the
+	 * other parameters. The packages are built concurrently. Each element must have
+	 * a {@code <name>}, and may have a {@code <stageDir>}, which defaults to the
+	 * subdirectory of {@code stageDir} with the package name, and a
+	 * {@code <sourceDir>}, which defaults to the subdirectory of {@code sourceDir}
+	 * with the package name. Example:
+	 * <pre>
+	 *     &lt;packages&gt;
+	 *         &lt;package&gt;
+	 *             &lt;name&gt;foo&lt;/name&gt;
+	 *             &lt;dependencies&gt;&lt;dependency&gt;foo-common&lt;/dependency&gt;&lt;/dependencies&gt;
+	 *         &lt;/package&gt;
+	 *         &lt;package&gt;
+	 *             &lt;name&gt;foo-common&lt;/name&gt;
+	 *             &lt;mappings&gt;...&lt;/mappings&gt;
+	 *         &lt;/package&gt;
+	 *     &lt;/packages&gt;
+	 * </pre>
+	 * An element may also have {@code <filename>}, {@code <title>},
+	 * {@code <description>}, {@code <section>}, {@code <priority>},
+	 * {@code <dependencies>} and {@code <conflicts>}, which default to the
+	 * values of the corresponding parameters, and {@code <control>},
+	 * {@code <packagingFiles>}, {@code <linksFiles>} and {@code <mappings>},
+	 * which apply only to that package. The stage directories are scanned
+	 * together where they share a parent, and the packages share one digest
+	 * cache.
+	 * @parameter
+	 * @since 3.4
+	 */
+	protected BinaryPackage[] packages;
+
+	/**
+	 * Architectures to build the package for, instead of {@code packageArchitecture}.
+	 * The stage directory holds the content that is the same for every architecture,
+	 * and each architecture may have an overlay directory with the files that only its
+	 * package installs. Example:
+	 * <pre>
+	 *     &lt;architectures&gt;
+	 *         &lt;architecture&gt;&lt;name&gt;amd64&lt;/name&gt;&lt;/architecture&gt;
+	 *         &lt;architecture&gt;
+	 *             &lt;name&gt;arm64&lt;/name&gt;
+	 *             &lt;overlayDir&gt;${project.build.directory}/native/arm64&lt;/overlayDir&gt;
+	 *         &lt;/architecture&gt;
+	 *     &lt;/architectures&gt;
+	 * </pre>
+	 * The shared content is scanned and hashed once, and the packages are built
+	 * concurrently. With the {@code java} archiver and {@code gzip}, {@code xz} or
+	 * {@code none} compression, the shared content is also archived and compressed
+	 * once, and the compressed blocks are copied into the data archive of each package.
+	 * An overlay may add files to directories of the shared content, but not replace
+	 * its files. This cannot be combined with {@code packages} or {@code packageFilename}.
+	 * @parameter
+	 * @since 3.4
+	 */
+	protected Architecture[] architectures;
+
+	/**
+	 * Maximum number of elements of {@code packages} or {@code architectures} that are
+	 * built concurrently. Defaults to the number of available processors. Unless they
+	 * are set, the compression and hash threads of each package are the available
+	 * processors divided by this number.
+	 * @parameter property="deb.package.threads"
+	 * @since 3.4
+	 */
+	protected Integer packageThreads;
+
 	/**
 	 * List of options to pass to the {@code dpkg-deb --build} command.
 	 * These options are inserted between {@code dpkg-deb} and {@code --build package_file.deb}.
@@ -158,6 +277,176 @@ public class PackageMojo extends AbstractDebianMojo
 	 */
 	protected NameValuePair[] dpkgDebBuildEnvironment;
 
+	/**
+	 * Tool that assembles the package file. The default, {@code dpkg-deb},
+	 * runs {@code fakeroot -- dpkg-deb --build}. The value {@code java} writes
+	 * the package in-process, setting root ownership directly in the archive
+	 * headers; with that archiver, {@code dpkgDebBuildOptions} and
+	 * {@code dpkgDebBuildEnvironment} are ignored.
+	 * @parameter property="deb.archiver" default-value="dpkg-deb"
+	 * @since 3.4
+	 */
+	protected String archiver;
+
+	/**
+	 * Compression format of the data archive in the package file: {@code xz},
+	 * {@code gzip}, {@code zstd}, {@code none} or {@code auto}. If not set,
+	 * {@code xz} is used. With the {@code dpkg-deb} archiver, the value is passed
+	 * as the {@code -Z} option. Packages compressed with {@code zstd} require
+	 * dpkg 1.21.18 or later to install.
+	 *
+	 * <p>
+	 * With {@code auto}, a sample of the stage is compressed with several formats
+	 * and levels, and the one with the smallest output that is estimated to compress
+	 * the whole stage within {@code compressionTimeBudget} is used; a faster one is
+	 * preferred if its output is nearly as small. {@code zstd} is considered only
+	 * if {@code compressionAutoZstd} is set. The {@code compression-report}
+	 * goal shows the measurements.
+	 * @parameter property="deb.compression"
+	 * @since 3.4
+	 */
+	protected String compression;
+
+	/**
+	 * Whether {@code <compression>auto</compression>} may choose {@code zstd},
+	 * whose packages require dpkg 1.21.18 or later to install.
+	 * @parameter property="deb.compression.autoZstd" default-value="false"
+	 * @since 3.4
+	 */
+	protected boolean compressionAutoZstd;
+
+	/**
+	 * Time budget in seconds for compressing the data archive, used by {@code <compression>auto</compression>}.
+	 * @parameter property="deb.compression.timeBudget" default-value="30"
+	 * @since 3.4
+	 */
+	protected int compressionTimeBudget;
+
+	/**
+	 * Maximum number of bytes sampled from the stage by {@code <compression>auto</compression>}.
+	 * @parameter property="deb.compression.sampleSize" default-value="4194304"
+	 * @since 3.4
+	 */
+	protected int compressionSampleSize;
+
+	/**
+	 * Compression level of the data archive: 1 to 9 for {@code gzip}, 0 to 9
+	 * for {@code xz}, and 1 to 22 for {@code zstd}. If not set, the default
+	 * level of the format is used. With the {@code dpkg-deb} archiver, the value
+	 * is passed as the {@code -z} option.
+	 * @parameter property="deb.compression.level"
+	 * @since 3.4
+	 */
+	protected Integer compressionLevel;
+
+	/**
+	 * Compression format of the control archive in the package file. If not set,
+	 * the {@code java} archiver uses {@code gzip} and the {@code dpkg-deb} archiver
+	 * uses the same compression as the data archive. The {@code dpkg-deb}
+	 * archiver supports only {@code gzip} or the compression of the data archive.
+	 * @parameter property="deb.control.compression"
+	 * @since 3.4
+	 */
+	protected String controlCompression;
+
+	/**
+	 * Compression level of the control archive. Supported only by the {@code java} archiver.
+	 * @parameter property="deb.control.compression.level"
+	 * @since 3.4
+	 */
+	protected Integer controlCompressionLevel;
+
+	/**
+	 * Number of threads used to compress the data archive. With the {@code java}
+	 * archiver, this defaults to the number of available processors, and the
+	 * archive is compressed in independent blocks when more than one thread is used.
+	 * With the {@code dpkg-deb} archiver, the value is passed as the
+	 * {@code --threads-max} option if set. Blocks are compressed by worker threads
+	 * shared by every execution in the JVM, whose number is set by the
+	 * {@code deb.workers} system property.
+	 * @parameter property="deb.compression.threads"
+	 * @since 3.4
+	 */
+	protected Integer compressionThreads;
+
+	/**
+	 * Size in bytes of each independently compressed block of the data archive,
+	 * when it is compressed on multiple threads by the {@code java} archiver.
+	 * Larger blocks compress better and use more memory. Defaults to 8 MiB.
+	 * @parameter property="deb.compression.blockSize"
+	 * @since 3.4
+	 */
+	protected Integer compressionBlockSize;
+
+	/**
+	 * Number of threads used to compute digests of staged files.
+	 * Defaults to the number of available processors. The {@code java}
+	 * archiver computes digests from the data it reads for the archive
+	 * instead, so that each file is read once, unless {@code deduplicate}
+	 * is enabled. Files are hashed by the worker threads shared by every
+	 * execution in the JVM.
+	 * @parameter property="deb.hash.threads"
+	 * @since 3.4
+	 */
+	protected Integer hashThreads;
+
+	/**
+	 * Digest algorithms of checksums to generate in addition to {@code md5sums}:
+	 * {@code sha256} and {@code sha512}. All digests of a file are computed from
+	 * the same read, so additional algorithms cost CPU time but no additional I/O.
+	 * Each algorithm produces a file in the format of {@code md5sums}, such as
+	 * {@code sha256sums}, which is written where {@code digestsOutput} specifies.
+	 * @parameter property="deb.digests"
+	 * @since 3.4
+	 */
+	protected String[] digestAlgorithms;
+
+	/**
+	 * Where the checksum files of {@code digestAlgorithms} are written. With
+	 * {@code control}, they are added to the control archive of the package,
+	 * next to {@code md5sums}. With {@code target}, they are written next to the
+	 * package file, with the name of the package file plus a suffix such as
+	 * {@code .sha256sums}.
+	 * @parameter property="deb.digests.output" default-value="control"
+	 * @since 3.4
+	 */
+	protected String digestsOutput;
+
+	/**
+	 * Whether to cache file digests between builds. Cached digests are stored
+	 * under {@code targetDir} and reused for files whose size, modification time
+	 * and inode are unchanged, so that unchanged files are not read again.
+	 * @parameter property="deb.hash.cache" default-value="true"
+	 * @since 3.4
+	 */
+	protected boolean hashCache;
+
+	/**
+	 * Whether to store regular files that are byte-identical to another file in the
+	 * package as hard links to it, so that their content is stored and installed once.
+	 * Files are compared by size and MD5 digest, and grouped only if their mode and
+	 * ownership are the same. The {@code md5sums} file still lists every path. With the
+	 * {@code dpkg-deb} archiver, duplicates in the stage directory are replaced with
+	 * hard links while the package is built and restored afterwards; mapped files are
+	 * not deduplicated.
+	 * @parameter property="deb.deduplicate" default-value="false"
+	 * @since 3.4
+	 */
+	protected boolean deduplicate;
+
+	/**
+	 * Whether to skip building the package if its inputs have not changed
+	 * since the last build. The inputs are the contents of the stage directory
+	 * after manual pages, copyright file and links have been generated,
+	 * the packaging and links files, the parameters that affect the control
+	 * file and the archiver, and the version of this plugin. A fingerprint of the inputs is stored next to the
+	 * package file. Staged files are compared by size, modification time and
+	 * inode, not by content.
+	 * @parameter property="deb.upToDateCheck" default-value="true"
+	 * @since 3.4
+	 */
+	protected boolean upToDateCheck;
+
 	/**
 	 * Maven project object.
 	 * 
@@ -166,9 +455,34 @@ public class PackageMojo extends AbstractDebianMojo
 	@SuppressWarnings("unused") // injected
 	private MavenProject project;
 
+	/**
+	 * Version of this plugin, which is part of the fingerprint of the inputs,
+	 * so that a package built by another version is not considered up to date.
+	 *
+	 * @parameter default-value="${plugin.version}"
+	 * @readonly
+	 */
+	private String pluginVersion;
+
 	// services
 	private final LinkGenerator linkGenerator;
 
+	// caches shared by the packages of one execution, or null if this builds a single package
+	@Nullable
+	private Map<DigestAlgorithm, DigestCache> sharedDigestCaches;
+	private String digestCacheScope = "";
+	// content shared by the packages of several architectures, or null
+	@Nullable
+	private SharedContent sharedContent;
+	// data compression chosen once for several architectures, or null
+	@Nullable
+	private CompressionBenchmark.Candidate chosenCompression;
+	// share of the processors of one of several packages built concurrently, used if compressionThreads is not set
+	@Nullable
+	private Integer defaultCompressionThreads;
+	// shared with the copies that build the packages of one execution
+	private BuildReport report = new BuildReport();
+
 	public PackageMojo(LinkGenerator linkGenerator) {
 		this.linkGenerator = requireNonNull(linkGenerator, "linkGenerator");
 	}
@@ -177,7 +491,7 @@ public class PackageMojo extends AbstractDebianMojo
 		this(new FilesLinkGenerator());
 	}
 
-	private void generateCopyright() throws IOException
+	private File generateCopyright() throws IOException
 	{
 		File targetDocDir = new File(stageDir, "usr/share/doc/" + packageName);
 		//noinspection ResultOfMethodCallIgnored
@@ -189,7 +503,9 @@ public class PackageMojo extends AbstractDebianMojo
 			out.println(packageName);
 			out.println(projectUrl);
 			out.println();
-			out.printf("Copyright %d %s\n", Calendar.getInstance().get(Calendar.YEAR), projectOrganization);
+			Instant epoch = getSourceDateEpoch();
+			int year = epoch == null ? Year.now().getValue() : epoch.atOffset(ZoneOffset.UTC).getYear();
+			out.printf("Copyright %d %s\n", year, projectOrganization);
 			out.println();
 			out.println("The entire code base may be distributed under the terms of the GNU General");
 			out.println("Public License (GPL).");
@@ -197,6 +513,7 @@ public class PackageMojo extends AbstractDebianMojo
 			out.println("See /usr/share/common-licenses/GPL");
 			out.close();
 		}
+		return copyrightFile;
 	}
 
 	@Override
@@ -213,9 +530,14 @@ public class PackageMojo extends AbstractDebianMojo
         return new File(targetDir, filename);
     }
 
-    private void generateControl(File target) throws IOException {
+	private File getCacheDir()
+	{
+		return new File(targetDir, "deb-cache");
+	}
+
+    private void generateControl(StageManifest manifest, File target) throws IOException {
 		getLog().info("Generating control file: " + target);
-		List<ControlFileLine> lines = new ArrayList<>(generateKnownControlLines());
+		List<ControlFileLine> lines = new ArrayList<>(generateKnownControlLines(manifest));
 		if (control != null) {
 			lines.addAll(Arrays.asList(control));
 		}
@@ -234,7 +556,7 @@ public class PackageMojo extends AbstractDebianMojo
 		}
 	}
 
-    private List<ControlFileLine> generateKnownControlLines() throws IOException
+    private List<ControlFileLine> generateKnownControlLines(StageManifest manifest)
 	{
 		List<ControlFileLine> lines = new ArrayList<>();
 		addIfValueNotNull("Package", requireNonNull(packageName, "packageName"), lines);
@@ -248,7 +570,8 @@ public class PackageMojo extends AbstractDebianMojo
 		if (packageConflicts != null && packageConflicts.length > 0) {
 			addIfValueNotNull("Conflicts", StringUtils.join(processVersion(packageConflicts), ", "), lines);
 		}
-		long installedSizeKb = 1 + FileUtils.sizeOfDirectory(stageDir) / 1024;
+		// only regular files are counted; symlinks and directories add nothing
+		long installedSizeKb = 1 + manifest.regularFiles().mapToLong(StageEntry::getSize).sum() / 1024;
 		addIfValueNotNull("Installed-Size", String.valueOf(installedSizeKb), lines);
 		String value = null;
 		if (maintainerName != null && maintainerEmail == null) {
@@ -284,20 +607,13 @@ public class PackageMojo extends AbstractDebianMojo
 		return sb.toString();
 	}
 
-	private void generateConffiles(File target) throws IOException
+	private void generateConffiles(StageManifest manifest, File target) throws IOException
 	{
-		List<String> conffiles = new ArrayList<>();
-
-		File configDir = new File(stageDir, "etc");
-		if (configDir.exists())
-		{
-			Collection<File> files = FileUtils.listFiles(configDir, null, true);
-			for (File f : files)
-			{
-				if (f.isFile())
-					conffiles.add(f.toString().substring(stageDir.toString().length()));
-			}
-		}
+		List<String> conffiles = manifest.regularFiles()
+				.map(StageEntry::getRelativePath)
+				.filter(relativePath -> relativePath.startsWith("etc/"))
+				.map(relativePath -> "/" + relativePath)
+				.collect(Collectors.toList());
 
 		if (conffiles.size() > 0)
 		{
@@ -308,78 +624,515 @@ public class PackageMojo extends AbstractDebianMojo
 		}
 	}
 
-	private void generateMd5Sums(File target) throws IOException
+	private Path getDigestCacheFile(DigestAlgorithm algorithm)
 	{
-		try (PrintWriter out = new PrintWriter(new FileWriter(target))) {
-			Collection<File> files = FileUtils.listFiles(stageDir, null, true);
-			for (File f : files) {
-				// check whether the file is a non-regular file
-				if (!f.isFile())
-					continue;
+		return getCacheDir().toPath().resolve(packageName + "." + algorithm.getName() + "cache");
+	}
 
-				// check whether the file is a possible link
-				if (!f.getAbsolutePath().equals(f.getCanonicalPath()))
-					continue;
+	private Set<DigestAlgorithm> getDigestAlgorithms() throws MojoExecutionException
+	{
+		Set<DigestAlgorithm> algorithms = EnumSet.of(DigestAlgorithm.MD5);
+		if (digestAlgorithms != null) {
+			for (String name : digestAlgorithms) {
+				DigestAlgorithm algorithm = DigestAlgorithm.fromName(name);
+				if (algorithm == null) {
+					throw new MojoExecutionException("unsupported digest algorithm: " + StringUtils.abbreviate(name, 128) + "; supported values are " + DigestAlgorithm.describeNames());
+				}
+				algorithms.add(algorithm);
+			}
+		}
+		return algorithms;
+	}
+
+	private Map<DigestAlgorithm, Map<String, String>> generateChecksums(StageManifest manifest) throws IOException, MojoExecutionException
+	{
+		// the manifest excludes the DEBIAN directory, and links are not regular files
+		int threads = hashThreads == null || hashThreads < 1 ? StageDigester.getDefaultParallelism() : hashThreads;
+		Map<DigestAlgorithm, DigestCache> caches = openDigestCaches(true);
+		Map<DigestAlgorithm, Map<String, String>> digests;
+		if (sharedContent == null) {
+			digests = new StageDigester(threads, caches).digestAll(manifest);
+		} else {
+			// only the files of the overlay remain to be hashed
+			List<StageEntry> own = manifest.entries().stream()
+					.filter(entry -> !sharedContent.contains(entry))
+					.collect(Collectors.toList());
+			Map<DigestAlgorithm, Map<String, String>> ownDigests = new StageDigester(threads, caches).digestAll(new StageManifest(manifest.getStageDir(), own));
+			digests = new EnumMap<>(DigestAlgorithm.class);
+			for (Map.Entry<DigestAlgorithm, Map<String, String>> entry : ownDigests.entrySet()) {
+				Map<String, String> shared = requireNonNull(sharedContent.digests.get(entry.getKey()));
+				Map<String, String> values = new LinkedHashMap<>();
+				manifest.regularFiles().map(StageEntry::getRelativePath).forEach(relativePath -> {
+					String digest = entry.getValue().get(relativePath);
+					values.put(relativePath, digest == null ? requireNonNull(shared.get(relativePath), relativePath) : digest);
+				});
+				digests.put(entry.getKey(), values);
+			}
+		}
+		saveDigestCaches(caches);
+		writeChecksums(digests);
+		return digests;
+	}
 
-				String fname = f.toString().substring(stageDir.toString().length() + 1);
-				if (!fname.startsWith("DEBIAN")) {
-					FileInputStream fis = new FileInputStream(f);
-					String md5 = DigestUtils.md5Hex(fis);
-					fis.close();
+	/**
+	 * Writes {@code md5sums} to the control directory, and the files of additional
+	 * algorithms where {@code digestsOutput} specifies.
+	 */
+	private void writeChecksums(Map<DigestAlgorithm, Map<String, String>> digests) throws IOException, MojoExecutionException
+	{
+		String output = digestsOutput == null ? DIGESTS_OUTPUT_CONTROL : digestsOutput;
+		if (!DIGESTS_OUTPUT_CONTROL.equals(output) && !DIGESTS_OUTPUT_TARGET.equals(output)) {
+			throw new MojoExecutionException("unsupported digests output: " + StringUtils.abbreviate(output, 128) + "; supported values are " + DIGESTS_OUTPUT_CONTROL + " and " + DIGESTS_OUTPUT_TARGET);
+		}
+		File controlDir = new File(stageDir, JavaDebArchiver.CONTROL_DIR_NAME);
+		for (Map.Entry<DigestAlgorithm, Map<String, String>> entry : digests.entrySet()) {
+			DigestAlgorithm algorithm = entry.getKey();
+			File target;
+			if (algorithm == DigestAlgorithm.MD5 || DIGESTS_OUTPUT_CONTROL.equals(output)) {
+				target = new File(controlDir, algorithm.getSumsFileName());
+			} else {
+				target = new File(targetDir, getPackageFile().getName() + "." + algorithm.getSumsFileName());
+			}
+			try (PrintWriter out = new PrintWriter(new FileWriter(target))) {
+				entry.getValue().forEach((relativePath, digest) -> out.printf("%s  %s\n", digest, relativePath));
+			}
+		}
+	}
 
-					out.printf("%s  %s\n", md5, fname);
+	/**
+	 * Writes digests computed by the java archiver while it wrote the data archive.
+	 */
+	private void writeArchivedChecksums(StageManifest manifest, Map<DigestAlgorithm, Map<String, String>> digests) throws IOException, MojoExecutionException
+	{
+		writeChecksums(digests);
+		// every digest is fresh, so each cache is replaced rather than merged
+		Map<DigestAlgorithm, DigestCache> caches = openDigestCaches(false);
+		for (Map.Entry<DigestAlgorithm, Map<String, String>> entry : digests.entrySet()) {
+			DigestCache cache = caches.get(entry.getKey());
+			entry.getValue().forEach((relativePath, digest) -> {
+				StageEntry file = requireNonNull(manifest.get(relativePath));
+				// digests of shared content are cached by the execution that computed them
+				if (sharedContent == null || !sharedContent.contains(file)) {
+					cache.put(file, digest);
 				}
+			});
+		}
+		saveDigestCaches(caches);
+	}
+
+	/**
+	 * Gets the digest caches of this package, one for each digest algorithm.
+	 * @param load whether to load the caches saved by the previous build, if this
+	 *             package does not share caches with other packages
+	 */
+	private Map<DigestAlgorithm, DigestCache> openDigestCaches(boolean load) throws IOException, MojoExecutionException
+	{
+		Map<DigestAlgorithm, DigestCache> caches = new EnumMap<>(DigestAlgorithm.class);
+		for (DigestAlgorithm algorithm : getDigestAlgorithms()) {
+			DigestCache cache;
+			if (sharedDigestCaches != null) {
+				cache = requireNonNull(sharedDigestCaches.get(algorithm)).scoped(digestCacheScope);
+			} else {
+				cache = hashCache && load ? DigestCache.load(getDigestCacheFile(algorithm)) : DigestCache.empty();
 			}
+			caches.put(algorithm, cache);
 		}
+		return caches;
 	}
 
-	private void generateManPages() throws MojoExecutionException, IOException
+	private void saveDigestCaches(Map<DigestAlgorithm, DigestCache> caches) throws IOException
+	{
+		// shared caches are saved once all packages have been built
+		if (hashCache && sharedDigestCaches == null)
+		{
+			for (Map.Entry<DigestAlgorithm, DigestCache> cache : caches.entrySet()) {
+				cache.getValue().save(getDigestCacheFile(cache.getKey()));
+			}
+		}
+	}
+
+	/**
+	 * Renders manual pages into the stage directory.
+	 * @return manual page sources
+	 */
+	private List<File> generateManPages() throws MojoExecutionException, IOException
 	{
 		File source = new File(sourceDir, "man");
 		if (!source.exists())
 		{
 			getLog().info("No manual page directory found: "+source);
-			return;
+			return Collections.emptyList();
 		}
 
-		int npages = 0;
-		Collection<File> files = FileUtils.listFiles(source, null, true);
-		for (File f : files)
-		{
-			if (f.isFile() && f.getName().matches(".*[.][1-9]$"))
-			{
-				char section = f.getName().charAt(f.getName().length()-1);
-				File target = new File(stageDir, String.format("usr/share/man/man%c/%s.gz", section, f.getName()));
-				//noinspection ResultOfMethodCallIgnored
-				target.getParentFile().mkdirs();
+		List<File> pages = FileUtils.listFiles(source, null, true).stream()
+				.filter(ManPageRenderer::isManPageSource)
+				.collect(Collectors.toList());
+		if (pages.isEmpty()) {
+			getLog().debug("No manual pages found in directory: " + source);
+			return pages;
+		}
+		Path cacheDir = getCacheDir().toPath().resolve("man");
+		new ManPageRenderer(createProcessRunner(), cacheDir, ManPageRenderer.getDefaultParallelism()).render(pages, stageDir.toPath());
+		return pages;
+	}
 
-				String[] cmd = {"groff", "-man", "-Tascii", f.getPath()};
-				byte[] processOutput = createProcessRunner().runProcessWithOutput(cmd, NonzeroProcessExitAction.throwMojoExecutionException());
+	private String getArchiver() throws MojoExecutionException
+	{
+		String archiver = this.archiver == null ? ARCHIVER_DPKG_DEB : this.archiver;
+		if (!ARCHIVER_DPKG_DEB.equals(archiver) && !ARCHIVER_JAVA.equals(archiver)) {
+			throw new MojoExecutionException("unsupported archiver: " + StringUtils.abbreviate(archiver, 128) + "; supported values are " + ARCHIVER_DPKG_DEB + " and " + ARCHIVER_JAVA);
+		}
+		return archiver;
+	}
+
+	/**
+	 * Tests whether digests of staged files are computed by the archiver while it reads
+	 * the files, instead of in a separate pass before the package is built.
+	 */
+	private boolean isDigestedWhileArchiving(String archiver)
+	{
+		// deduplication must know the digests before the first file is archived
+		if (!ARCHIVER_JAVA.equals(archiver) || deduplicate) {
+			return false;
+		}
+		// shared content that was not precompressed has been hashed already, and the overlay is hashed separately
+		return sharedContent == null || sharedContent.precompressed != null;
+	}
 
-				try (GZIPOutputStream os = new GZIPOutputStream(new FileOutputStream(target))) {
-					os.write(processOutput);
+	/**
+	 * Builds the package file.
+	 * @param md5s digests of the regular files, or null if the archiver is to compute them
+	 */
+	private void generatePackage(StageManifest manifest, @Nullable Map<String, String> md5s) throws IOException, MojoExecutionException
+	{
+		String archiver = getArchiver();
+		Compression dataFormat;
+		Integer dataLevel;
+		if (chosenCompression != null) {
+			dataFormat = chosenCompression.getCompression();
+			dataLevel = chosenCompression.getLevel();
+		} else if (COMPRESSION_AUTO.equals(compression)) {
+			CompressionBenchmark.Candidate choice = chooseCompression(manifest);
+			dataFormat = choice.getCompression();
+			dataLevel = choice.getLevel();
+		} else {
+			dataFormat = resolveCompression(compression);
+			dataLevel = compressionLevel;
+		}
+		Map<String, String> hardLinks = deduplicate ? findDuplicates(manifest, requireNonNull(md5s, "md5s")) : Collections.emptyMap();
+		switch (archiver) {
+			case ARCHIVER_DPKG_DEB:
+				Path asideDir = hardLinks.isEmpty() ? null : java.nio.file.Files.createTempDirectory(targetDir.toPath(), "deb-duplicates");
+				Map<Path, Path> setAside = Collections.emptyMap();
+				try {
+					if (asideDir != null) {
+						setAside = linkDuplicatesInStage(manifest, hardLinks, asideDir);
+					}
+					generatePackageWithDpkgDeb(manifest, dataFormat, dataLevel);
+				} finally {
+					restoreDuplicates(setAside);
+					if (asideDir != null) {
+						FileUtils.deleteDirectory(asideDir.toFile());
+					}
 				}
+				break;
+			case ARCHIVER_JAVA:
+				generatePackageWithJavaArchiver(manifest, hardLinks, md5s == null, dataFormat, dataLevel);
+				break;
+			default:
+				throw new MojoExecutionException("unsupported archiver: " + StringUtils.abbreviate(archiver, 128) + "; supported values are " + ARCHIVER_DPKG_DEB + " and " + ARCHIVER_JAVA);
+		}
+	}
 
-				npages++;
+	private Map<String, String> findDuplicates(StageManifest manifest, Map<String, String> md5s)
+	{
+		Map<String, String> duplicates = FileDeduplicator.findDuplicates(manifest, md5s);
+		if (!duplicates.isEmpty()) {
+			long saved = duplicates.keySet().stream().mapToLong(relativePath -> requireNonNull(manifest.get(relativePath)).getSize()).sum();
+			getLog().info(String.format("Storing %d duplicate file(s) as hard links, saving %d bytes", duplicates.size(), saved));
+		}
+		return duplicates;
+	}
+
+	/**
+	 * Replaces duplicate files in the stage directory with hard links, which {@code dpkg-deb}
+	 * stores as hard links in the data archive. The duplicates are moved aside rather than
+	 * deleted, so that {@link #restoreDuplicates(Map)} can put the files of the user back
+	 * after the package is built; a link left in the stage would share its inode with the
+	 * original, so writing to one path would change both.
+	 * @param asideDir directory outside the stage where the duplicates are kept
+	 * @return map of path in the stage to the path where the duplicate was moved
+	 */
+	private Map<Path, Path> linkDuplicatesInStage(StageManifest manifest, Map<String, String> hardLinks, Path asideDir) throws IOException
+	{
+		Path stage = stageDir.toPath();
+		Map<Path, Path> setAside = new LinkedHashMap<>();
+		try {
+			for (Map.Entry<String, String> link : hardLinks.entrySet()) {
+				StageEntry duplicate = requireNonNull(manifest.get(link.getKey()));
+				StageEntry original = requireNonNull(manifest.get(link.getValue()));
+				// mapped files are not in the stage directory yet, and must not be modified at their sources
+				if (!duplicate.getPath().equals(stage.resolve(link.getKey())) || !original.getPath().equals(stage.resolve(link.getValue()))) {
+					continue;
+				}
+				if (java.nio.file.Files.isSameFile(duplicate.getPath(), original.getPath())) {
+					continue;
+				}
+				Path aside = asideDir.resolve(String.valueOf(setAside.size()));
+				java.nio.file.Files.move(duplicate.getPath(), aside);
+				setAside.put(duplicate.getPath(), aside);
+				java.nio.file.Files.createLink(duplicate.getPath(), original.getPath());
 			}
+		} catch (IOException | RuntimeException e) {
+			restoreDuplicates(setAside);
+			throw e;
 		}
+		return setAside;
+	}
 
-		if (npages == 0) {
-			getLog().debug("No manual pages found in directory: " + source);
+	/**
+	 * Moves duplicates set aside by {@link #linkDuplicatesInStage(StageManifest, Map, Path)}
+	 * back over the links that replaced them.
+	 */
+	private static void restoreDuplicates(Map<Path, Path> setAside) throws IOException
+	{
+		for (Map.Entry<Path, Path> entry : setAside.entrySet()) {
+			java.nio.file.Files.move(entry.getValue(), entry.getKey(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private int getCompressionThreads()
+	{
+		if (compressionThreads != null && compressionThreads > 0) {
+			return compressionThreads;
+		}
+		return defaultCompressionThreads == null ? Runtime.getRuntime().availableProcessors() : defaultCompressionThreads;
+	}
+
+	private CompressionBenchmark.Candidate chooseCompression(StageManifest manifest) throws IOException
+	{
+		if (compressionLevel != null) {
+			getLog().warn("compressionLevel is ignored when compression is " + COMPRESSION_AUTO);
+		}
+		int threads = getCompressionThreads();
+		CompressionBenchmark benchmark = new CompressionBenchmark(Math.max(1, compressionSampleSize), CompressionBenchmark.getDefaultCandidates(compressionAutoZstd));
+		CompressionBenchmark.Report report = benchmark.run(manifest);
+		CompressionBenchmark.Result choice = report.choose(Duration.ofSeconds(compressionTimeBudget), threads);
+		getLog().info(String.format("Chose compression %s (ratio %.3f on a %d-byte sample)", choice.getCandidate(), choice.getRatio(), report.getSampleSize()));
+		if (choice.getCandidate().getCompression() == Compression.ZSTD) {
+			getLog().info("packages compressed with " + Compression.ZSTD.getName() + " require dpkg 1.21.18 or later to install");
+		}
+		if (getLog().isDebugEnabled()) {
+			report.format(threads).lines().forEach(getLog()::debug);
+		}
+		return choice.getCandidate();
+	}
+
+	private void generatePackageWithJavaArchiver(StageManifest manifest, Map<String, String> hardLinks, boolean computeChecksums, @Nullable Compression dataFormat, @Nullable Integer dataLevel) throws IOException, MojoExecutionException
+	{
+		if (dpkgDebBuildOptions != null || dpkgDebBuildEnvironment != null) {
+			getLog().warn("dpkgDebBuildOptions and dpkgDebBuildEnvironment are ignored by the " + ARCHIVER_JAVA + " archiver");
+		}
+		File packageFile = getPackageFile();
+		JavaDebArchiver.DigestConsumer digestConsumer = null;
+		if (computeChecksums) {
+			digestConsumer = digests -> {
+				try {
+					writeArchivedChecksums(manifest, digests);
+				} catch (MojoExecutionException e) {
+					throw new IOException(e.getMessage(), e);
+				}
+			};
+		}
+		getLog().info("Building package " + packageFile);
+		JavaDebArchiver.PrecompressedData precompressed = sharedContent == null ? null : sharedContent.precompressed;
+		createJavaDebArchiver(dataFormat, dataLevel).buildPackage(manifest, packageFile.toPath(), hardLinks, getDigestAlgorithms(), digestConsumer, precompressed);
+	}
+
+	private JavaDebArchiver createJavaDebArchiver(@Nullable Compression dataFormat, @Nullable Integer dataLevel) throws MojoExecutionException
+	{
+		int threads = getCompressionThreads();
+		int blockSize = compressionBlockSize == null || compressionBlockSize < 1 ? ParallelCompressorOutputStream.DEFAULT_BLOCK_SIZE : compressionBlockSize;
+		Compression controlFormat = resolveCompression(controlCompression, Compression.GZIP);
+		// the control archive is small, so a single thread suffices
+		CompressionSettings controlSettings = createCompressionSettings(controlFormat, controlCompressionLevel, 1, blockSize);
+		CompressionSettings dataSettings = createCompressionSettings(dataFormat == null ? Compression.XZ : dataFormat, dataLevel, threads, blockSize);
+		return new JavaDebArchiver(targetDir.toPath(), controlSettings, dataSettings, getSourceDateEpoch());
+	}
+
+	private static CompressionSettings createCompressionSettings(Compression format, @Nullable Integer level, int threads, int blockSize) throws MojoExecutionException
+	{
+		if (level != null && !format.isValidLevel(level)) {
+			throw new MojoExecutionException("compression level " + level + " is not supported for " + format.getName() + "; supported levels are " + format.describeLevels());
 		}
+		return new CompressionSettings(format, level, threads, blockSize);
+	}
+
+	private static Compression resolveCompression(@Nullable String name, Compression defaultValue) throws MojoExecutionException
+	{
+		Compression value = resolveCompression(name);
+		return value == null ? defaultValue : value;
+	}
+
+	@Nullable
+	private static Compression resolveCompression(@Nullable String name) throws MojoExecutionException
+	{
+		if (name == null) {
+			return null;
+		}
+		Compression value = Compression.fromName(name);
+		if (value == null) {
+			throw new MojoExecutionException("unsupported compression: " + StringUtils.abbreviate(name, 128) + "; supported values are " + Compression.describeNames());
+		}
+		return value;
+	}
+
+	private List<String> createDpkgDebCompressionOptions(@Nullable Compression dataFormat, @Nullable Integer dataLevel) throws MojoExecutionException
+	{
+		List<String> options = new ArrayList<>();
+		if (dataFormat != null) {
+			options.add("-Z" + dataFormat.getName());
+		}
+		if (dataLevel != null) {
+			Compression effectiveDataFormat = dataFormat == null ? Compression.XZ : dataFormat;
+			if (!effectiveDataFormat.isValidLevel(dataLevel)) {
+				throw new MojoExecutionException("compression level " + dataLevel + " is not supported for " + effectiveDataFormat.getName() + "; supported levels are " + effectiveDataFormat.describeLevels());
+			}
+			options.add("-z" + dataLevel);
+		}
+		if (compressionThreads != null && compressionThreads > 0) {
+			options.add("--threads-max=" + compressionThreads);
+		}
+		Compression controlFormat = resolveCompression(controlCompression);
+		if (controlFormat != null) {
+			// dpkg-deb compresses the control archive either like the data archive or with gzip at its default level
+			if (controlFormat == Compression.GZIP && dataFormat != Compression.GZIP) {
+				options.add("--no-uniform-compression");
+			} else if (controlFormat != (dataFormat == null ? Compression.XZ : dataFormat)) {
+				throw new MojoExecutionException("the " + ARCHIVER_DPKG_DEB + " archiver supports control compression of " + Compression.GZIP.getName() + " or the same compression as the data archive");
+			}
+		}
+		if (controlCompressionLevel != null) {
+			getLog().warn("controlCompressionLevel is ignored by the " + ARCHIVER_DPKG_DEB + " archiver");
+		}
+		return options;
 	}
 
 	@SuppressWarnings("CollectionAddAllCanBeReplacedWithConstructor")
-	private void generatePackage() throws IOException, MojoExecutionException
+	private void generatePackageWithDpkgDeb(StageManifest manifest, @Nullable Compression dataFormat, @Nullable Integer dataLevel) throws IOException, MojoExecutionException
 	{
 		List<String> cmd = new ArrayList<>();
 		cmd.addAll(Arrays.asList("fakeroot", "--", "dpkg-deb"));
+		// explicit dpkgDebBuildOptions come later, so they take precedence
+		cmd.addAll(createDpkgDebCompressionOptions(dataFormat, dataLevel));
 		if (dpkgDebBuildOptions != null) {
 			getLog().info("using dpkg-deb options " + Arrays.toString(dpkgDebBuildOptions));
 			cmd.addAll(Arrays.asList(dpkgDebBuildOptions));
 		}
 		cmd.addAll(Arrays.asList("--build", stageDir.toString(), getPackageFile().toString()));
-		runProcess(cmd.toArray(new String[0]), buildDpkgDebBuildEnvironmentMap());
+		Map<String, String> env = buildDpkgDebBuildEnvironmentMap();
+		Instant epoch = getSourceDateEpoch();
+		if (epoch != null) {
+			// dpkg-deb clamps modification times and sets the timestamps of archive members to the epoch
+			env.putIfAbsent(SOURCE_DATE_EPOCH, String.valueOf(epoch.getEpochSecond()));
+		}
+		List<Path> linked = linkMappedEntries(manifest);
+		try {
+			runProcess(cmd.toArray(new String[0]), env);
+		} finally {
+			// mapped entries were created in manifest order, so children are removed before their parents
+			for (int i = linked.size() - 1; i >= 0; i--) {
+				java.nio.file.Files.deleteIfExists(linked.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Puts mapped entries into the stage directory, where {@code dpkg-deb} can find them.
+	 * @return paths created, in manifest order
+	 */
+	private List<Path> linkMappedEntries(StageManifest manifest) throws IOException
+	{
+		Path stage = stageDir.toPath();
+		List<Path> created = new ArrayList<>();
+		boolean ownershipIgnored = false;
+		try {
+			for (StageEntry entry : manifest.entries()) {
+				Path target = stage.resolve(entry.getRelativePath());
+				ownershipIgnored |= entry.getUserName() != null || entry.getGroupName() != null;
+				// directories added by mappings have no source, so existence is what distinguishes them from staged ones
+				boolean staged = entry.getType() == StageEntry.Type.DIRECTORY
+						? java.nio.file.Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)
+						: entry.getPath().equals(target);
+				if (staged) {
+					continue;
+				}
+				switch (entry.getType()) {
+					case DIRECTORY:
+						java.nio.file.Files.createDirectory(target);
+						created.add(target);
+						setMode(target, entry.getMode());
+						break;
+					case SYMLINK:
+						java.nio.file.Files.createSymbolicLink(target, Path.of(requireNonNull(entry.getLinkTarget())));
+						created.add(target);
+						break;
+					default:
+						linkOrCopy(entry, target);
+						created.add(target);
+						break;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			for (int i = created.size() - 1; i >= 0; i--) {
+				java.nio.file.Files.deleteIfExists(created.get(i));
+			}
+			throw e;
+		}
+		if (ownershipIgnored) {
+			getLog().warn("user and group of mappings are ignored by the " + ARCHIVER_DPKG_DEB + " archiver");
+		}
+		return created;
+	}
+
+	private static void linkOrCopy(StageEntry entry, Path target) throws IOException
+	{
+		// a hard link shares the mode of its source, so it is usable only if that already matches
+		if (StageManifest.readMode(entry.getPath()) == entry.getMode()) {
+			try {
+				// a link to a mapped symlink, such as an artifact in the local repository, would be the symlink itself
+				java.nio.file.Files.createLink(target, entry.getPath().toRealPath());
+				return;
+			} catch (IOException | UnsupportedOperationException e) {
+				// e.g. the source is on another filesystem
+			}
+		}
+		java.nio.file.Files.copy(entry.getPath(), target);
+		setMode(target, entry.getMode());
+	}
+
+	private static boolean hasUnixView(Path path)
+	{
+		return path.getFileSystem().supportedFileAttributeViews().contains("unix");
+	}
+
+	private static void setMode(Path path, int mode) throws IOException
+	{
+		if (hasUnixView(path)) {
+			java.nio.file.Files.setAttribute(path, "unix:mode", mode);
+		} else {
+			java.nio.file.Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(toPermissionString(mode)));
+		}
+	}
+
+	private static String toPermissionString(int mode)
+	{
+		StringBuilder sb = new StringBuilder(9);
+		String symbols = "rwxrwxrwx";
+		for (int i = 0; i < 9; i++) {
+			sb.append((mode & (1 << (8 - i))) != 0 ? symbols.charAt(i) : '-');
+		}
+		return sb.toString();
 	}
 
 	private Map<String, String> buildDpkgDebBuildEnvironmentMap() throws MojoExecutionException {
@@ -398,25 +1151,386 @@ public class PackageMojo extends AbstractDebianMojo
 		return env;
 	}
 
+	private String computeInputFingerprint(StageManifest manifest) throws IOException, MojoExecutionException
+	{
+		InputFingerprint fingerprint = new InputFingerprint();
+		fingerprint.putString(String.valueOf(pluginVersion));
+		fingerprint.putString(getPackageFile().getAbsolutePath());
+		fingerprint.putString(archiver);
+		fingerprint.putString(compression);
+		fingerprint.putString(String.valueOf(compressionLevel));
+		// the thread count chooses between a single stream and independent blocks, and with the block size
+		// it determines the compressed bytes; the budget, sample size and candidates determine the automatic choice
+		fingerprint.putString(String.valueOf(getCompressionThreads()));
+		fingerprint.putString(String.valueOf(compressionBlockSize));
+		fingerprint.putString(String.valueOf(compressionTimeBudget));
+		fingerprint.putString(String.valueOf(compressionSampleSize));
+		fingerprint.putString(String.valueOf(compressionAutoZstd));
+		fingerprint.putString(controlCompression);
+		fingerprint.putString(String.valueOf(controlCompressionLevel));
+		fingerprint.putString(String.valueOf(deduplicate));
+		fingerprint.putStrings(digestAlgorithms);
+		fingerprint.putString(digestsOutput);
+		for (ControlFileLine line : generateKnownControlLines(manifest)) {
+			fingerprint.putString(line.getField()).putString(line.getValue());
+		}
+		if (control != null) {
+			for (ControlFileLine line : control) {
+				fingerprint.putString(line.getField()).putString(line.getValue()).putString(line.getAfter());
+			}
+		}
+		fingerprint.putString(String.valueOf(getSourceDateEpoch()));
+		fingerprint.putStrings(dpkgDebBuildOptions);
+		buildDpkgDebBuildEnvironmentMap().forEach((name, value) -> fingerprint.putString(name).putString(value));
+		fingerprint.putFiles(packagingFiles);
+		fingerprint.putFiles(linksFiles);
+		fingerprint.putManifest(manifest);
+		return fingerprint.toHex();
+	}
+
+	private StageManifest resolveMappings(StageManifest manifest) throws IOException, MojoExecutionException
+	{
+		if (mappings == null || mappings.length == 0) {
+			return manifest;
+		}
+		return new MappingResolver(getProjectArtifacts()).resolve(manifest, Arrays.asList(mappings));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<Artifact> getProjectArtifacts()
+	{
+		if (project == null) {
+			return Collections.emptyList();
+		}
+		Set<Artifact> artifacts = new LinkedHashSet<>();
+		Artifact projectArtifact = project.getArtifact();
+		if (projectArtifact != null && projectArtifact.getFile() != null) {
+			artifacts.add(projectArtifact);
+		}
+		artifacts.addAll(project.getArtifacts());
+		return artifacts;
+	}
+
+	private boolean isUpToDate(String fingerprint) throws IOException
+	{
+		return getPackageFile().isFile() && fingerprint.equals(InputFingerprint.read(getFingerprintFile().toPath()));
+	}
+
 	protected void executeDebMojo() throws MojoExecutionException
+	{
+		report = new BuildReport();
+		try {
+			executeBuild();
+		} finally {
+			writeBuildReport();
+		}
+	}
+
+	private void executeBuild() throws MojoExecutionException
+	{
+		if (architectures != null && architectures.length > 0) {
+			if (packages != null && packages.length > 0) {
+				throw new MojoExecutionException("<architectures> and <packages> cannot be combined");
+			}
+			buildArchitectures();
+			return;
+		}
+		if (packages != null && packages.length > 0) {
+			buildPackages();
+			return;
+		}
+		try
+		{
+			prepareStage();
+			buildPackage(scan(stageDir.toPath()));
+		}
+		catch (IOException e)
+		{
+			getLog().error(e.toString());
+			throw new MojoExecutionException(e.toString());
+		}
+	}
+
+	/**
+	 * Generates manual pages, the copyright file and links in the stage directory.
+	 */
+	private void prepareStage() throws IOException, MojoExecutionException
+	{
+		BuildReport.Timer timer = startPhase("manPages");
+		List<File> pages = generateManPages();
+		timer.stop(pages.size(), getTotalLength(pages));
+		timer = startPhase("copyright");
+		File copyrightFile = generateCopyright();
+		timer.stop(1, copyrightFile.length());
+		timer = startPhase("links");
+		linkGenerator.generateLinks(linksFiles, stageDir.toPath());
+		List<File> linksFileList = linksFiles == null ? Collections.emptyList() : Arrays.asList(linksFiles);
+		timer.stop(linksFileList.size(), getTotalLength(linksFileList));
+	}
+
+	private StageManifest scan(Path dir) throws IOException
+	{
+		BuildReport.Timer timer = startPhase("scan");
+		StageManifest manifest = StageManifest.scan(dir);
+		timer.stop(manifest.entries().size(), manifest.getTotalSize());
+		return manifest;
+	}
+
+	/**
+	 * Starts timing a phase of the build.
+	 * @param name name of the phase
+	 * @return a new timer
+	 */
+	private BuildReport.Timer startPhase(String name)
+	{
+		// phases of an execution that builds several packages are shared by all of them
+		boolean shared = (packages != null && packages.length > 0) || (architectures != null && architectures.length > 0);
+		return report.start(shared ? null : getPackageFile().getName(), name);
+	}
+
+	private static long getTotalLength(Collection<File> files)
+	{
+		return files.stream().mapToLong(File::length).sum();
+	}
+
+	/**
+	 * Logs a summary of the build report and writes it to {@code deb-build-report.json}
+	 * in the target directory.
+	 */
+	private void writeBuildReport()
+	{
+		List<String> lines = report.summarize();
+		if (lines.isEmpty()) {
+			return;
+		}
+		getLog().info(String.format("Build phases (%.1f s total):", report.getElapsedNanos() / 1e9));
+		lines.forEach(line -> getLog().info("  " + line));
+		File reportFile = new File(targetDir, "deb-build-report.json");
+		try {
+			report.write(reportFile.toPath());
+		} catch (IOException e) {
+			// the report must not fail the build
+			getLog().warn("failed to write build report " + reportFile + ": " + e);
+		}
+	}
+
+	/**
+	 * Builds the package from a stage directory that has been prepared.
+	 * @param staged manifest of the stage directory
+	 */
+	private void buildPackage(StageManifest staged) throws IOException, MojoExecutionException
 	{
 		File targetDebDir = new File(stageDir, "DEBIAN");
+		// all changes to the stage are complete, so one scan serves every generator below
+		StageManifest manifest = resolveMappings(staged);
+		String fingerprint = null;
+		if (upToDateCheck)
+		{
+			BuildReport.Timer timer = startPhase("fingerprint");
+			fingerprint = computeInputFingerprint(manifest);
+			timer.stop(manifest.entries().size(), 0);
+			if (isUpToDate(fingerprint))
+			{
+				getLog().info("Package is up to date: " + getPackageFile());
+				if (sharedDigestCaches != null) {
+					openDigestCaches(false).values().forEach(DigestCache::retainLoaded);
+				}
+				return;
+			}
+		}
+		// a stale fingerprint must not survive a failed build
+		java.nio.file.Files.deleteIfExists(getFingerprintFile().toPath());
+		FileUtils.deleteDirectory(targetDebDir);
+		//noinspection ResultOfMethodCallIgnored
+		targetDebDir.mkdirs();
+		if (!targetDebDir.isDirectory()) {
+			throw new MojoExecutionException("Unable to create directory: " + targetDebDir);
+		}
+		BuildReport.Timer timer = startPhase("conffiles");
+		File conffilesFile = new File(targetDebDir, "conffiles");
+		generateConffiles(manifest, conffilesFile);
+		timer.stop(manifest.regularFiles().count(), conffilesFile.length());
+		timer = startPhase("control");
+		File controlFile = new File(targetDebDir, "control");
+		generateControl(manifest, controlFile);
+		timer.stop(manifest.entries().size(), controlFile.length());
+		Map<String, String> md5s = null;
+		if (!isDigestedWhileArchiving(getArchiver())) {
+			timer = startPhase("checksums");
+			md5s = generateChecksums(manifest).get(DigestAlgorithm.MD5);
+			timer.stop(manifest.regularFiles().count(), manifest.regularFiles().mapToLong(StageEntry::getSize).sum());
+		}
+		timer = startPhase("packagingFiles");
+		copyOtherPackagingFiles(targetDebDir.toPath());
+		List<File> packagingFileList = packagingFiles == null ? Collections.emptyList() : Arrays.asList(packagingFiles);
+		timer.stop(packagingFileList.size(), getTotalLength(packagingFileList));
+		timer = startPhase("package");
+		generatePackage(manifest, md5s);
+		timer.stop(manifest.entries().size(), manifest.getTotalSize());
+		if (fingerprint != null) {
+			InputFingerprint.write(getFingerprintFile().toPath(), fingerprint);
+		}
+	}
+
+	/**
+	 * Builds the elements of {@code packages}. Stages are prepared one at a time,
+	 * because they may share man page and link caches, and then scanned together
+	 * where they are within {@code stageDir}; the packages are built concurrently.
+	 */
+	private void buildPackages() throws MojoExecutionException
+	{
+		int concurrency = Math.min(packages.length, packageThreads == null || packageThreads < 1 ? Runtime.getRuntime().availableProcessors() : packageThreads);
+		// the snapshot revision is computed now, so that every package has the same version
+		getPackageVersion();
+		List<PackageMojo> builds = new ArrayList<>(packages.length);
+		for (BinaryPackage binaryPackage : packages) {
+			builds.add(forPackage(binaryPackage, concurrency));
+		}
+		checkPackages(builds);
 		try
 		{
-			FileUtils.deleteDirectory(targetDebDir);
-			//noinspection ResultOfMethodCallIgnored
-			targetDebDir.mkdirs();
-			if (!targetDebDir.isDirectory()) {
-				throw new MojoExecutionException("Unable to create directory: " + targetDebDir);
-			}
-			generateManPages();
-			generateCopyright();
-			generateConffiles(new File(targetDebDir, "conffiles"));
-			generateControl(new File(targetDebDir, "control"));
-			generateMd5Sums(new File(targetDebDir, "md5sums"));
-			copyOtherPackagingFiles(targetDebDir.toPath());
-			linkGenerator.generateLinks(linksFiles, stageDir.toPath());
-			generatePackage();
+			Map<DigestAlgorithm, DigestCache> caches = new EnumMap<>(DigestAlgorithm.class);
+			for (DigestAlgorithm algorithm : getDigestAlgorithms()) {
+				caches.put(algorithm, hashCache ? DigestCache.load(getDigestCacheFile(algorithm)) : DigestCache.empty());
+			}
+			for (PackageMojo build : builds) {
+				build.sharedDigestCaches = caches;
+				build.prepareStage();
+			}
+			List<StageManifest> staged = scanStages(builds);
+			MojoExecutionException failure = buildConcurrently(builds, staged, concurrency);
+			if (hashCache)
+			{
+				for (Map.Entry<DigestAlgorithm, DigestCache> cache : caches.entrySet()) {
+					cache.getValue().save(getDigestCacheFile(cache.getKey()));
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+		catch (IOException e)
+		{
+			getLog().error(e.toString());
+			throw new MojoExecutionException(e.toString());
+		}
+	}
+
+	/**
+	 * Builds packages on a fixed pool of threads and waits for all of them to finish.
+	 * @param builds mojos that build the packages
+	 * @param manifests manifests of their stage directories
+	 * @return exception that describes the failed builds, or null if all succeeded
+	 */
+	@Nullable
+	private MojoExecutionException buildConcurrently(List<PackageMojo> builds, List<StageManifest> manifests, int concurrency) throws MojoExecutionException
+	{
+		// these threads wait for hashing and compression tasks, so they must not be workers of the shared pool
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		MojoExecutionException failure = null;
+		try {
+			List<Future<?>> futures = new ArrayList<>(builds.size());
+			for (int i = 0; i < builds.size(); i++) {
+				PackageMojo build = builds.get(i);
+				StageManifest manifest = manifests.get(i);
+				futures.add(executor.submit(() -> {
+					build.buildPackage(manifest);
+					return null;
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (ExecutionException e) {
+					String message = "failed to build package " + builds.get(i).getPackageFile().getName() + ": " + e.getCause();
+					getLog().error(message);
+					if (failure == null) {
+						failure = new MojoExecutionException(message, e.getCause());
+					} else {
+						failure.addSuppressed(e.getCause());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("interrupted while building packages", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		return failure;
+	}
+
+	/**
+	 * Builds the package for each element of {@code architectures}. The stage is
+	 * prepared, scanned and hashed once, and packages that are not up to date are
+	 * built concurrently.
+	 */
+	private void buildArchitectures() throws MojoExecutionException
+	{
+		if (packageFilename != null) {
+			throw new MojoExecutionException("packageFilename cannot be used with <architectures>, because each architecture has its own package file");
+		}
+		int concurrency = Math.min(architectures.length, packageThreads == null || packageThreads < 1 ? Runtime.getRuntime().availableProcessors() : packageThreads);
+		// the snapshot revision is computed now, so that every package has the same version
+		getPackageVersion();
+		try
+		{
+			prepareStage();
+			StageManifest shared = resolveMappings(scan(stageDir.toPath()));
+			Set<String> names = new HashSet<>();
+			List<PackageMojo> builds = new ArrayList<>();
+			List<StageManifest> manifests = new ArrayList<>();
+			for (Architecture architecture : architectures) {
+				PackageMojo build = forArchitecture(architecture, concurrency);
+				if (!names.add(build.packageArchitecture)) {
+					throw new MojoExecutionException("names of <architectures> must be unique; duplicate: " + StringUtils.abbreviate(build.packageArchitecture, 128));
+				}
+				StageManifest manifest = overlay(shared, getOverlayDir(architecture), build.stageDir.toPath());
+				if (build.upToDateCheck && build.isUpToDate(build.computeInputFingerprint(manifest))) {
+					getLog().info("Package is up to date: " + build.getPackageFile());
+					continue;
+				}
+				builds.add(build);
+				manifests.add(manifest);
+			}
+			if (builds.isEmpty()) {
+				return;
+			}
+			Map<DigestAlgorithm, DigestCache> caches = new EnumMap<>(DigestAlgorithm.class);
+			for (DigestAlgorithm algorithm : getDigestAlgorithms()) {
+				caches.put(algorithm, hashCache ? DigestCache.load(getDigestCacheFile(algorithm)) : DigestCache.empty());
+			}
+			// a single choice of compression lets every architecture use the same precompressed blocks
+			CompressionBenchmark.Candidate choice = COMPRESSION_AUTO.equals(compression) ? chooseCompression(shared) : null;
+			BuildReport.Timer timer = startPhase("sharedContent");
+			SharedContent content = createSharedContent(shared, caches, choice, builds.size());
+			timer.stop(shared.entries().size(), shared.getTotalSize());
+			MojoExecutionException failure;
+			try {
+				for (PackageMojo build : builds) {
+					// leftovers of a failed build, such as links to mapped files, would conflict
+					FileUtils.deleteDirectory(build.stageDir);
+					//noinspection ResultOfMethodCallIgnored
+					build.stageDir.mkdirs();
+					build.sharedDigestCaches = caches;
+					build.sharedContent = content;
+					build.chosenCompression = choice;
+				}
+				failure = buildConcurrently(builds, manifests, concurrency);
+			} finally {
+				if (content.precompressed != null) {
+					content.precompressed.close();
+				}
+			}
+			if (hashCache)
+			{
+				for (Map.Entry<DigestAlgorithm, DigestCache> cache : caches.entrySet()) {
+					cache.getValue().save(getDigestCacheFile(cache.getKey()));
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
 		}
 		catch (IOException e)
 		{
@@ -425,6 +1539,171 @@ public class PackageMojo extends AbstractDebianMojo
 		}
 	}
 
+	/**
+	 * Hashes the content shared by several architectures, and also archives and
+	 * compresses it if the package is built by the java archiver in a format that
+	 * can be written in blocks.
+	 */
+	private SharedContent createSharedContent(StageManifest shared, Map<DigestAlgorithm, DigestCache> caches, @Nullable CompressionBenchmark.Candidate choice, int packageCount) throws IOException, MojoExecutionException
+	{
+		Compression dataFormat = choice == null ? resolveCompression(compression) : choice.getCompression();
+		Integer dataLevel = choice == null ? compressionLevel : choice.getLevel();
+		if (ARCHIVER_JAVA.equals(getArchiver()) && !deduplicate && ParallelCompressorOutputStream.isSupported(dataFormat == null ? Compression.XZ : dataFormat)) {
+			getLog().info(String.format("Compressing shared content once for %d package(s)", packageCount));
+			JavaDebArchiver.PrecompressedData precompressed = createJavaDebArchiver(dataFormat, dataLevel).precompress(shared, getDigestAlgorithms());
+			precompressed.getDigests().forEach((algorithm, values) -> {
+				DigestCache cache = caches.get(algorithm);
+				values.forEach((relativePath, digest) -> cache.put(requireNonNull(shared.get(relativePath)), digest));
+			});
+			return new SharedContent(shared, precompressed.getDigests(), precompressed);
+		}
+		int threads = hashThreads == null || hashThreads < 1 ? StageDigester.getDefaultParallelism() : hashThreads;
+		return new SharedContent(shared, new StageDigester(threads, caches).digestAll(shared), null);
+	}
+
+	private File getOverlayDir(Architecture architecture)
+	{
+		if (architecture.getOverlayDir() != null) {
+			return architecture.getOverlayDir();
+		}
+		return new File(stageDir.getParentFile(), stageDir.getName() + "-" + architecture.getName());
+	}
+
+	/**
+	 * Creates a manifest of the shared content and the files of an overlay directory.
+	 * @param stageDir stage directory of the package, where its control directory is created
+	 */
+	private static StageManifest overlay(StageManifest shared, File overlayDir, Path stageDir) throws IOException, MojoExecutionException
+	{
+		List<StageEntry> entries = new ArrayList<>(shared.entries());
+		if (overlayDir.isDirectory()) {
+			for (StageEntry entry : StageManifest.scan(overlayDir.toPath()).entries()) {
+				StageEntry existing = shared.get(entry.getRelativePath());
+				if (existing == null) {
+					entries.add(entry);
+				} else if (existing.getType() != StageEntry.Type.DIRECTORY || entry.getType() != StageEntry.Type.DIRECTORY) {
+					throw new MojoExecutionException("overlay " + overlayDir + " contains /" + entry.getRelativePath() + ", which is already taken by " + existing.getPath());
+				}
+			}
+		}
+		return new StageManifest(stageDir, entries);
+	}
+
+	/**
+	 * Creates a copy of this mojo that builds the package for one element of {@code architectures}.
+	 * Its stage directory holds only the control directory; every other entry is read
+	 * from the shared stage or the overlay.
+	 */
+	private PackageMojo forArchitecture(Architecture architecture, int concurrency) throws MojoExecutionException
+	{
+		String name = StringUtils.trimToNull(architecture.getName());
+		if (name == null) {
+			throw new MojoExecutionException("every element of <architectures> must have a <name>");
+		}
+		PackageMojo build = copy(concurrency);
+		build.architectures = null;
+		build.packageArchitecture = name;
+		build.stageDir = new File(targetDir, "deb-arch/" + name);
+		build.digestCacheScope = name + "/";
+		// mappings were resolved into the shared manifest
+		build.mappings = null;
+		return build;
+	}
+
+	/**
+	 * Creates a copy of this mojo that builds one element of {@code packages}.
+	 * @param concurrency number of packages built concurrently
+	 */
+	private PackageMojo forPackage(BinaryPackage binaryPackage, int concurrency) throws MojoExecutionException
+	{
+		String name = StringUtils.trimToNull(binaryPackage.getName());
+		if (name == null) {
+			throw new MojoExecutionException("every element of <packages> must have a <name>");
+		}
+		PackageMojo build = copy(concurrency);
+		build.packages = null;
+		build.packageName = name;
+		build.digestCacheScope = name + "/";
+		build.stageDir = binaryPackage.getStageDir() == null ? new File(stageDir, name) : binaryPackage.getStageDir();
+		build.sourceDir = binaryPackage.getSourceDir() == null ? new File(sourceDir, name) : binaryPackage.getSourceDir();
+		build.packageFilename = binaryPackage.getFilename();
+		build.packageTitle = ObjectUtils.defaultIfNull(binaryPackage.getTitle(), packageTitle);
+		build.packageDescription = ObjectUtils.defaultIfNull(binaryPackage.getDescription(), packageDescription);
+		build.packageSection = ObjectUtils.defaultIfNull(binaryPackage.getSection(), packageSection);
+		build.packagePriority = ObjectUtils.defaultIfNull(binaryPackage.getPriority(), packagePriority);
+		build.packageDependencies = ObjectUtils.defaultIfNull(binaryPackage.getDependencies(), packageDependencies);
+		build.packageConflicts = ObjectUtils.defaultIfNull(binaryPackage.getConflicts(), packageConflicts);
+		build.control = binaryPackage.getControl();
+		build.packagingFiles = binaryPackage.getPackagingFiles();
+		build.linksFiles = binaryPackage.getLinksFiles();
+		build.mappings = binaryPackage.getMappings();
+		return build;
+	}
+
+	/**
+	 * Creates a copy of this mojo for one of several packages built concurrently.
+	 * @param concurrency number of packages built concurrently
+	 */
+	private PackageMojo copy(int concurrency)
+	{
+		PackageMojo build;
+		try {
+			build = (PackageMojo) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		// concurrent packages divide the processors among themselves
+		int threadsPerPackage = Math.max(1, Runtime.getRuntime().availableProcessors() / concurrency);
+		// kept apart from compressionThreads, which dpkg-deb is given only if it is configured
+		build.defaultCompressionThreads = threadsPerPackage;
+		if (hashThreads == null) {
+			build.hashThreads = threadsPerPackage;
+		}
+		return build;
+	}
+
+	private static void checkPackages(List<PackageMojo> builds) throws MojoExecutionException
+	{
+		Set<String> names = new HashSet<>();
+		List<Path> stageDirs = new ArrayList<>(builds.size());
+		for (PackageMojo build : builds) {
+			if (!names.add(build.packageName)) {
+				throw new MojoExecutionException("names of <packages> must be unique; duplicate: " + StringUtils.abbreviate(build.packageName, 128));
+			}
+			Path dir = build.stageDir.toPath().toAbsolutePath().normalize();
+			for (Path other : stageDirs) {
+				if (dir.startsWith(other) || other.startsWith(dir)) {
+					throw new MojoExecutionException("stage directories of <packages> must not contain one another: " + other + " and " + dir);
+				}
+			}
+			stageDirs.add(dir);
+		}
+	}
+
+	/**
+	 * Scans the stage directories of packages. Stage directories within {@code stageDir}
+	 * are taken from a single scan of it.
+	 * @return list of manifests, in the order of the packages
+	 */
+	private List<StageManifest> scanStages(List<PackageMojo> builds) throws IOException
+	{
+		Path root = stageDir.toPath().toAbsolutePath().normalize();
+		StageManifest rootManifest = null;
+		List<StageManifest> manifests = new ArrayList<>(builds.size());
+		for (PackageMojo build : builds) {
+			Path dir = build.stageDir.toPath().toAbsolutePath().normalize();
+			if (dir.startsWith(root)) {
+				if (rootManifest == null) {
+					rootManifest = scan(root);
+				}
+				manifests.add(rootManifest.subtree(StageManifest.toRelativePath(root, dir)));
+			} else {
+				manifests.add(build.scan(dir));
+			}
+		}
+		return manifests;
+	}
+
 	private void copyOtherPackagingFiles(Path destinationDir) throws IOException, MojoExecutionException {
 		File[] files = packagingFiles;
 		if (files == null) {
@@ -443,4 +1722,27 @@ public class PackageMojo extends AbstractDebianMojo
 		}
 	}
 
+	/**
+	 * Content of the stage directory that is shared by the packages of several architectures.
+	 */
+	private static class SharedContent
+	{
+		public final StageManifest manifest;
+		public final Map<DigestAlgorithm, Map<String, String>> digests;
+		@Nullable
+		public final JavaDebArchiver.PrecompressedData precompressed;
+
+		public SharedContent(StageManifest manifest, Map<DigestAlgorithm, Map<String, String>> digests, @Nullable JavaDebArchiver.PrecompressedData precompressed)
+		{
+			this.manifest = requireNonNull(manifest, "manifest");
+			this.digests = requireNonNull(digests, "digests");
+			this.precompressed = precompressed;
+		}
+
+		public boolean contains(StageEntry entry)
+		{
+			return manifest.get(entry.getRelativePath()) == entry;
+		}
+	}
+
 }
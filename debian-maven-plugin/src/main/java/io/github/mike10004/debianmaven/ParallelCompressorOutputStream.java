@@ -0,0 +1,475 @@
+package io.github.mike10004.debianmaven;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZ;
+import org.tukaani.xz.XZOutputStream;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Output stream that splits its input into fixed-size blocks and compresses
+ * the blocks concurrently. Compressed blocks are written in input order, and
+ * the number of blocks in flight is bounded, so memory use is proportional to
+ * the thread count times the block size. Blocks are compressed on the shared
+ * {@link WorkerPool}.
+ *
+ * <p>
+ * The gzip format produces one independent gzip member per block, as {@code pigz}
+ * does; decompressors read concatenated members as a single stream. The xz format
+ * produces a single xz stream with one block per input block, as {@code xz -T}
+ * does. Both are readable by {@code dpkg-deb}. Uncompressed blocks are also
+ * supported, but zstd is not, because {@code dpkg-deb} reads only the first frame
+ * of a zstd stream.
+ *
+ * <p>
+ * A stream created with {@code collect} set writes bare compressed blocks, without
+ * the header and trailer of the format, and records their lengths. Those blocks can
+ * be spliced into other streams of the same format with {@link #writeBlocks(InputStream, long[])},
+ * so that data shared by several streams is compressed once.
+ */
+public class ParallelCompressorOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 8 * 1024 * 1024;
+
+    private final OutputStream out;
+    private final BlockFormat format;
+    @Nullable
+    private final List<Long> collectedLengths;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final Executor executor;
+    private final Deque<Future<byte[]>> pending;
+    private byte[] block;
+    private int blockLength;
+    private boolean anyBlockSubmitted;
+    private boolean closed;
+
+    private ParallelCompressorOutputStream(OutputStream out, BlockFormat format, int threads, int blockSize) throws IOException {
+        this(out, format, threads, blockSize, false);
+    }
+
+    private ParallelCompressorOutputStream(OutputStream out, BlockFormat format, int threads, int blockSize, boolean collect) throws IOException {
+        this.out = requireNonNull(out, "out");
+        this.format = requireNonNull(format, "format");
+        collectedLengths = collect ? new ArrayList<>() : null;
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        maxPendingBlocks = threads * 2;
+        pending = new ArrayDeque<>(maxPendingBlocks);
+        block = new byte[blockSize];
+        if (!collect) {
+            format.writeHeader(out);
+        }
+        executor = WorkerPool.limited(threads);
+    }
+
+    /**
+     * Creates a stream in a given format.
+     * @param out the destination
+     * @param compression the format, which must be {@link #isSupported(Compression) supported}
+     * @param level compression level, valid for the format; ignored if the format is {@link Compression#NONE}
+     * @param threads number of compression threads
+     * @param blockSize uncompressed size of each block
+     * @param collect whether to write bare blocks for use with {@link #writeBlocks(InputStream, long[])}
+     * @return a new stream
+     * @throws IOException on I/O error
+     */
+    public static ParallelCompressorOutputStream create(OutputStream out, Compression compression, int level, int threads, int blockSize, boolean collect) throws IOException {
+        BlockFormat format;
+        switch (compression) {
+            case GZIP:
+                format = new GzipBlockFormat(level);
+                break;
+            case XZ:
+                format = new XzBlockFormat(level);
+                break;
+            case NONE:
+                format = new StoredBlockFormat();
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported compression: " + compression);
+        }
+        return new ParallelCompressorOutputStream(out, format, threads, blockSize, collect);
+    }
+
+    /**
+     * Creates a stream that writes concatenated gzip members.
+     * @param out the destination
+     * @param threads number of compression threads
+     * @param blockSize uncompressed size of each block
+     * @param level compression level, from 1 to 9
+     * @return a new stream
+     * @throws IOException on I/O error
+     */
+    public static ParallelCompressorOutputStream gzip(OutputStream out, int threads, int blockSize, int level) throws IOException {
+        return new ParallelCompressorOutputStream(out, new GzipBlockFormat(level), threads, blockSize);
+    }
+
+    /**
+     * Creates a stream that writes a multi-block xz stream.
+     * @param out the destination
+     * @param threads number of compression threads
+     * @param blockSize uncompressed size of each block
+     * @param preset compression preset, from 0 to 9
+     * @return a new stream
+     * @throws IOException on I/O error
+     */
+    public static ParallelCompressorOutputStream xz(OutputStream out, int threads, int blockSize, int preset) throws IOException {
+        return new ParallelCompressorOutputStream(out, new XzBlockFormat(preset), threads, blockSize);
+    }
+
+    /**
+     * Writes blocks that were compressed ahead of time by a collecting stream of the
+     * same format. Data written to this stream before is compressed first, so order
+     * is preserved, and the last block of the data may be shorter than the block size.
+     * @param in stream of bare compressed blocks
+     * @param lengths compressed length of each block
+     * @throws IOException on I/O error
+     * @see #getCollectedBlockLengths()
+     */
+    public void writeBlocks(InputStream in, long[] lengths) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        for (long length : lengths) {
+            byte[] compressed = in.readNBytes(Math.toIntExact(length));
+            if (compressed.length != length) {
+                throw new IOException("unexpected end of compressed blocks");
+            }
+            if (pending.size() >= maxPendingBlocks) {
+                writeCompleted(pending.removeFirst());
+            }
+            pending.addLast(CompletableFuture.completedFuture(compressed));
+            anyBlockSubmitted = true;
+        }
+    }
+
+    /**
+     * Gets the compressed length of each block written by a collecting stream.
+     * Valid once the stream has been finished.
+     * @return array of lengths, in order
+     * @throws IllegalStateException if this stream is not collecting or not finished
+     */
+    public long[] getCollectedBlockLengths() {
+        if (collectedLengths == null || !closed) {
+            throw new IllegalStateException("not a finished collecting stream");
+        }
+        return collectedLengths.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Tests whether a format can be written in independent blocks.
+     * @param compression the format
+     * @return true if {@link #create(OutputStream, Compression, int, int, int, boolean)} supports the format
+     */
+    public static boolean isSupported(Compression compression) {
+        return compression == Compression.GZIP || compression == Compression.XZ || compression == Compression.NONE;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (pending.size() >= maxPendingBlocks) {
+            writeCompleted(pending.removeFirst());
+        }
+        byte[] data = block;
+        int length = blockLength;
+        FutureTask<byte[]> task = new FutureTask<>(() -> format.compress(data, length));
+        executor.execute(task);
+        pending.addLast(task);
+        anyBlockSubmitted = true;
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void writeCompleted(Future<byte[]> future) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("compression failed", e.getCause());
+        }
+        if (collectedLengths != null) {
+            out.write(compressed);
+            collectedLengths.add((long) compressed.length);
+        } else {
+            format.writeBlock(compressed, out);
+        }
+    }
+
+    /**
+     * Compresses buffered data, waits for all blocks to be written,
+     * and writes the trailer, if the format has one. Does not close the
+     * underlying stream.
+     * @throws IOException on I/O error
+     */
+    public void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockLength > 0 || (!anyBlockSubmitted && format.requiresBlock() && collectedLengths == null)) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeCompleted(pending.removeFirst());
+            }
+            if (collectedLengths == null) {
+                format.writeTrailer(out);
+            }
+        } finally {
+            // after a failure, blocks that have not been compressed yet are skipped
+            pending.forEach(future -> future.cancel(false));
+            pending.clear();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private interface BlockFormat {
+
+        default void writeHeader(OutputStream out) throws IOException {
+        }
+
+        /**
+         * Compresses a block. Invoked concurrently.
+         */
+        byte[] compress(byte[] data, int length) throws IOException;
+
+        /**
+         * Writes a compressed block. Invoked serially, in input order.
+         */
+        default void writeBlock(byte[] compressed, OutputStream out) throws IOException {
+            out.write(compressed);
+        }
+
+        default void writeTrailer(OutputStream out) throws IOException {
+        }
+
+        /**
+         * Tests whether at least one block must be written, even if the input is empty.
+         */
+        default boolean requiresBlock() {
+            return false;
+        }
+    }
+
+    private static class GzipBlockFormat implements BlockFormat {
+
+        private final int level;
+
+        public GzipBlockFormat(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int length) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(length / 2 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buffer) {{ def.setLevel(level); }}) {
+                gzip.write(data, 0, length);
+            }
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public boolean requiresBlock() {
+            // an empty file is not a valid gzip stream
+            return true;
+        }
+    }
+
+    private static class StoredBlockFormat implements BlockFormat {
+
+        @Override
+        public byte[] compress(byte[] data, int length) {
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * Compresses each block as a complete single-block xz stream and then
+     * reassembles the blocks into one stream with a combined index.
+     * See the <a href="https://tukaani.org/xz/xz-file-format.txt">xz file format</a>.
+     */
+    private static class XzBlockFormat implements BlockFormat {
+
+        private static final byte[] HEADER_MAGIC = {(byte) 0xFD, '7', 'z', 'X', 'Z', 0};
+        private static final byte[] FOOTER_MAGIC = {'Y', 'Z'};
+        private static final int HEADER_SIZE = 12;
+        private static final int FOOTER_SIZE = 12;
+        private static final int CHECK_TYPE = XZ.CHECK_CRC64;
+
+        private final byte[] streamFlags = {0, (byte) CHECK_TYPE};
+        private final List<long[]> records = new ArrayList<>();
+        private final int preset;
+
+        public XzBlockFormat(int preset) {
+            this.preset = preset;
+        }
+
+        @Override
+        public void writeHeader(OutputStream out) throws IOException {
+            out.write(HEADER_MAGIC);
+            out.write(streamFlags);
+            writeCrc32(streamFlags, 0, streamFlags.length, out);
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int length) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(length / 4 + 256);
+            try (XZOutputStream xz = new XZOutputStream(buffer, new LZMA2Options(preset), CHECK_TYPE)) {
+                xz.write(data, 0, length);
+            }
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public void writeBlock(byte[] stream, OutputStream out) throws IOException {
+            if (!Arrays.equals(stream, HEADER_MAGIC.length, HEADER_MAGIC.length + 2, streamFlags, 0, 2)) {
+                throw new IOException("unexpected stream flags in compressed block");
+            }
+            int backwardSize = (int) readUInt32(stream, stream.length - FOOTER_SIZE + 4);
+            int indexSize = (backwardSize + 1) * 4;
+            int indexOffset = stream.length - FOOTER_SIZE - indexSize;
+            // the index of a single-block stream is an indicator byte, a record count of 1, and one record
+            int[] position = {indexOffset + 1};
+            long recordCount = readVarint(stream, position);
+            if (stream[indexOffset] != 0 || recordCount != 1) {
+                throw new IOException("unexpected index in compressed block");
+            }
+            long unpaddedSize = readVarint(stream, position);
+            long uncompressedSize = readVarint(stream, position);
+            records.add(new long[]{unpaddedSize, uncompressedSize});
+            out.write(stream, HEADER_SIZE, indexOffset - HEADER_SIZE);
+        }
+
+        @Override
+        public void writeTrailer(OutputStream out) throws IOException {
+            ByteArrayOutputStream index = new ByteArrayOutputStream(16 + records.size() * 8);
+            index.write(0);
+            writeVarint(records.size(), index);
+            for (long[] record : records) {
+                writeVarint(record[0], index);
+                writeVarint(record[1], index);
+            }
+            while (index.size() % 4 != 0) {
+                index.write(0);
+            }
+            byte[] indexBytes = index.toByteArray();
+            out.write(indexBytes);
+            writeCrc32(indexBytes, 0, indexBytes.length, out);
+            long backwardSize = (indexBytes.length + 4) / 4 - 1;
+            byte[] footerFields = new byte[6];
+            for (int i = 0; i < 4; i++) {
+                footerFields[i] = (byte) (backwardSize >>> (8 * i));
+            }
+            footerFields[4] = streamFlags[0];
+            footerFields[5] = streamFlags[1];
+            writeCrc32(footerFields, 0, footerFields.length, out);
+            out.write(footerFields);
+            out.write(FOOTER_MAGIC);
+        }
+
+        private static void writeCrc32(byte[] data, int off, int len, OutputStream out) throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(data, off, len);
+            long value = crc.getValue();
+            for (int i = 0; i < 4; i++) {
+                out.write((int) (value >>> (8 * i)) & 0xFF);
+            }
+        }
+
+        private static long readUInt32(byte[] data, int off) {
+            long value = 0;
+            for (int i = 0; i < 4; i++) {
+                value |= (data[off + i] & 0xFFL) << (8 * i);
+            }
+            return value;
+        }
+
+        private static void writeVarint(long value, OutputStream out) throws IOException {
+            while (value >= 0x80) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private static long readVarint(byte[] data, int[] position) throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 63; shift += 7) {
+                int b = data[position[0]++] & 0xFF;
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("malformed integer in xz index");
+        }
+    }
+}
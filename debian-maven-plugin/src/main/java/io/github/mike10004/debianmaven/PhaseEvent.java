@@ -0,0 +1,32 @@
+package io.github.mike10004.debianmaven;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a phase of a package build, emitted by {@link BuildReport}.
+ */
+@Name("io.github.mike10004.debianmaven.Phase")
+@Label("Package Build Phase")
+@Category({"Debian Maven Plugin"})
+@Description("A phase of building a Debian package, such as the stage scan or the archiver")
+class PhaseEvent extends Event {
+
+    @Label("Package File")
+    @Description("Filename of the package, or null if the phase is shared by several packages")
+    String packageFilename;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Files")
+    long files;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
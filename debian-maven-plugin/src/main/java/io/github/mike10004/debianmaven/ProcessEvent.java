@@ -0,0 +1,25 @@
+package io.github.mike10004.debianmaven;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a subprocess run by {@link SubprocessProcessRunner},
+ * such as {@code dpkg-deb} or {@code groff}.
+ */
+@Name("io.github.mike10004.debianmaven.Process")
+@Label("Subprocess")
+@Category({"Debian Maven Plugin"})
+@Description("An external program run by the plugin")
+class ProcessEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Exit Code")
+    @Description("Exit code of the process, or -1 if it did not finish")
+    int exitCode;
+}
@@ -1,9 +1,11 @@
 package io.github.mike10004.debianmaven;
 
-import edu.emory.mathcs.backport.java.util.Collections;
 import org.apache.maven.plugin.MojoExecutionException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Map;
 
 public interface ProcessRunner {
@@ -17,6 +19,26 @@ public interface ProcessRunner {
         return runProcessWithOutput(cmd, Collections.emptyMap(), nonzeroExitAction);
     }
 
-    byte[] runProcessWithOutput(String[] cmd, Map<String, String> env, @SuppressWarnings("SameParameterValue") NonzeroProcessExitAction nonzeroExitAction) throws IOException, MojoExecutionException;
+    default byte[] runProcessWithOutput(String[] cmd, Map<String, String> env, @SuppressWarnings("SameParameterValue") NonzeroProcessExitAction nonzeroExitAction) throws IOException, MojoExecutionException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        runProcessWithOutput(cmd, env, buffer, nonzeroExitAction);
+        return buffer.toByteArray();
+    }
+
+    default void runProcessWithOutput(String[] cmd, OutputStream stdoutSink, @SuppressWarnings("SameParameterValue") NonzeroProcessExitAction nonzeroExitAction) throws IOException, MojoExecutionException {
+        runProcessWithOutput(cmd, Collections.emptyMap(), stdoutSink, nonzeroExitAction);
+    }
+
+    /**
+     * Runs a process and writes its standard output to a stream as it is produced.
+     * The stream is not closed.
+     * @param cmd the command line
+     * @param env environment variables
+     * @param stdoutSink destination of the standard output of the process
+     * @param nonzeroExitAction action to perform if the exit code is nonzero
+     * @throws IOException on I/O error
+     * @throws MojoExecutionException if the nonzero exit action throws it or the process times out
+     */
+    void runProcessWithOutput(String[] cmd, Map<String, String> env, OutputStream stdoutSink, @SuppressWarnings("SameParameterValue") NonzeroProcessExitAction nonzeroExitAction) throws IOException, MojoExecutionException;
 
 }
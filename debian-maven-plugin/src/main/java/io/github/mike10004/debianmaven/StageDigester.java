@@ -0,0 +1,152 @@
+package io.github.mike10004.debianmaven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+
+/**
+ * Computes digests of the regular files in a stage manifest.
+ * Files are hashed concurrently on the shared {@link WorkerPool}, and each
+ * worker thread reuses its own read buffer and digest instances. Every algorithm
+ * is updated from the same read buffer, so additional algorithms cost CPU
+ * time but no additional I/O. Each algorithm has its own cache, and a file
+ * whose digests are all found in the caches is not read.
+ */
+public class StageDigester {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final int parallelism;
+    private final Map<DigestAlgorithm, DigestCache> caches;
+    // worker threads are shared by every digester, so their buffers are too
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private final ThreadLocal<MultiDigest> digests;
+
+    /**
+     * Constructs an instance.
+     * @param parallelism maximum number of files hashed concurrently
+     */
+    public StageDigester(int parallelism) {
+        this(parallelism, DigestCache.empty());
+    }
+
+    /**
+     * Constructs an instance.
+     * @param parallelism maximum number of files hashed concurrently
+     * @param cache digest cache; digests computed are stored in it
+     */
+    public StageDigester(int parallelism, DigestCache cache) {
+        this(parallelism, Map.of(DigestAlgorithm.MD5, cache));
+    }
+
+    /**
+     * Constructs an instance.
+     * @param parallelism maximum number of files hashed concurrently
+     * @param caches map of algorithm to the digest cache for that algorithm; the keys
+     *               are the algorithms to compute, and must include MD5
+     */
+    public StageDigester(int parallelism, Map<DigestAlgorithm, DigestCache> caches) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        if (!caches.containsKey(DigestAlgorithm.MD5)) {
+            throw new IllegalArgumentException("MD5 is required: " + caches.keySet());
+        }
+        this.caches = new EnumMap<>(caches);
+        Set<DigestAlgorithm> algorithms = this.caches.keySet();
+        digests = ThreadLocal.withInitial(() -> new MultiDigest(algorithms));
+    }
+
+    public static int getDefaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Computes the MD5 digest of every regular file in a manifest.
+     * @param manifest the manifest
+     * @return map of relative pathname to hex-encoded digest, in manifest order
+     * @throws IOException if a file could not be read
+     */
+    public Map<String, String> digest(StageManifest manifest) throws IOException {
+        return digestAll(manifest).get(DigestAlgorithm.MD5);
+    }
+
+    /**
+     * Computes the digests of every regular file in a manifest with every algorithm.
+     * @param manifest the manifest
+     * @return map of algorithm to map of relative pathname to hex-encoded digest, in manifest order
+     * @throws IOException if a file could not be read
+     */
+    public Map<DigestAlgorithm, Map<String, String>> digestAll(StageManifest manifest) throws IOException {
+        List<StageEntry> files = manifest.regularFiles().collect(Collectors.toList());
+        Executor executor = WorkerPool.limited(parallelism);
+        List<FutureTask<Map<DigestAlgorithm, String>>> futures = new ArrayList<>(files.size());
+        for (StageEntry file : files) {
+            FutureTask<Map<DigestAlgorithm, String>> task = new FutureTask<>(() -> digest(file));
+            futures.add(task);
+            executor.execute(task);
+        }
+        try {
+            // results are collected in submission order, so output order does not depend on completion order
+            Map<DigestAlgorithm, Map<String, String>> result = new EnumMap<>(DigestAlgorithm.class);
+            caches.keySet().forEach(algorithm -> result.put(algorithm, new LinkedHashMap<>(files.size() * 2)));
+            for (int i = 0; i < files.size(); i++) {
+                String relativePath = files.get(i).getRelativePath();
+                futures.get(i).get().forEach((algorithm, digest) -> result.get(algorithm).put(relativePath, digest));
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while computing digests", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("failed to compute digests", e.getCause());
+        } finally {
+            // after a failure, files that have not been read yet are skipped
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+
+    private Map<DigestAlgorithm, String> digest(StageEntry file) throws IOException {
+        Map<DigestAlgorithm, String> cached = new EnumMap<>(DigestAlgorithm.class);
+        for (Map.Entry<DigestAlgorithm, DigestCache> cache : caches.entrySet()) {
+            String digest = cache.getValue().get(file);
+            if (digest == null) {
+                break;
+            }
+            cached.put(cache.getKey(), digest);
+        }
+        if (cached.size() == caches.size()) {
+            return cached;
+        }
+        Map<DigestAlgorithm, String> computed = computeDigests(file);
+        computed.forEach((algorithm, digest) -> caches.get(algorithm).put(file, digest));
+        return computed;
+    }
+
+    private Map<DigestAlgorithm, String> computeDigests(StageEntry file) throws IOException {
+        byte[] buffer = buffers.get();
+        MultiDigest digest = digests.get();
+        // a previous read may have failed part way through
+        digest.reset();
+        try (InputStream in = java.nio.file.Files.newInputStream(file.getPath())) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return digest.finish();
+    }
+}
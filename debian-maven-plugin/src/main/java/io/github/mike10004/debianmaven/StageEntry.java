@@ -0,0 +1,164 @@
+package io.github.mike10004.debianmaven;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.StringJoiner;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Value class that represents a file, directory, or link in a stage directory.
+ */
+public class StageEntry {
+
+    public enum Type {
+        DIRECTORY,
+        FILE,
+        SYMLINK,
+        OTHER
+    }
+
+    private final String relativePath;
+    private final Path path;
+    private final Type type;
+    private final long size;
+    private final int mode;
+    private final long lastModified;
+    @Nullable
+    private final String linkTarget;
+    @Nullable
+    private final String fileKey;
+    @Nullable
+    private final String userName;
+    @Nullable
+    private final String groupName;
+
+    public StageEntry(String relativePath, Path path, Type type, long size, int mode, long lastModified, @Nullable String linkTarget) {
+        this(relativePath, path, type, size, mode, lastModified, linkTarget, null);
+    }
+
+    public StageEntry(String relativePath, Path path, Type type, long size, int mode, long lastModified, @Nullable String linkTarget, @Nullable String fileKey) {
+        this(relativePath, path, type, size, mode, lastModified, linkTarget, fileKey, null, null);
+    }
+
+    public StageEntry(String relativePath, Path path, Type type, long size, int mode, long lastModified, @Nullable String linkTarget, @Nullable String fileKey, @Nullable String userName, @Nullable String groupName) {
+        this.relativePath = requireNonNull(relativePath, "relativePath");
+        this.path = requireNonNull(path, "path");
+        this.type = requireNonNull(type, "type");
+        this.size = size;
+        this.mode = mode;
+        this.lastModified = lastModified;
+        this.linkTarget = linkTarget;
+        this.fileKey = fileKey;
+        this.userName = userName;
+        this.groupName = groupName;
+    }
+
+    /**
+     * Gets the pathname relative to the stage directory, using {@code /} as separator.
+     * This is the empty string for the stage directory itself.
+     * @return relative pathname
+     */
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    /**
+     * Gets the path of the file on disk. This is outside the stage directory
+     * if the entry was mapped from another location.
+     * @return path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isRegularFile() {
+        return type == Type.FILE;
+    }
+
+    /**
+     * Gets the size of the file in bytes, as reported by the filesystem.
+     * @return size
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the permission bits of the file, e.g. {@code 0644}.
+     * @return permission bits
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the last-modified time in milliseconds since the epoch.
+     * @return last-modified time
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Gets the target of the link, if this entry is a symbolic link.
+     * @return link target or null
+     */
+    @Nullable
+    public String getLinkTarget() {
+        return linkTarget;
+    }
+
+    /**
+     * Gets a string that uniquely identifies the file on its filesystem,
+     * such as the device and inode numbers.
+     * @return file key, or null if the filesystem does not provide one
+     * @see java.nio.file.attribute.BasicFileAttributes#fileKey()
+     */
+    @Nullable
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    /**
+     * Gets the name of the user that owns the file in the package.
+     * @return user name, or null for {@code root}
+     */
+    @Nullable
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Gets the name of the group that owns the file in the package.
+     * @return group name, or null for {@code root}
+     */
+    @Nullable
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * Creates a copy of this entry at another relative pathname.
+     * @param relativePath the relative pathname of the copy
+     * @return a new entry
+     */
+    public StageEntry withRelativePath(String relativePath) {
+        return new StageEntry(relativePath, path, type, size, mode, lastModified, linkTarget, fileKey, userName, groupName);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", StageEntry.class.getSimpleName() + "[", "]")
+                .add("relativePath='" + relativePath + "'")
+                .add("type=" + type)
+                .add("size=" + size)
+                .add("mode=" + Integer.toOctalString(mode))
+                .add("linkTarget=" + (linkTarget == null ? "null" : "'" + linkTarget + "'"))
+                .toString();
+    }
+}
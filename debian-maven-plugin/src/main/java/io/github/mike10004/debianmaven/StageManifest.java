@@ -0,0 +1,209 @@
+package io.github.mike10004.debianmaven;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Listing of the contents of a stage directory. A manifest is captured in
+ * a single pass over the file tree, without following links, and the
+ * control file generators and archivers all read from it instead of
+ * walking the tree again. The {@code DEBIAN/} directory is not included.
+ * A manifest may also contain entries whose files are outside the stage
+ * directory; see {@link MappingResolver}.
+ */
+public class StageManifest {
+
+    private final Path stageDir;
+    private final List<StageEntry> entries;
+    private final Map<String, StageEntry> entriesByPath;
+
+    public StageManifest(Path stageDir, List<StageEntry> entries) {
+        this.stageDir = requireNonNull(stageDir, "stageDir");
+        List<StageEntry> sorted = new ArrayList<>(entries);
+        // sorting by pathname guarantees that a directory precedes its contents
+        sorted.sort(Comparator.comparing(StageEntry::getRelativePath));
+        this.entries = Collections.unmodifiableList(sorted);
+        entriesByPath = new HashMap<>(sorted.size() * 2);
+        sorted.forEach(entry -> entriesByPath.put(entry.getRelativePath(), entry));
+    }
+
+    /**
+     * Scans a stage directory.
+     * @param stageDir the stage directory
+     * @return a new manifest
+     * @throws IOException on I/O error
+     */
+    public static StageManifest scan(Path stageDir) throws IOException {
+        List<StageEntry> entries = new ArrayList<>();
+        Path controlDir = stageDir.resolve(JavaDebArchiver.CONTROL_DIR_NAME);
+        java.nio.file.Files.walkFileTree(stageDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(controlDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                entries.add(createEntry(toRelativePath(stageDir, dir), dir, attrs));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                entries.add(createEntry(toRelativePath(stageDir, file), file, attrs));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new StageManifest(stageDir, entries);
+    }
+
+    static StageEntry createEntry(String relativePath, Path path, BasicFileAttributes attrs) throws IOException {
+        return createEntry(relativePath, path, attrs, null, null, null);
+    }
+
+    /**
+     * Creates an entry from file attributes.
+     * @param relativePath pathname of the entry relative to the stage directory
+     * @param path path of the file on disk
+     * @param attrs attributes of the file
+     * @param mode permission bits, or null to use those of the file
+     * @param userName owner, or null for root
+     * @param groupName group, or null for root
+     * @return a new entry
+     * @throws IOException on I/O error
+     */
+    static StageEntry createEntry(String relativePath, Path path, BasicFileAttributes attrs, @Nullable Integer mode, @Nullable String userName, @Nullable String groupName) throws IOException {
+        StageEntry.Type type;
+        String linkTarget = null;
+        if (attrs.isDirectory()) {
+            type = StageEntry.Type.DIRECTORY;
+        } else if (attrs.isSymbolicLink()) {
+            type = StageEntry.Type.SYMLINK;
+            linkTarget = java.nio.file.Files.readSymbolicLink(path).toString();
+        } else if (attrs.isRegularFile()) {
+            type = StageEntry.Type.FILE;
+        } else {
+            type = StageEntry.Type.OTHER;
+        }
+        Object fileKey = attrs.fileKey();
+        int effectiveMode = mode == null || type == StageEntry.Type.SYMLINK ? getMode(path, attrs) : mode;
+        return new StageEntry(relativePath, path, type, attrs.size(), effectiveMode, attrs.lastModifiedTime().toMillis(), linkTarget, fileKey == null ? null : fileKey.toString(), userName, groupName);
+    }
+
+    private static int getMode(Path path, BasicFileAttributes attrs) throws IOException {
+        if (attrs.isSymbolicLink()) {
+            return 0777;
+        }
+        // the attributes are those of the target if the caller followed a link, so the mode is read the same way
+        // the permissions supplied by the walker lack the setuid, setgid and sticky bits, which only the unix view has
+        if (path.getFileSystem().supportedFileAttributeViews().contains("unix") || !(attrs instanceof PosixFileAttributes)) {
+            return readMode(path);
+        }
+        return toMode(((PosixFileAttributes) attrs).permissions());
+    }
+
+    /**
+     * Reads the mode of a file, following links, including the setuid, setgid and sticky bits
+     * if the filesystem exposes them.
+     */
+    static int readMode(Path path) throws IOException {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+            return (Integer) java.nio.file.Files.getAttribute(path, "unix:mode") & 07777;
+        }
+        return toMode(java.nio.file.Files.getPosixFilePermissions(path));
+    }
+
+    static int toMode(Set<PosixFilePermission> permissions) {
+        int mode = 0;
+        for (PosixFilePermission permission : permissions) {
+            mode |= 1 << (8 - permission.ordinal());
+        }
+        return mode;
+    }
+
+    static String toRelativePath(Path root, Path path) {
+        String relativePath = root.relativize(path).toString();
+        if (!"/".equals(path.getFileSystem().getSeparator())) {
+            relativePath = relativePath.replace(path.getFileSystem().getSeparator(), "/");
+        }
+        return relativePath;
+    }
+
+    /**
+     * Gets the manifest of a directory within the stage directory, as if that
+     * directory had been scanned. Its {@code DEBIAN/} directory is excluded.
+     * @param relativeDir pathname of the directory relative to the stage directory,
+     *                    using {@code /} as separator
+     * @return a new manifest, empty if the directory is not in this manifest
+     */
+    public StageManifest subtree(String relativeDir) {
+        if (relativeDir.isEmpty()) {
+            return this;
+        }
+        String prefix = relativeDir + "/";
+        String controlDir = prefix + JavaDebArchiver.CONTROL_DIR_NAME;
+        List<StageEntry> subtreeEntries = new ArrayList<>();
+        for (StageEntry entry : entries) {
+            String relativePath = entry.getRelativePath();
+            if (relativePath.equals(relativeDir)) {
+                subtreeEntries.add(entry.withRelativePath(""));
+            } else if (relativePath.startsWith(prefix) && !relativePath.equals(controlDir) && !relativePath.startsWith(controlDir + "/")) {
+                subtreeEntries.add(entry.withRelativePath(relativePath.substring(prefix.length())));
+            }
+        }
+        return new StageManifest(stageDir.resolve(relativeDir), subtreeEntries);
+    }
+
+    public Path getStageDir() {
+        return stageDir;
+    }
+
+    /**
+     * Gets the list of entries, sorted by relative pathname.
+     * The first entry is the stage directory itself.
+     * @return list of entries
+     */
+    public List<StageEntry> entries() {
+        return entries;
+    }
+
+    public Stream<StageEntry> regularFiles() {
+        return entries.stream().filter(StageEntry::isRegularFile);
+    }
+
+    /**
+     * Gets the entry at a relative pathname.
+     * @param relativePath pathname relative to stage directory, using {@code /} as separator
+     * @return the entry, or null if none exists at the given path
+     */
+    @Nullable
+    public StageEntry get(String relativePath) {
+        return entriesByPath.get(relativePath);
+    }
+
+    /**
+     * Gets the sum of the sizes of all entries other than directories.
+     * @return total size in bytes
+     */
+    public long getTotalSize() {
+        return entries.stream()
+                .filter(entry -> entry.getType() != StageEntry.Type.DIRECTORY)
+                .mapToLong(StageEntry::getSize)
+                .sum();
+    }
+
+}
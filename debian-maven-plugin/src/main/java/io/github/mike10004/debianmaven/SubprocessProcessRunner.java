@@ -1,45 +1,73 @@
 package io.github.mike10004.debianmaven;
 
-import io.github.mike10004.subprocess.ProcessMonitor;
-import io.github.mike10004.subprocess.ProcessResult;
-import io.github.mike10004.subprocess.ScopedProcessTracker;
-import io.github.mike10004.subprocess.StreamContent;
-import io.github.mike10004.subprocess.StreamContext;
-import io.github.mike10004.subprocess.StreamControl;
-import io.github.mike10004.subprocess.Subprocess;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 
 import javax.annotation.Nullable;
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.nio.charset.Charset;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Runs subprocesses and relays their output. The standard output and error streams of
+ * a process are read with large buffers by tasks on a pool of daemon threads that is
+ * shared by every runner in the JVM, and written straight to their consumers. The
+ * process and the reading of its output must complete before a single deadline, after
+ * which the process is destroyed. Once a run returns or throws, its output is no longer
+ * passed to the consumers or the sink, even if a child of the process keeps writing.
+ * Processes still running when the JVM shuts down are destroyed.
+ *
+ * <p>
+ * A runner created by {@link #tailing(Supplier, int, int)} logs output lines at debug
+ * level and keeps the last lines in an {@link OutputTail}, which is logged only if the
+ * process exits with a nonzero code or times out.
+ */
 class SubprocessProcessRunner implements ProcessRunner {
 
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long DESTROY_GRACE_MILLIS = 1000;
+
+    /**
+     * Threads that copy process output. Copying blocks on reads, so the pool is unbounded,
+     * and idle threads are reused by later processes.
+     */
+    private static final ExecutorService PUMPS = createPumps();
+
+    /**
+     * Processes that have been started and not yet stopped, which are destroyed by a
+     * shutdown hook if the JVM exits while they run, for example on Ctrl-C.
+     */
+    static final Set<Process> LIVE_PROCESSES = createLiveProcesses();
+
     private final Supplier<Log> logGetter;
     private final Charset processOutputEncoding;
     private final Duration processTimeout;
     private final BiConsumer<Log, String> processStdoutConsumer;
     private final BiConsumer<Log, String> processStderrConsumer;
+    private final int tailMaxLines;
+    private final int tailMaxChars;
 
     public SubprocessProcessRunner(Supplier<Log> logGetter) {
         this(logGetter, Charset.defaultCharset(), getDefaultProcessTimeout());
@@ -50,80 +78,57 @@ class SubprocessProcessRunner implements ProcessRunner {
     }
 
     public SubprocessProcessRunner(Supplier<Log> logGetter, Charset processOutputEncoding, Duration processTimeout, BiConsumer<Log, String> processStdoutConsumer, BiConsumer<Log, String> processStderrConsumer) {
+        this(logGetter, processOutputEncoding, processTimeout, processStdoutConsumer, processStderrConsumer, 0, 0);
+    }
+
+    /**
+     * Constructs an instance.
+     * @param tailMaxLines maximum number of lines of the tail of the output, or 0 to keep no tail
+     * @param tailMaxChars maximum number of characters of the tail of the output
+     */
+    public SubprocessProcessRunner(Supplier<Log> logGetter, Charset processOutputEncoding, Duration processTimeout, BiConsumer<Log, String> processStdoutConsumer, BiConsumer<Log, String> processStderrConsumer, int tailMaxLines, int tailMaxChars) {
         this.logGetter = requireNonNull(logGetter);
         this.processOutputEncoding = requireNonNull(processOutputEncoding);
         this.processTimeout = requireNonNull(processTimeout);
         this.processStdoutConsumer = requireNonNull(processStdoutConsumer);
         this.processStderrConsumer = requireNonNull(processStderrConsumer);
+        this.tailMaxLines = tailMaxLines;
+        this.tailMaxChars = tailMaxChars;
+    }
+
+    /**
+     * Creates a runner that logs output at debug level and logs the tail of the
+     * output of a process that fails.
+     * @param logGetter log supplier
+     * @param maxLines maximum number of lines of the tail
+     * @param maxChars maximum number of characters of the tail
+     * @return a new runner
+     */
+    public static SubprocessProcessRunner tailing(Supplier<Log> logGetter, int maxLines, int maxChars) {
+        return new SubprocessProcessRunner(logGetter, Charset.defaultCharset(), getDefaultProcessTimeout(), Log::debug, Log::debug, maxLines, maxChars);
     }
 
     public static Duration getDefaultProcessTimeout() {
         return Duration.ofMinutes(15);
     }
 
-    private static class FixedControlStreamContext implements StreamContext<StreamControl, Void, Void> {
-
-        private final StreamControl streamControl;
-
-        private FixedControlStreamContext(StreamControl streamControl) {
-            this.streamControl = streamControl;
-        }
-
-        @Override
-        public StreamControl produceControl() throws IOException {
-            return streamControl;
-        }
-
-        @Override
-        public final StreamContent<Void, Void> transform(int exitCode, StreamControl context) {
-            return StreamContent.absent();
-        }
-
+    private static ExecutorService createPumps() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "deb-process-pump-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    private static class PipePair {
-        public final PipedOutputStream output;
-        public final PipedInputStream input;
-        public PipePair() throws IOException {
-            input = new PipedInputStream();
-            output = new PipedOutputStream(input);
-        }
-    }
-
-    private static class TailingStreamControl implements StreamControl {
-
-        private final PipePair stdoutPipe;
-        private final PipePair stderrPipe;
-
-        public TailingStreamControl() throws IOException {
-            stdoutPipe = new PipePair();
-            stderrPipe = new PipePair();
-        }
-
-        @Override
-        public OutputStream openStdoutSink() throws IOException {
-            return stdoutPipe.output;
-        }
-
-        @Override
-        public OutputStream openStderrSink() {
-            return stderrPipe.output;
-        }
-
-        @Nullable
-        @Override
-        public InputStream openStdinSource() {
-            return null;
-        }
-
-        public InputStream getStdoutPipe() {
-            return stdoutPipe.input;
-        }
-
-        public InputStream getStderrPipe() {
-            return stderrPipe.input;
-        }
-
+    private static Set<Process> createLiveProcesses() {
+        Set<Process> processes = ConcurrentHashMap.newKeySet();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // every process is signalled before any is waited for
+            processes.forEach(Process::destroy);
+            processes.forEach(SubprocessProcessRunner::destroy);
+        }, "deb-process-reaper"));
+        return processes;
     }
 
     private static BiConsumer<Log, String> defaultProcessLineConsumer() {
@@ -132,151 +137,239 @@ class SubprocessProcessRunner implements ProcessRunner {
 
     @Override
     public void runProcess(String[] cmd, Map<String, String> env, NonzeroProcessExitAction nonzeroExitAction) throws IOException, MojoExecutionException {
-        Function<TailingStreamControl, ProcessStreamDrinker> drinkerCreator = new Function<TailingStreamControl, ProcessStreamDrinker>() {
-            @Override
-            public ProcessStreamDrinker apply(TailingStreamControl tailingStreamControl) {
-                return new ProcessTextDrinker(tailingStreamControl::getStdoutPipe, line -> processStdoutConsumer.accept(logGetter.get(), line));
-            }
-        };
-        doRunProcess(cmd, env, nonzeroExitAction, drinkerCreator);
+        doRunProcess(cmd, env, nonzeroExitAction, null);
     }
 
     @Override
-    public byte[] runProcessWithOutput(String[] cmd, Map<String, String> env, NonzeroProcessExitAction nonzeroExitAction) throws IOException, MojoExecutionException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
-        Function<TailingStreamControl, ProcessStreamDrinker> drinkerCreator = new Function<TailingStreamControl, ProcessStreamDrinker>() {
-            @Override
-            public ProcessStreamDrinker apply(TailingStreamControl tailingStreamControl) {
-                return new ProcessByteDrinker(tailingStreamControl::getStdoutPipe, buffer);
-            }
-        };
-        doRunProcess(cmd, env, nonzeroExitAction, drinkerCreator);
-        return buffer.toByteArray();
+    public void runProcessWithOutput(String[] cmd, Map<String, String> env, OutputStream stdoutSink, NonzeroProcessExitAction nonzeroExitAction) throws IOException, MojoExecutionException {
+        doRunProcess(cmd, env, nonzeroExitAction, requireNonNull(stdoutSink, "stdoutSink"));
     }
 
-    private void doRunProcess(String[] cmd, Map<String, String> env, NonzeroProcessExitAction nonzeroExitAction, Function<TailingStreamControl, ProcessStreamDrinker> drinkerCreator) throws IOException, MojoExecutionException {
+    /**
+     * Runs a process.
+     * @param stdoutSink destination of standard output, or null to send each line to the stdout consumer
+     */
+    private void doRunProcess(String[] cmd, Map<String, String> env, NonzeroProcessExitAction nonzeroExitAction, @Nullable OutputStream stdoutSink) throws IOException, MojoExecutionException {
         if (cmd.length < 1) {
             throw new IllegalArgumentException("command must have at least one element (executable)");
         }
-        String executable = cmd[0];
-        List<String> executableArgs = Arrays.asList(cmd).subList(1, cmd.length);
-        TailingStreamControl tailingStreamControl = new TailingStreamControl();
-        FixedControlStreamContext ctx = new FixedControlStreamContext(tailingStreamControl);
-        ProcessResult<Void, Void> result;
-        try (ScopedProcessTracker processTracker = new ScopedProcessTracker()) {
-            ProcessMonitor<Void, Void> monitor = Subprocess.running(executable)
-                    .args(executableArgs)
-                    .env(env)
-                    .build()
-                    .launcher(processTracker)
-                    .output(ctx)
-                    .launch();
-            Thread stdoutThread = new Thread(() -> {
-                ProcessStreamDrinker d = drinkerCreator.apply(tailingStreamControl);
-                d.drink();
-            });
-            Thread stderrThread = new Thread(() -> {
-                ProcessStreamDrinker d = new ProcessTextDrinker(tailingStreamControl::getStderrPipe, line -> processStderrConsumer.accept(logGetter.get(), line));
-                d.drink();
-            });
-            stdoutThread.start();
-            stderrThread.start();
-            doWithTimeout(stdoutThread::join, false);
-            doWithTimeout(stderrThread::join, false);
-            result = doWithTimeoutAndReturn(t -> {
-                return monitor.await(t, TimeUnit.MILLISECONDS);
-            }, true, null);
+        long deadline = System.nanoTime() + processTimeout.toNanos();
+        ProcessBuilder builder = new ProcessBuilder(Arrays.asList(cmd));
+        builder.environment().putAll(env);
+        ProcessEvent event = new ProcessEvent();
+        event.begin();
+        Integer exitCode = null;
+        Process process = null;
+        Pump stdout = null;
+        Pump stderr = null;
+        OutputTail tail = tailMaxLines > 0 ? new OutputTail(tailMaxLines, tailMaxChars) : null;
+        try {
+            process = builder.start();
+            LIVE_PROCESSES.add(process);
+            process.getOutputStream().close();
+            if (stdoutSink == null) {
+                stdout = pumpLines(process.getInputStream(), relay(processStdoutConsumer, tail, ""));
+            } else {
+                stdout = pumpBytes(process.getInputStream(), stdoutSink);
+            }
+            stderr = pumpLines(process.getErrorStream(), relay(processStderrConsumer, tail, "stderr: "));
+            stdout.await(deadline);
+            stderr.await(deadline);
+            if (!process.waitFor(remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                throw new TimeoutException();
+            }
+            exitCode = process.exitValue();
+        } catch (InterruptedException | TimeoutException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // the tail is complete only once the pumps have stopped
+            stop(process, stdout, stderr);
+            if (e instanceof TimeoutException && tail != null) {
+                logTail(tail, cmd);
+            }
+            throw new MojoExecutionException("process execution timed out or was interrupted", e);
+        } finally {
+            stop(process, stdout, stderr);
+            if (process != null) {
+                LIVE_PROCESSES.remove(process);
+            }
+            event.end();
+            // the command line is formatted only if a recording wants the event
+            if (event.shouldCommit()) {
+                event.command = String.join(" ", cmd);
+                event.exitCode = exitCode == null ? -1 : exitCode;
+                event.commit();
+            }
         }
-        int exitCode = result.exitCode();
         if (exitCode != 0) {
             logGetter.get().warn("process exit code: " + exitCode);
+            if (tail != null) {
+                logTail(tail, cmd);
+            }
             nonzeroExitAction.perform(exitCode, cmd);
         }
     }
 
-    private interface BlockingAction<T> {
-        T perform(long millis) throws TimeoutException, InterruptedException;
-    }
-
-    private interface BlockingRunnable {
-        void perform(long millis) throws TimeoutException, InterruptedException;
-    }
-
-    @SuppressWarnings({"SameParameterValue", "RedundantSuppression"})
-    private void doWithTimeout(BlockingRunnable action, boolean throwOnPrematureTermination) throws MojoExecutionException {
-        //noinspection RedundantCast,Convert2Diamond
-        doWithTimeoutAndReturn(new BlockingAction<Void>() {
-
-            @Override
-            public Void perform(long millis) throws TimeoutException, InterruptedException {
-                action.perform(millis);
-                return null;
+    /**
+     * Destroys a process if it is still alive, closes its output streams and closes the pumps
+     * that read them, so that nothing is passed to the consumers or the sink of the caller
+     * after this method returns. Does nothing for pumps that are already closed.
+     */
+    private static void stop(@Nullable Process process, @Nullable Pump... pumps) {
+        if (process != null) {
+            if (process.isAlive()) {
+                destroy(process);
+            }
+            closeQuietly(process.getInputStream());
+            closeQuietly(process.getErrorStream());
+        }
+        for (Pump pump : pumps) {
+            if (pump != null) {
+                pump.close();
             }
-        }, throwOnPrematureTermination, (Void) null);
+        }
     }
 
-    private <T> T doWithTimeoutAndReturn(BlockingAction<T> action, boolean throwOnPrematureTermination, T valueIfNoThrow) throws MojoExecutionException {
+    private static void closeQuietly(InputStream stream) {
         try {
-            return action.perform(processTimeout.toMillis());
-        } catch (InterruptedException | TimeoutException e) {
-            if (throwOnPrematureTermination) {
-                throw new MojoExecutionException("process execution timed out or was interrupted", e);
-            } else {
-                logGetter.get().warn("terminated early from " + action);
-                return valueIfNoThrow;
-            }
+            stream.close();
+        } catch (IOException ignore) {
+            // the pump that reads the stream no longer delivers anything
         }
     }
 
-    private interface IOSupplier<T> {
-        T openStream() throws IOException;
+    private Consumer<String> relay(BiConsumer<Log, String> lineConsumer, @Nullable OutputTail tail, String tailPrefix) {
+        if (tail == null) {
+            return line -> lineConsumer.accept(logGetter.get(), line);
+        }
+        return line -> {
+            lineConsumer.accept(logGetter.get(), line);
+            tail.add(tailPrefix + line);
+        };
     }
 
-    private final class ProcessTextDrinker implements ProcessStreamDrinker {
+    private void logTail(OutputTail tail, String[] cmd) {
+        Log log = logGetter.get();
+        List<String> lines = tail.getLines();
+        if (tail.getDroppedLines() > 0) {
+            log.warn("last " + lines.size() + " lines of output from " + cmd[0] + " (" + tail.getDroppedLines() + " earlier lines omitted):");
+        } else {
+            log.warn("output from " + cmd[0] + ":");
+        }
+        lines.forEach(log::warn);
+    }
 
-        private final IOSupplier<InputStream> inputProvider;
-        private final Consumer<String> lineConsumer;
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
 
-        public ProcessTextDrinker(IOSupplier<InputStream> inputProvider, Consumer<String> lineConsumer) {
-            this.inputProvider = inputProvider;
-            this.lineConsumer = lineConsumer;
+    private static void destroy(Process process) {
+        process.destroy();
+        try {
+            if (!process.waitFor(DESTROY_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
         }
+    }
 
-        public void drink() {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputProvider.openStream(), processOutputEncoding))) {
+    private Pump pumpLines(InputStream input, Consumer<String> lineConsumer) {
+        Pump pump = new Pump();
+        pump.future = PUMPS.submit(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, processOutputEncoding), BUFFER_SIZE)) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    lineConsumer.accept(line);
+                    String delivered = line;
+                    if (!pump.deliver(() -> lineConsumer.accept(delivered))) {
+                        break;
+                    }
                 }
-            } catch (IOException e) {
-                logGetter.get().warn(e);
             }
-        }
-
+            return null;
+        });
+        return pump;
     }
 
-    private interface ProcessStreamDrinker {
-        void drink();
+    /**
+     * Copies a stream to a sink. The sink is not closed.
+     */
+    private static Pump pumpBytes(InputStream input, OutputStream sink) {
+        Pump pump = new Pump();
+        pump.future = PUMPS.submit(() -> {
+            try (InputStream in = input) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    int length = n;
+                    if (!pump.deliver(() -> sink.write(buffer, 0, length))) {
+                        break;
+                    }
+                }
+            }
+            return null;
+        });
+        return pump;
     }
 
-    private final class ProcessByteDrinker implements ProcessStreamDrinker {
-
-        private final IOSupplier<InputStream> inputProvider;
-        private final OutputStream sink;
+    private interface Delivery {
+        void run() throws IOException;
+    }
 
-        public ProcessByteDrinker(IOSupplier<InputStream> inputProvider, OutputStream sink) {
-            this.inputProvider = inputProvider;
-            this.sink = sink;
+    /**
+     * Task that copies one output stream of a process. Once closed, a pump delivers nothing
+     * more to its destination, even if its thread is still blocked reading the stream, as it
+     * may be if a child of the process holds the stream open.
+     */
+    private static final class Pump {
+
+        private Future<?> future;
+        private boolean closed;
+
+        /**
+         * Delivers output to the destination, unless the pump is closed.
+         * @return false if the pump is closed
+         */
+        synchronized boolean deliver(Delivery delivery) throws IOException {
+            if (closed) {
+                return false;
+            }
+            delivery.run();
+            return true;
         }
 
-        public void drink() {
-            try (InputStream inputStream = inputProvider.openStream()) {
-                inputStream.transferTo(sink);
-            } catch (IOException e) {
-                logGetter.get().warn(e);
+        void await(long deadline) throws IOException, InterruptedException, TimeoutException {
+            try {
+                future.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("failed to read process output", e.getCause());
             }
         }
 
+        /**
+         * Closes the pump. A delivery in progress completes first, and the task is
+         * then given a moment to finish before it is cancelled.
+         */
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                future.get(DESTROY_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                future.cancel(true);
+            }
+        }
     }
-
 }
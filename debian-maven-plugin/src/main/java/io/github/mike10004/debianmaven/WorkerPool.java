@@ -0,0 +1,115 @@
+package io.github.mike10004.debianmaven;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded pool of worker threads that hash and compress files. The pool is shared
+ * by every execution of the plugin in the JVM, so modules built concurrently with
+ * {@code mvn -T} divide the workers among themselves instead of each starting
+ * threads for every processor. The number of workers defaults to the number of
+ * available processors and may be set with the {@value #PARALLELISM_PROPERTY}
+ * system property. Idle workers exit after a few seconds.
+ *
+ * <p>
+ * Each client obtains a {@link #limited(int) limited} view of the pool, which runs
+ * at most a given number of the client's tasks at once. A view resubmits its next
+ * task to the pool after each task completes, so clients with long queues do not
+ * starve the others. Tasks must not wait for other tasks of the pool. The pool has
+ * an unbounded queue and is never shut down, so it does not reject tasks.
+ */
+public final class WorkerPool {
+
+    public static final String PARALLELISM_PROPERTY = "deb.workers";
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private static final ThreadPoolExecutor SHARED = createShared();
+
+    private WorkerPool() {
+    }
+
+    private static ThreadPoolExecutor createShared() {
+        int parallelism = getParallelism();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "deb-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     * @return the number of workers
+     */
+    public static int getParallelism() {
+        Integer configured = Integer.getInteger(PARALLELISM_PROPERTY);
+        return configured == null || configured < 1 ? Runtime.getRuntime().availableProcessors() : configured;
+    }
+
+    /**
+     * Creates an executor that runs tasks on the shared workers.
+     * @param parallelism maximum number of tasks of the executor that run at once
+     * @return a new executor
+     */
+    public static Executor limited(int parallelism) {
+        return new LimitedExecutor(SHARED, parallelism);
+    }
+
+    static class LimitedExecutor implements Executor {
+
+        private final Executor delegate;
+        private final int limit;
+        private final Queue<Runnable> queue;
+        private int running;
+
+        public LimitedExecutor(Executor delegate, int limit) {
+            this.delegate = requireNonNull(delegate, "delegate");
+            if (limit < 1) {
+                throw new IllegalArgumentException("parallelism must be positive: " + limit);
+            }
+            this.limit = limit;
+            queue = new ArrayDeque<>();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            requireNonNull(command, "command");
+            synchronized (this) {
+                queue.add(command);
+                if (running >= limit) {
+                    return;
+                }
+                running++;
+            }
+            delegate.execute(this::runNext);
+        }
+
+        private void runNext() {
+            Runnable task;
+            synchronized (this) {
+                task = queue.poll();
+                if (task == null) {
+                    running--;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } finally {
+                // the slot goes to the back of the shared queue, behind the tasks of other clients
+                delegate.execute(this::runNext);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.mike10004.debianmaven;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BuildReportTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void toJson() {
+        BuildReport report = new BuildReport();
+        report.start(null, "scan").stop(3, 1000);
+        report.start("foo \"bar\"\\baz.deb", "package").stop(2, 500);
+        String json = report.toJson();
+        assertTrue(json, json.startsWith("{\n  \"wallMillis\": "));
+        assertTrue(json, json.contains("{\"package\": null, \"phase\": \"scan\", \"wallMillis\": "));
+        assertTrue(json, json.contains("\"files\": 3, \"bytes\": 1000, \"bytesPerSecond\": "));
+        assertTrue(json, json.contains("{\"package\": \"foo \\\"bar\\\"\\\\baz.deb\", \"phase\": \"package\""));
+        assertEquals("summary lines", 2, report.summarize().size());
+    }
+
+    @Test
+    public void toJson_empty() {
+        String json = new BuildReport().toJson();
+        assertTrue(json, json.endsWith("\"phases\": []\n}\n"));
+    }
+
+    @Test
+    public void phase_bytesPerSecond() {
+        assertEquals("throughput", 2_000_000, new BuildReport.Phase(null, "x", 500_000_000L, 1, 1_000_000).getBytesPerSecond());
+        assertEquals("no time", 0, new BuildReport.Phase(null, "x", 0, 1, 1_000_000).getBytesPerSecond());
+    }
+
+    @Test
+    public void flightRecorderEvent() throws Exception {
+        Path recordingFile = temporaryFolder.newFile("phase.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(PhaseEvent.class);
+            recording.start();
+            new BuildReport().start("foo.deb", "scan").stop(3, 1000);
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals("io.github.mike10004.debianmaven.Phase"))
+                .collect(Collectors.toList());
+        assertEquals("events", 1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("package", "foo.deb", event.getString("packageFilename"));
+        assertEquals("phase", "scan", event.getString("phase"));
+        assertEquals("files", 3, event.getLong("files"));
+        assertEquals("bytes", 1000, event.getLong("bytes"));
+    }
+}
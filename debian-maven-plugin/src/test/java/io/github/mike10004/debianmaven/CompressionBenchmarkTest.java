@@ -0,0 +1,103 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionBenchmarkTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void run() throws Exception {
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 200_000) {
+            text.append("the quick brown fox jumps over the lazy dog ");
+        }
+        java.nio.file.Files.writeString(stageDir.resolve("text.txt"), text, StandardCharsets.US_ASCII);
+        byte[] random = new byte[100_000];
+        new Random(CompressionBenchmarkTest.class.getName().hashCode()).nextBytes(random);
+        java.nio.file.Files.write(stageDir.resolve("random.bin"), random);
+        CompressionBenchmark benchmark = new CompressionBenchmark(30_000, List.of(
+                new CompressionBenchmark.Candidate(Compression.NONE, null),
+                new CompressionBenchmark.Candidate(Compression.GZIP, 6)));
+
+        CompressionBenchmark.Report report = benchmark.run(StageManifest.scan(stageDir));
+
+        assertEquals("total size", text.length() + random.length, report.getTotalSize());
+        assertTrue("sample size " + report.getSampleSize(), report.getSampleSize() >= 30_000 && report.getSampleSize() <= 30_002);
+        CompressionBenchmark.Result none = report.getResults().get(0);
+        CompressionBenchmark.Result gzip = report.getResults().get(1);
+        assertEquals("uncompressed", 1.0, none.getRatio(), 0.0);
+        // one third of the sample is random, so gzip can shrink only the text part
+        assertTrue("gzip ratio " + gzip.getRatio(), gzip.getRatio() > 0.3 && gzip.getRatio() < 0.5);
+        assertTrue("format", report.format(1).contains("gzip-6"));
+    }
+
+    @Test
+    public void createSample() throws Exception {
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        // sorted by name, the large files come first and would use up a sample whose shares are rounded up
+        for (char name = 'a'; name <= 'j'; name++) {
+            java.nio.file.Files.writeString(stageDir.resolve(name + ".txt"), String.valueOf(name).repeat(1001), StandardCharsets.US_ASCII);
+        }
+        java.nio.file.Files.writeString(stageDir.resolve("z.txt"), "z".repeat(90), StandardCharsets.US_ASCII);
+        byte[] sample = new CompressionBenchmark(1000, List.of()).createSample(StageManifest.scan(stageDir));
+        String text = new String(sample, StandardCharsets.US_ASCII);
+        assertEquals("sample length", 1000, sample.length);
+        for (char name = 'a'; name <= 'j'; name++) {
+            String share = StringUtils.remove(text, name);
+            int count = text.length() - share.length();
+            assertTrue(name + " share " + count, count >= 99 && count <= 100);
+        }
+        assertTrue("last file sampled", text.endsWith("zzzzzzzz"));
+    }
+
+    @Test
+    public void getDefaultCandidates() {
+        assertTrue("zstd excluded", CompressionBenchmark.getDefaultCandidates(false).stream().noneMatch(candidate -> candidate.getCompression() == Compression.ZSTD));
+        assertTrue("zstd included", CompressionBenchmark.getDefaultCandidates(true).stream().anyMatch(candidate -> candidate.getCompression() == Compression.ZSTD));
+        assertTrue("slowest levels excluded", CompressionBenchmark.getDefaultCandidates(true).stream().map(Object::toString).noneMatch(name -> name.equals("xz-9") || name.equals("zstd-19")));
+    }
+
+    @Test
+    public void choose() {
+        CompressionBenchmark.Result none = result(Compression.NONE, null, 1000, 1);
+        CompressionBenchmark.Result fast = result(Compression.ZSTD, 1, 500, 10);
+        CompressionBenchmark.Result similar = result(Compression.XZ, 6, 495, 100);
+        CompressionBenchmark.Result small = result(Compression.XZ, 9, 300, 1000);
+        CompressionBenchmark.Report report = new CompressionBenchmark.Report(1_000_000, 1000, List.of(none, fast, similar, small));
+
+        assertSame("generous budget", small, report.choose(Duration.ofSeconds(2), 1));
+        assertSame("more threads", small, report.choose(Duration.ofSeconds(1), 2));
+        assertSame("nearly as small and faster", fast, report.choose(Duration.ofMillis(200), 1));
+        assertSame("nothing fits", none, report.choose(Duration.ZERO, 1));
+    }
+
+    @Test
+    public void choose_incompressible() {
+        CompressionBenchmark.Result none = result(Compression.NONE, null, 1000, 1);
+        CompressionBenchmark.Result gzip = result(Compression.GZIP, 6, 1005, 20);
+        CompressionBenchmark.Result xz = result(Compression.XZ, 6, 990, 200);
+        CompressionBenchmark.Report report = new CompressionBenchmark.Report(1_000_000, 1000, List.of(none, gzip, xz));
+
+        assertSame("no compression", none, report.choose(Duration.ofSeconds(60), 1));
+    }
+
+    private static CompressionBenchmark.Result result(Compression compression, Integer level, long outputSize, long elapsedMicros) {
+        return new CompressionBenchmark.Result(new CompressionBenchmark.Candidate(compression, level), 1000, outputSize, Duration.ofNanos(elapsedMicros * 1000));
+    }
+}
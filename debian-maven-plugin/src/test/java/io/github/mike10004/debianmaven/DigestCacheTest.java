@@ -0,0 +1,74 @@
+package io.github.mike10004.debianmaven;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DigestCacheTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoad() throws Exception {
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("cache/foo.md5cache");
+        StageEntry kept = file("usr/share/foo/file with spaces.txt", 10, 1000L, "(dev=1,ino=2)");
+        StageEntry changed = file("usr/share/foo/changed.txt", 20, 2000L, null);
+        StageEntry removed = file("usr/share/foo/removed.txt", 30, 3000L, null);
+        DigestCache cache = DigestCache.load(cacheFile);
+        for (StageEntry entry : List.of(kept, changed, removed)) {
+            assertNull("initially empty", cache.get(entry));
+            cache.put(entry, "digest-" + entry.getSize());
+        }
+        cache.save(cacheFile);
+
+        DigestCache reloaded = DigestCache.load(cacheFile);
+        assertEquals("kept", "digest-10", reloaded.get(kept));
+        assertNull("size changed", reloaded.get(file(changed.getRelativePath(), 21, 2000L, null)));
+        assertNull("mtime changed", reloaded.get(file(changed.getRelativePath(), 20, 2001L, null)));
+        assertNull("inode changed", reloaded.get(file(kept.getRelativePath(), 10, 1000L, "(dev=1,ino=3)")));
+        reloaded.save(cacheFile);
+
+        DigestCache evicted = DigestCache.load(cacheFile);
+        assertEquals("kept", "digest-10", evicted.get(kept));
+        assertNull("entry not looked up is evicted", evicted.get(removed));
+    }
+
+    @Test
+    public void scoped() throws Exception {
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("cache/shared.md5cache");
+        StageEntry entry = file("usr/share/foo/a.txt", 10, 1000L, null);
+        DigestCache shared = DigestCache.load(cacheFile);
+        shared.scoped("foo/").put(entry, "digest-foo");
+        shared.scoped("bar/").put(entry, "digest-bar");
+        shared.save(cacheFile);
+
+        DigestCache reloaded = DigestCache.load(cacheFile);
+        assertEquals("foo", "digest-foo", reloaded.scoped("foo/").get(entry));
+        assertNull("unscoped", reloaded.get(entry));
+        reloaded.scoped("bar/").retainLoaded();
+        reloaded.save(cacheFile);
+
+        DigestCache retained = DigestCache.load(cacheFile);
+        assertEquals("foo looked up", "digest-foo", retained.scoped("foo/").get(entry));
+        assertEquals("bar retained without lookup", "digest-bar", retained.scoped("bar/").get(entry));
+    }
+
+    @Test
+    public void load_malformed() throws Exception {
+        Path cacheFile = temporaryFolder.newFile().toPath();
+        java.nio.file.Files.writeString(cacheFile, "not a cache file\n");
+        DigestCache cache = DigestCache.load(cacheFile);
+        assertNull(cache.get(file("a", 1, 1L, null)));
+    }
+
+    private static StageEntry file(String relativePath, long size, long lastModified, String fileKey) {
+        return new StageEntry(relativePath, Path.of("/nonexistent", relativePath), StageEntry.Type.FILE, size, 0644, lastModified, null, fileKey);
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.mike10004.debianmaven;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileDeduplicatorTest {
+
+    @Test
+    public void findDuplicates() {
+        Path stageDir = Path.of("/stage");
+        StageManifest manifest = new StageManifest(stageDir, List.of(
+                file(stageDir, "c/x.jar", 100, 0644, null),
+                file(stageDir, "a/x.jar", 100, 0644, null),
+                file(stageDir, "b/x.jar", 100, 0644, null),
+                file(stageDir, "d/x.jar", 100, 0755, null),
+                file(stageDir, "e/x.jar", 100, 0644, "foo"),
+                file(stageDir, "f/empty", 0, 0644, null),
+                file(stageDir, "g/empty", 0, 0644, null)));
+        Map<String, String> digests = Map.of(
+                "a/x.jar", "d1", "b/x.jar", "d1", "c/x.jar", "d1", "d/x.jar", "d1", "e/x.jar", "d1",
+                "f/empty", "d0", "g/empty", "d0");
+
+        Map<String, String> duplicates = FileDeduplicator.findDuplicates(manifest, digests);
+
+        assertEquals("duplicates", Map.of("b/x.jar", "a/x.jar", "c/x.jar", "a/x.jar"), duplicates);
+        assertEquals("manifest order", List.of("b/x.jar", "c/x.jar"), List.copyOf(duplicates.keySet()));
+    }
+
+    private static StageEntry file(Path stageDir, String relativePath, long size, int mode, String groupName) {
+        return new StageEntry(relativePath, stageDir.resolve(relativePath), StageEntry.Type.FILE, size, mode, 0L, null, null, null, groupName);
+    }
+}
@@ -125,4 +125,51 @@ public class FilesLinkGeneratorTest {
         }
 
     }
-}
\ No newline at end of file
+    @Test
+    public void createLinks_duplicates() throws IOException, MojoExecutionException {
+        File linksFile = temporaryFolder.newFile();
+        java.nio.file.Files.writeString(linksFile.toPath(),
+                "/usr/share/foo/bin/foo /usr/bin/foo\n" +
+                "/usr/share/foo/bin/foo /usr/bin/foo\n",
+                StandardCharsets.UTF_8);
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        List<Path> created = Collections.synchronizedList(new ArrayList<>());
+        new FilesLinkGenerator(new DefaultLinksLineParser(), (source, link, attrs) -> created.add(link), StandardCharsets.UTF_8)
+                .generateLinks(new File[]{linksFile}, stageDir);
+        assertEquals("links created", Collections.singletonList(stageDir.resolve("usr/bin/foo")), created);
+    }
+
+    @Test
+    public void createLinks_conflict() throws IOException {
+        File linksFile = temporaryFolder.newFile();
+        java.nio.file.Files.writeString(linksFile.toPath(),
+                "/usr/share/foo/bin/foo /usr/bin/foo\n" +
+                "/usr/share/bar/bin/bar /usr/bin/foo\n",
+                StandardCharsets.UTF_8);
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        try {
+            new FilesLinkGenerator().generateLinks(new File[]{linksFile}, stageDir);
+            fail("expected exception");
+        } catch (MojoExecutionException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("/usr/bin/foo"));
+        }
+        assertFalse("no link created", java.nio.file.Files.exists(stageDir.resolve("usr/bin/foo"), java.nio.file.LinkOption.NOFOLLOW_LINKS));
+    }
+
+    @Test
+    public void createLinks_manyDirectories() throws IOException, MojoExecutionException {
+        File linksFile = temporaryFolder.newFile();
+        StringBuilder text = new StringBuilder();
+        int numLinks = 2000;
+        for (int i = 0; i < numLinks; i++) {
+            text.append(String.format("/usr/share/foo/lib/lib%d.jar /usr/lib/foo/group%d/lib%d.jar%n", i, i % 40, i));
+        }
+        java.nio.file.Files.writeString(linksFile.toPath(), text, StandardCharsets.UTF_8);
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        new FilesLinkGenerator().generateLinks(new File[]{linksFile}, stageDir);
+        for (int i = 0; i < numLinks; i++) {
+            Path link = stageDir.resolve(String.format("usr/lib/foo/group%d/lib%d.jar", i % 40, i));
+            assertEquals("target of " + link, "../../../share/foo/lib/lib" + i + ".jar", java.nio.file.Files.readSymbolicLink(link).toString());
+        }
+    }
+}
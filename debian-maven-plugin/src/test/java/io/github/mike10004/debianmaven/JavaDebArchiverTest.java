@@ -0,0 +1,259 @@
+package io.github.mike10004.debianmaven;
+
+import io.github.mike10004.debutils.DebAnalyst;
+import io.github.mike10004.debutils.DebContents;
+import io.github.mike10004.debutils.DebEntry;
+import io.github.mike10004.debutils.DebEntryType;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JavaDebArchiverTest {
+
+    @ClassRule
+    public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void buildPackage() throws Exception {
+        Path stageDir = createStage();
+        File packageFile = temporaryFolder.newFile("foo_1.0-1_all.deb");
+
+        new JavaDebArchiver(temporaryFolder.newFolder().toPath()).buildPackage(StageManifest.scan(stageDir), packageFile.toPath());
+
+        DebAnalyst analyst = DebAnalyst.createNew(packageFile);
+        assertEquals("Package", "foo", analyst.info().getValue("Package"));
+        DebContents contents = analyst.contents();
+        List<DebEntry> index = contents.index();
+        index.forEach(entry -> assertEquals("ownership of " + entry.name, "root:root", entry.ownership));
+        assertNull("control dir must not be in data archive", contents.findEntryByName("/DEBIAN/"));
+        DebEntry executableEntry = contents.findEntryByName("/usr/bin/foo");
+        assertNotNull("executable entry", executableEntry);
+        assertEquals("executable permissions", PosixFilePermissions.fromString("rwxr-xr-x"), executableEntry.getPermissions());
+        DebEntry dataEntry = contents.findEntryByName("/usr/share/foo/data.txt");
+        assertNotNull("data entry", dataEntry);
+        assertEquals("data permissions", PosixFilePermissions.fromString("rw-r--r--"), dataEntry.getPermissions());
+        assertEquals("size", 5, dataEntry.size);
+        DebEntry linkEntry = contents.findEntryByName("/usr/share/foo/data-link.txt");
+        assertNotNull("link entry", linkEntry);
+        assertEquals("link type", DebEntryType.LINK, linkEntry.getEntryType());
+        assertEquals("link target", "data.txt", linkEntry.linkTarget);
+    }
+
+    @Test
+    public void buildPackage_parallelCompression() throws Exception {
+        Random random = new Random(JavaDebArchiverTest.class.getName().hashCode());
+        for (Compression compression : Compression.values()) {
+            Path stageDir = createStage();
+            Path largeFile = stageDir.resolve("usr/share/foo/large.txt");
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 100_000) {
+                text.append(random.nextInt(1000)).append(' ');
+            }
+            java.nio.file.Files.writeString(largeFile, text, StandardCharsets.US_ASCII);
+            File packageFile = temporaryFolder.newFile("foo_1.0-1_all." + compression.getName() + ".deb");
+
+            CompressionSettings controlCompression = CompressionSettings.of(compression);
+            CompressionSettings dataCompression = new CompressionSettings(compression, null, 4, 4096);
+            new JavaDebArchiver(temporaryFolder.newFolder().toPath(), controlCompression, dataCompression).buildPackage(StageManifest.scan(stageDir), packageFile.toPath());
+
+            assertEquals("member names", List.of("debian-binary", "control.tar" + compression.getExtension(), "data.tar" + compression.getExtension()), listArMembers(packageFile));
+            DebAnalyst analyst = DebAnalyst.createNew(packageFile);
+            assertEquals(compression + " control", "foo", analyst.info().getValue("Package"));
+            DebContents contents = analyst.contents();
+            DebEntry largeEntry = contents.findEntryByName("/usr/share/foo/large.txt");
+            assertNotNull(compression + " large file entry", largeEntry);
+            assertEquals(compression + " size", text.length(), largeEntry.size);
+            assertNotNull(compression + " entry after large file", contents.findEntryByName("/usr/share/foo/data.txt"));
+        }
+    }
+
+    @Test
+    public void buildPackage_hardLinks() throws Exception {
+        Path stageDir = createStage();
+        java.nio.file.Files.writeString(stageDir.resolve("usr/share/foo/copy.txt"), "hello", StandardCharsets.US_ASCII);
+        File packageFile = temporaryFolder.newFile("foo_1.0-1_all.hardlinks.deb");
+
+        new JavaDebArchiver(temporaryFolder.newFolder().toPath()).buildPackage(StageManifest.scan(stageDir), packageFile.toPath(), Map.of("usr/share/foo/data.txt", "usr/share/foo/copy.txt"));
+
+        Map<String, TarArchiveEntry> entries = readDataTarEntries(packageFile);
+        TarArchiveEntry linkEntry = entries.get("./usr/share/foo/data.txt");
+        assertTrue("hard link", linkEntry.isLink());
+        assertEquals("link name", "./usr/share/foo/copy.txt", linkEntry.getLinkName());
+        assertEquals("link size", 0, linkEntry.getSize());
+        assertEquals("original size", 5, entries.get("./usr/share/foo/copy.txt").getSize());
+    }
+
+    @Test
+    public void buildPackage_specialModeBits() throws Exception {
+        Path stageDir = createStage();
+        Path helper = stageDir.resolve("usr/bin/foo-helper");
+        java.nio.file.Files.writeString(helper, "#!/bin/sh\n", StandardCharsets.UTF_8);
+        java.nio.file.Files.setAttribute(helper, "unix:mode", 04755);
+        Path spool = java.nio.file.Files.createDirectories(stageDir.resolve("var/spool/foo"));
+        java.nio.file.Files.setAttribute(spool, "unix:mode", 01777);
+        Path shared = java.nio.file.Files.createDirectories(stageDir.resolve("var/lib/foo"));
+        java.nio.file.Files.setAttribute(shared, "unix:mode", 02775);
+        File packageFile = temporaryFolder.newFile("foo_1.0-1_all.special.deb");
+
+        new JavaDebArchiver(temporaryFolder.newFolder().toPath()).buildPackage(StageManifest.scan(stageDir), packageFile.toPath());
+
+        Map<String, TarArchiveEntry> entries = readDataTarEntries(packageFile);
+        assertEquals("setuid file mode", 04755, entries.get("./usr/bin/foo-helper").getMode() & 07777);
+        assertEquals("sticky directory mode", 01777, entries.get("./var/spool/foo/").getMode() & 07777);
+        assertEquals("setgid directory mode", 02775, entries.get("./var/lib/foo/").getMode() & 07777);
+        assertEquals("plain file mode", 0644, entries.get("./usr/share/foo/data.txt").getMode() & 07777);
+    }
+
+    @Test
+    public void buildPackage_digests() throws Exception {
+        Path stageDir = createStage();
+        java.nio.file.Files.writeString(stageDir.resolve("usr/share/foo/copy.txt"), "hello", StandardCharsets.US_ASCII);
+        File packageFile = temporaryFolder.newFile("foo_1.0-1_all.digests.deb");
+        Map<DigestAlgorithm, Map<String, String>> received = new LinkedHashMap<>();
+
+        new JavaDebArchiver(temporaryFolder.newFolder().toPath()).buildPackage(StageManifest.scan(stageDir), packageFile.toPath(), Map.of("usr/share/foo/data.txt", "usr/share/foo/copy.txt"), Set.of(DigestAlgorithm.MD5, DigestAlgorithm.SHA256), digests -> {
+            received.putAll(digests);
+            java.nio.file.Files.writeString(stageDir.resolve("DEBIAN/md5sums"), "written after data archive\n", StandardCharsets.US_ASCII);
+        });
+
+        String helloMd5 = DigestUtils.md5Hex("hello");
+        assertEquals("md5 digests", Map.of("usr/bin/foo", DigestUtils.md5Hex("#!/bin/sh\necho foo\n"), "usr/share/foo/copy.txt", helloMd5, "usr/share/foo/data.txt", helloMd5), received.get(DigestAlgorithm.MD5));
+        String helloSha256 = DigestUtils.sha256Hex("hello");
+        assertEquals("sha256 digests", Map.of("usr/bin/foo", DigestUtils.sha256Hex("#!/bin/sh\necho foo\n"), "usr/share/foo/copy.txt", helloSha256, "usr/share/foo/data.txt", helloSha256), received.get(DigestAlgorithm.SHA256));
+        assertTrue("md5sums in control archive", readTarEntries(packageFile, "control.tar").containsKey("./md5sums"));
+    }
+
+    @Test
+    public void buildPackage_precompressed() throws Exception {
+        Random random = new Random(JavaDebArchiverTest.class.getName().hashCode());
+        for (Compression compression : Compression.values()) {
+            if (!ParallelCompressorOutputStream.isSupported(compression)) {
+                continue;
+            }
+            Path sharedDir = createStage();
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 20_000) {
+                text.append(random.nextInt(1000)).append(' ');
+            }
+            java.nio.file.Files.writeString(sharedDir.resolve("usr/share/foo/large.txt"), text, StandardCharsets.US_ASCII);
+            StageManifest shared = StageManifest.scan(sharedDir);
+            Path archDir = createStage();
+            java.nio.file.Files.createDirectories(archDir.resolve("usr/lib/foo"));
+            java.nio.file.Files.writeString(archDir.resolve("usr/lib/foo/native.so"), "native", StandardCharsets.US_ASCII);
+            List<StageEntry> entries = new ArrayList<>(shared.entries());
+            StageManifest.scan(archDir).entries().stream()
+                    .filter(entry -> shared.get(entry.getRelativePath()) == null)
+                    .forEach(entries::add);
+            StageManifest manifest = new StageManifest(archDir, entries);
+            File packageFile = temporaryFolder.newFile("foo_1.0-1_amd64." + compression.getName() + ".deb");
+            CompressionSettings dataCompression = new CompressionSettings(compression, null, 2, 4096);
+            JavaDebArchiver archiver = new JavaDebArchiver(temporaryFolder.newFolder().toPath(), CompressionSettings.of(Compression.GZIP), dataCompression);
+            Map<DigestAlgorithm, Map<String, String>> received = new LinkedHashMap<>();
+
+            try (JavaDebArchiver.PrecompressedData precompressed = archiver.precompress(shared, Set.of(DigestAlgorithm.MD5))) {
+                archiver.buildPackage(manifest, packageFile.toPath(), Map.of(), Set.of(DigestAlgorithm.MD5), received::putAll, precompressed);
+            }
+
+            Path extracted = temporaryFolder.newFolder().toPath();
+            Process process = new ProcessBuilder("dpkg-deb", "-x", packageFile.getPath(), extracted.toString()).inheritIO().start();
+            assertEquals(compression + " extract exit", 0, process.waitFor());
+            assertEquals(compression + " shared file", text.toString(), java.nio.file.Files.readString(extracted.resolve("usr/share/foo/large.txt"), StandardCharsets.US_ASCII));
+            assertEquals(compression + " arch file", "native", java.nio.file.Files.readString(extracted.resolve("usr/lib/foo/native.so"), StandardCharsets.US_ASCII));
+            List<String> expectedOrder = manifest.regularFiles().map(StageEntry::getRelativePath).collect(Collectors.toList());
+            assertEquals(compression + " digest order", expectedOrder, new ArrayList<>(received.get(DigestAlgorithm.MD5).keySet()));
+            assertEquals(compression + " arch digest", DigestUtils.md5Hex("native"), received.get(DigestAlgorithm.MD5).get("usr/lib/foo/native.so"));
+        }
+    }
+
+    /**
+     * Reads the headers of the entries in the data archive of a package file.
+     * @return map of entry name to entry, in archive order
+     */
+    static Map<String, TarArchiveEntry> readDataTarEntries(File packageFile) throws IOException, CompressorException {
+        return readTarEntries(packageFile, "data.tar");
+    }
+
+    private static Map<String, TarArchiveEntry> readTarEntries(File packageFile, String memberPrefix) throws IOException, CompressorException {
+        try (ArArchiveInputStream ar = new ArArchiveInputStream(new FileInputStream(packageFile))) {
+            ArArchiveEntry member;
+            while ((member = ar.getNextArEntry()) != null) {
+                if (member.getName().startsWith(memberPrefix)) {
+                    InputStream in = new BufferedInputStream(CloseShieldInputStream.wrap(ar));
+                    if (!memberPrefix.equals(member.getName())) {
+                        in = new CompressorStreamFactory().createCompressorInputStream(in);
+                    }
+                    Map<String, TarArchiveEntry> entries = new LinkedHashMap<>();
+                    try (TarArchiveInputStream tar = new TarArchiveInputStream(in)) {
+                        TarArchiveEntry entry;
+                        while ((entry = tar.getNextTarEntry()) != null) {
+                            entries.put(entry.getName(), entry);
+                        }
+                    }
+                    return entries;
+                }
+            }
+        }
+        throw new IOException("no " + memberPrefix + " member in " + packageFile);
+    }
+
+    static List<String> listArMembers(File packageFile) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ArArchiveInputStream ar = new ArArchiveInputStream(new FileInputStream(packageFile))) {
+            ArArchiveEntry entry;
+            while ((entry = ar.getNextArEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
+    private static Path createStage() throws IOException {
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        Path controlDir = java.nio.file.Files.createDirectories(stageDir.resolve("DEBIAN"));
+        java.nio.file.Files.writeString(controlDir.resolve("control"), "Package: foo\n" +
+                "Version: 1.0-1\n" +
+                "Architecture: all\n" +
+                "Maintainer: Jane Doe <jane@doe.com>\n" +
+                "Description: Foo\n" +
+                " The fooest of foos.\n", StandardCharsets.UTF_8);
+        Path executable = stageDir.resolve("usr/bin/foo");
+        java.nio.file.Files.createDirectories(executable.getParent());
+        java.nio.file.Files.writeString(executable, "#!/bin/sh\necho foo\n", StandardCharsets.UTF_8);
+        java.nio.file.Files.setPosixFilePermissions(executable, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Path dataFile = stageDir.resolve("usr/share/foo/data.txt");
+        java.nio.file.Files.createDirectories(dataFile.getParent());
+        java.nio.file.Files.writeString(dataFile, "hello", StandardCharsets.UTF_8);
+        java.nio.file.Files.setPosixFilePermissions(dataFile, PosixFilePermissions.fromString("rw-r--r--"));
+        java.nio.file.Files.createSymbolicLink(stageDir.resolve("usr/share/foo/data-link.txt"), Path.of("data.txt"));
+        return stageDir;
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ManPageRendererTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void render() throws Exception {
+        Path sourceDir = temporaryFolder.newFolder().toPath();
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        Path cacheDir = temporaryFolder.getRoot().toPath().resolve("cache");
+        List<File> sources = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Path source = sourceDir.resolve("page" + i + "." + (1 + i % 8));
+            java.nio.file.Files.writeString(source, "page " + i, StandardCharsets.UTF_8);
+            sources.add(source.toFile());
+        }
+        UpperCaseProcessRunner processRunner = new UpperCaseProcessRunner();
+        ManPageRenderer renderer = new ManPageRenderer(processRunner, cacheDir, 4);
+
+        renderer.render(sources, stageDir);
+        assertEquals("process count", sources.size(), processRunner.count.get());
+        Path page = stageDir.resolve("usr/share/man/man4/page3.4.gz");
+        assertEquals("rendered", "PAGE 3", gunzip(page));
+        Path unchangedPage = stageDir.resolve("usr/share/man/man2/page1.2.gz");
+        long lastModified = java.nio.file.Files.getLastModifiedTime(unchangedPage).toMillis();
+
+        java.nio.file.Files.writeString(sourceDir.resolve("page3.4"), "page 3 revised", StandardCharsets.UTF_8);
+        java.nio.file.Files.delete(stageDir.resolve("usr/share/man/man1/page0.1.gz"));
+        renderer.render(sources, stageDir);
+        assertEquals("only changed page rendered", sources.size() + 1, processRunner.count.get());
+        assertEquals("restored from cache", "PAGE 0", gunzip(stageDir.resolve("usr/share/man/man1/page0.1.gz")));
+        assertEquals("rerendered", "PAGE 3 REVISED", gunzip(page));
+        assertEquals("unchanged page not rewritten", lastModified, java.nio.file.Files.getLastModifiedTime(unchangedPage).toMillis());
+        try (Stream<Path> cached = java.nio.file.Files.list(cacheDir)) {
+            assertEquals("one cache entry per page", sources.size(), cached.count());
+        }
+    }
+
+    @Test
+    public void render_duplicateTarget() throws Exception {
+        Path sourceDir = temporaryFolder.newFolder().toPath();
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        List<File> sources = new ArrayList<>();
+        for (String dir : new String[]{"a", "b"}) {
+            Path source = java.nio.file.Files.createDirectories(sourceDir.resolve(dir)).resolve("foo.1");
+            java.nio.file.Files.writeString(source, "foo from " + dir, StandardCharsets.UTF_8);
+            sources.add(source.toFile());
+        }
+        UpperCaseProcessRunner processRunner = new UpperCaseProcessRunner();
+        try {
+            new ManPageRenderer(processRunner, temporaryFolder.getRoot().toPath().resolve("cache"), 4).render(sources, stageDir);
+            fail("duplicate target accepted");
+        } catch (MojoExecutionException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("usr/share/man/man1/foo.1.gz"));
+        }
+        assertEquals("nothing rendered", 0, processRunner.count.get());
+    }
+
+    private static String gunzip(Path file) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(java.nio.file.Files.readAllBytes(file)))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Process runner that renders a page by converting its content to upper case.
+     */
+    private static class UpperCaseProcessRunner implements ProcessRunner {
+
+        public final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void runProcess(String[] cmd, Map<String, String> env, NonzeroProcessExitAction nonzeroExitAction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void runProcessWithOutput(String[] cmd, Map<String, String> env, OutputStream stdoutSink, NonzeroProcessExitAction nonzeroExitAction) throws IOException {
+            count.incrementAndGet();
+            String content = java.nio.file.Files.readString(Path.of(cmd[cmd.length - 1]), StandardCharsets.UTF_8);
+            stdoutSink.write(content.toUpperCase().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappingResolverTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resolve() throws Exception {
+        Path stageDir = temporaryFolder.newFolder("stage").toPath();
+        java.nio.file.Files.createDirectories(stageDir.resolve("usr/share/doc/foo"));
+        Path repository = temporaryFolder.newFolder("repository").toPath();
+        Artifact lib = artifact("com.example", "lib", null, repository);
+        Artifact sources = artifact("com.example", "lib", "sources", repository);
+        Artifact other = artifact("org.example", "other", null, repository);
+        Path confDir = temporaryFolder.newFolder("conf").toPath();
+        java.nio.file.Files.writeString(confDir.resolve("foo.properties"), "a=b\n", StandardCharsets.UTF_8);
+        java.nio.file.Files.createDirectories(confDir.resolve("sub"));
+        java.nio.file.Files.writeString(confDir.resolve("sub/bar.properties"), "c=d\n", StandardCharsets.UTF_8);
+        java.nio.file.Files.writeString(confDir.resolve("sub/ignored.txt"), "x\n", StandardCharsets.UTF_8);
+        File script = temporaryFolder.newFile("run.sh");
+
+        Mapping libs = new Mapping();
+        libs.setArtifact("com.example:*:jar:");
+        libs.setDestination("/usr/share/foo/lib");
+        Mapping conf = new Mapping();
+        conf.setDirectory(confDir.toFile());
+        conf.setIncludes(new String[]{"**/*.properties"});
+        conf.setDestination("/etc/foo/");
+        conf.setMode("0640");
+        conf.setGroup("foo");
+        Mapping run = new Mapping();
+        run.setFile(script);
+        run.setDestination("/usr/bin/foo");
+        run.setMode("755");
+        MappingResolver resolver = new MappingResolver(List.of(lib, sources, other));
+
+        StageManifest manifest = resolver.resolve(StageManifest.scan(stageDir), List.of(libs, conf, run));
+
+        StageEntry libEntry = manifest.get("usr/share/foo/lib/lib-1.0.jar");
+        assertNotNull("lib entry", libEntry);
+        assertEquals("source path", lib.getFile().toPath(), libEntry.getPath());
+        assertNull("classifier must be empty", manifest.get("usr/share/foo/lib/lib-1.0-sources.jar"));
+        assertNull("other group", manifest.get("usr/share/foo/lib/other-1.0.jar"));
+        StageEntry libDir = manifest.get("usr/share/foo/lib");
+        assertNotNull("parent directory added", libDir);
+        assertEquals("parent directory mode", 0755, libDir.getMode());
+        StageEntry barEntry = manifest.get("etc/foo/sub/bar.properties");
+        assertNotNull("nested file", barEntry);
+        assertEquals("mode", 0640, barEntry.getMode());
+        assertEquals("group", "foo", barEntry.getGroupName());
+        assertNull("user", barEntry.getUserName());
+        assertNull("excluded", manifest.get("etc/foo/sub/ignored.txt"));
+        assertEquals("group of directory within destination", "foo", manifest.get("etc/foo/sub").getGroupName());
+        assertNull("group of directory above destination", manifest.get("etc").getGroupName());
+        assertEquals("renamed file mode", 0755, manifest.get("usr/bin/foo").getMode());
+        assertNotNull("staged entry kept", manifest.get("usr/share/doc/foo"));
+        assertEquals("stage dir first", "", manifest.entries().get(0).getRelativePath());
+    }
+
+    @Test
+    public void resolve_symlinkedFiles() throws Exception {
+        Path stageDir = temporaryFolder.newFolder("stage").toPath();
+        Path repository = temporaryFolder.newFolder("repository").toPath();
+        Path links = temporaryFolder.newFolder("links").toPath();
+        Artifact lib = artifact("com.example", "lib", null, repository);
+        java.nio.file.Files.setPosixFilePermissions(lib.getFile().toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+        lib.setFile(java.nio.file.Files.createSymbolicLink(links.resolve("lib-1.0.jar"), lib.getFile().toPath()).toFile());
+        Path script = temporaryFolder.newFile("run.sh").toPath();
+        java.nio.file.Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Mapping libs = new Mapping();
+        libs.setArtifact("com.example:lib");
+        libs.setDestination("/usr/share/foo/lib");
+        Mapping run = new Mapping();
+        run.setFile(java.nio.file.Files.createSymbolicLink(links.resolve("run"), script).toFile());
+        run.setDestination("/usr/bin/foo");
+
+        StageManifest manifest = new MappingResolver(List.of(lib)).resolve(StageManifest.scan(stageDir), List.of(libs, run));
+
+        StageEntry libEntry = manifest.get("usr/share/foo/lib/lib-1.0.jar");
+        assertNotNull("lib entry", libEntry);
+        assertEquals("lib type", StageEntry.Type.FILE, libEntry.getType());
+        assertEquals("lib mode is that of the link target", 0644, libEntry.getMode());
+        assertEquals("script mode is that of the link target", 0755, manifest.get("usr/bin/foo").getMode());
+    }
+
+    @Test
+    public void resolve_conflict() throws Exception {
+        Path stageDir = temporaryFolder.newFolder("stage").toPath();
+        java.nio.file.Files.createDirectories(stageDir.resolve("usr/bin"));
+        java.nio.file.Files.writeString(stageDir.resolve("usr/bin/foo"), "staged", StandardCharsets.UTF_8);
+        Mapping mapping = new Mapping();
+        mapping.setFile(temporaryFolder.newFile("foo"));
+        mapping.setDestination("/usr/bin/");
+        try {
+            new MappingResolver(List.of()).resolve(StageManifest.scan(stageDir), List.of(mapping));
+            fail("conflict not detected");
+        } catch (MojoExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("already taken"));
+        }
+    }
+
+    @Test
+    public void resolve_invalid() throws Exception {
+        StageManifest staged = StageManifest.scan(temporaryFolder.newFolder("stage").toPath());
+        Mapping relative = new Mapping();
+        relative.setFile(temporaryFolder.newFile("foo"));
+        relative.setDestination("usr/bin/foo");
+        Mapping unmatched = new Mapping();
+        unmatched.setArtifact("com.example:missing");
+        unmatched.setDestination("/usr/share/foo");
+        Mapping badMode = new Mapping();
+        badMode.setFile(temporaryFolder.newFile("bar"));
+        badMode.setDestination("/usr/bin/bar");
+        badMode.setMode("14755");
+        for (Mapping mapping : List.of(relative, unmatched, badMode, new Mapping())) {
+            try {
+                new MappingResolver(List.of()).resolve(staged, List.of(mapping));
+                fail("invalid mapping accepted: " + mapping);
+            } catch (MojoExecutionException ignore) {
+            }
+        }
+    }
+
+    private static Artifact artifact(String groupId, String artifactId, String classifier, Path repository) throws Exception {
+        Artifact artifact = new DefaultArtifact(groupId, artifactId, VersionRange.createFromVersion("1.0"), Artifact.SCOPE_RUNTIME, "jar", classifier, new JarHandler());
+        Path file = repository.resolve(artifactId + "-1.0" + (classifier == null ? "" : "-" + classifier) + ".jar");
+        java.nio.file.Files.writeString(file, groupId + ":" + artifactId, StandardCharsets.UTF_8);
+        artifact.setFile(file.toFile());
+        return artifact;
+    }
+
+    private static class JarHandler implements ArtifactHandler {
+
+        @Override
+        public String getExtension() {
+            return "jar";
+        }
+
+        @Override
+        public String getDirectory() {
+            return null;
+        }
+
+        @Override
+        public String getClassifier() {
+            return null;
+        }
+
+        @Override
+        public String getPackaging() {
+            return "jar";
+        }
+
+        @Override
+        public boolean isIncludesDependencies() {
+            return false;
+        }
+
+        @Override
+        public String getLanguage() {
+            return "java";
+        }
+
+        @Override
+        public boolean isAddedToClasspath() {
+            return true;
+        }
+    }
+}
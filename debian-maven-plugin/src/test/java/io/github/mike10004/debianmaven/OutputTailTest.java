@@ -0,0 +1,40 @@
+package io.github.mike10004.debianmaven;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutputTailTest {
+
+    @Test
+    public void add_lineLimit() {
+        OutputTail tail = new OutputTail(3, 1000);
+        for (int i = 1; i <= 10; i++) {
+            tail.add(String.valueOf(i));
+        }
+        assertEquals("lines", Arrays.asList("8", "9", "10"), tail.getLines());
+        assertEquals("dropped", 7, tail.getDroppedLines());
+    }
+
+    @Test
+    public void add_charLimit() {
+        OutputTail tail = new OutputTail(100, 10);
+        tail.add("aaaa");
+        tail.add("bbbb");
+        tail.add("cccc");
+        assertEquals("lines", Arrays.asList("bbbb", "cccc"), tail.getLines());
+        assertEquals("dropped", 1, tail.getDroppedLines());
+    }
+
+    @Test
+    public void add_longLine() {
+        OutputTail tail = new OutputTail(100, 10);
+        tail.add("short");
+        tail.add("0123456789abcdef");
+        assertEquals("lines", Collections.singletonList("...9abcdef"), tail.getLines());
+        assertEquals("dropped", 1, tail.getDroppedLines());
+    }
+}
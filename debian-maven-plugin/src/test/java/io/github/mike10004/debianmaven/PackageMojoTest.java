@@ -1,29 +1,46 @@
 package io.github.mike10004.debianmaven;
 
+import io.github.mike10004.debutils.DebAnalyst;
+import io.github.mike10004.debutils.DebEntry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class PackageMojoTest {
@@ -190,6 +207,577 @@ public class PackageMojoTest {
         System.out.println(loggedContent);
     }
 
+    @Test
+    public void executeDebMojo_conffilesAndMd5sums() throws Exception {
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        configureMojoDefaultly(mojo);
+        Path stageDir = mojo.stageDir.toPath();
+        Path configFile = stageDir.resolve("etc/foo/foo.conf");
+        configFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.writeString(configFile, "a=b\n", StandardCharsets.UTF_8);
+        Path scriptFile = stageDir.resolve("usr/share/foo/run.sh");
+        scriptFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.writeString(scriptFile, "echo foo\n", StandardCharsets.UTF_8);
+        File linksFile = tempFolder.newFile();
+        java.nio.file.Files.writeString(linksFile.toPath(), "/usr/share/foo/run.sh /usr/bin/foo\n", StandardCharsets.UTF_8);
+        mojo.linksFiles = new File[]{linksFile};
+        java.nio.file.Files.createSymbolicLink(stageDir.resolve("etc/foo/bar.conf"), Path.of("foo.conf"));
+        // a link target long enough to change the size in KiB if links were counted
+        java.nio.file.Files.createSymbolicLink(stageDir.resolve("usr/share/foo/long"), Path.of("x/".repeat(1500)));
+        mojo.executeDebMojo();
+        Path controlDir = stageDir.resolve("DEBIAN");
+        assertEquals("conffiles", List.of("/etc/foo/foo.conf"), java.nio.file.Files.readAllLines(controlDir.resolve("conffiles")));
+        long regularFilesSize = 0;
+        for (String path : new String[]{"etc/foo/foo.conf", "usr/share/doc/foo/copyright", "usr/share/foo/run.sh"}) {
+            regularFilesSize += java.nio.file.Files.size(stageDir.resolve(path));
+        }
+        assertTrue("Installed-Size counts regular files only", java.nio.file.Files.readAllLines(controlDir.resolve("control")).contains("Installed-Size: " + (1 + regularFilesSize / 1024)));
+        List<String> md5sums = java.nio.file.Files.readAllLines(controlDir.resolve("md5sums"));
+        assertEquals("md5sums excluding digests", List.of(
+                "  etc/foo/foo.conf",
+                "  usr/share/doc/foo/copyright",
+                "  usr/share/foo/run.sh"),
+                md5sums.stream().map(line -> line.substring(32)).collect(Collectors.toList()));
+        assertTrue("link created", java.nio.file.Files.isSymbolicLink(stageDir.resolve("usr/bin/foo")));
+    }
+
+    @Test
+    public void executeDebMojo_javaArchiver() throws Exception {
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        configureMojoDefaultly(mojo);
+        mojo.archiver = "java";
+        Path usrShareFile = mojo.stageDir.toPath().resolve("usr/share/foo/run.sh");
+        usrShareFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.write(usrShareFile, Arrays.asList("#!/bin/bash", "echo \"hello, world\""), StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW);
+        mojo.executeDebMojo();
+        File debFile = mojo.getPackageFile();
+        assertTrue("deb file exists", debFile.isFile());
+        DebAnalyst analyst = DebAnalyst.createNew(debFile);
+        assertEquals("Package", "foo", analyst.info().getValue("Package"));
+        assertEquals("Conflicts", "haw", analyst.info().getValue("Conflicts"));
+        assertNotNull("md5sums", analyst.control().getFileText("md5sums"));
+        assertNotNull("run.sh entry", analyst.contents().findEntryByName("/usr/share/foo/run.sh"));
+    }
+
+    @Test
+    public void executeDebMojo_buildReport() throws Exception {
+        LogBucket bucket = new LogBucket();
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        mojo.setLog(bucket);
+        configureMojoDefaultly(mojo);
+        mojo.archiver = "dpkg-deb";
+        Path dataFile = mojo.stageDir.toPath().resolve("usr/share/foo/data.txt");
+        dataFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.writeString(dataFile, "data\n", StandardCharsets.UTF_8);
+        mojo.executeDebMojo();
+        String report = java.nio.file.Files.readString(mojo.targetDir.toPath().resolve("deb-build-report.json"), StandardCharsets.UTF_8);
+        for (String phase : new String[]{"manPages", "copyright", "links", "scan", "conffiles", "control", "checksums", "packagingFiles", "package"}) {
+            assertTrue(phase + " in report", report.contains("\"package\": \"foo_1.2.3-1_all.deb\", \"phase\": \"" + phase + "\""));
+        }
+        assertTrue("summary logged", bucket.dump().contains("Build phases"));
+    }
+
+    @Test
+    public void executeDebMojo_zstd() throws Exception {
+        for (String archiver : new String[]{"dpkg-deb", "java"}) {
+            UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+            configureMojoDefaultly(mojo);
+            mojo.archiver = archiver;
+            mojo.compression = "zstd";
+            mojo.compressionLevel = 19;
+            Path scriptFile = mojo.stageDir.toPath().resolve("usr/share/foo/run.sh");
+            scriptFile.toFile().getParentFile().mkdirs();
+            java.nio.file.Files.writeString(scriptFile, "echo foo\n", StandardCharsets.UTF_8);
+            mojo.executeDebMojo();
+            File debFile = mojo.getPackageFile();
+            List<String> members = JavaDebArchiverTest.listArMembers(debFile);
+            assertEquals(archiver + " data member", "data.tar.zst", members.get(2));
+            DebAnalyst analyst = DebAnalyst.createNew(debFile);
+            assertEquals(archiver + " Package", "foo", analyst.info().getValue("Package"));
+            assertNotNull(archiver + " run.sh entry", analyst.contents().findEntryByName("/usr/share/foo/run.sh"));
+        }
+    }
+
+    @Test
+    public void executeDebMojo_autoCompression() throws Exception {
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        configureMojoDefaultly(mojo);
+        mojo.archiver = "java";
+        mojo.compression = "auto";
+        mojo.compressionTimeBudget = 30;
+        mojo.compressionSampleSize = 1024 * 1024;
+        Path jarFile = mojo.stageDir.toPath().resolve("usr/share/foo/foo.jar");
+        jarFile.toFile().getParentFile().mkdirs();
+        byte[] incompressible = new byte[256 * 1024];
+        new Random(PackageMojoTest.class.getName().hashCode()).nextBytes(incompressible);
+        java.nio.file.Files.write(jarFile, incompressible);
+        LogBucket bucket = new LogBucket();
+        mojo.setLog(bucket);
+        mojo.executeDebMojo();
+        assertTrue("choice logged", bucket.dump().contains("Chose compression"));
+        File debFile = mojo.getPackageFile();
+        DebAnalyst analyst = DebAnalyst.createNew(debFile);
+        assertEquals("Package", "foo", analyst.info().getValue("Package"));
+        assertNotNull("jar entry", analyst.contents().findEntryByName("/usr/share/foo/foo.jar"));
+    }
+
+    @Test
+    public void executeDebMojo_symlinkedMapping() throws Exception {
+        Path jarFile = tempFolder.newFolder().toPath().resolve("foo.jar");
+        java.nio.file.Files.writeString(jarFile, "not really a jar", StandardCharsets.UTF_8);
+        java.nio.file.Files.setPosixFilePermissions(jarFile, PosixFilePermissions.fromString("rw-r--r--"));
+        Path jarLink = java.nio.file.Files.createSymbolicLink(tempFolder.newFolder().toPath().resolve("foo.jar"), jarFile);
+        List<String> staged = new ArrayList<>();
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3") {
+            @Override
+            protected void runProcess(String[] cmd, Map<String, String> env) throws IOException, MojoExecutionException {
+                Path stagedJar = stageDir.toPath().resolve("usr/share/foo/foo.jar");
+                if (java.nio.file.Files.exists(stagedJar, LinkOption.NOFOLLOW_LINKS)) {
+                    staged.add(java.nio.file.Files.isSymbolicLink(stagedJar) + " " + PosixFilePermissions.toString(java.nio.file.Files.getPosixFilePermissions(stagedJar, LinkOption.NOFOLLOW_LINKS)));
+                }
+                super.runProcess(cmd, env);
+            }
+        };
+        configureMojoDefaultly(mojo);
+        mojo.archiver = "dpkg-deb";
+        Mapping mapping = new Mapping();
+        mapping.setFile(jarLink.toFile());
+        mapping.setDestination("/usr/share/foo/");
+        mojo.mappings = new Mapping[]{mapping};
+        mojo.executeDebMojo();
+        assertEquals("staged jar", List.of("false rw-r--r--"), staged);
+        DebEntry jarEntry = DebAnalyst.createNew(mojo.getPackageFile()).contents().findEntryByName("/usr/share/foo/foo.jar");
+        assertNotNull("jar entry", jarEntry);
+        assertEquals("jar entry type", '-', jarEntry.getEntryTypeRaw());
+        assertEquals("jar permissions", PosixFilePermissions.fromString("rw-r--r--"), jarEntry.getPermissions());
+        assertEquals("source permissions", PosixFilePermissions.fromString("rw-r--r--"), java.nio.file.Files.getPosixFilePermissions(jarFile));
+    }
+
+    @Test
+    public void executeDebMojo_dpkgDebThreads() throws Exception {
+        for (boolean multiple : new boolean[]{false, true}) {
+            for (Integer threads : new Integer[]{null, 2}) {
+                List<String> commands = buildWithDpkgDeb(multiple, threads);
+                assertEquals("dpkg-deb runs", multiple ? 2 : 1, commands.size());
+                for (String command : commands) {
+                    assertEquals("threads option only if set: " + command, threads != null, command.contains("--threads-max"));
+                    assertEquals("threads option value: " + command, threads != null, command.contains(" --threads-max=2 "));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds one package, or two concurrently, with the {@code dpkg-deb} archiver.
+     * @return the dpkg-deb commands run
+     */
+    private List<String> buildWithDpkgDeb(boolean multiple, @Nullable Integer compressionThreads) throws Exception {
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3") {
+            @Override
+            protected void runProcess(String[] cmd, Map<String, String> env) throws IOException, MojoExecutionException {
+                if (Arrays.asList(cmd).contains("dpkg-deb")) {
+                    commands.add(String.join(" ", cmd));
+                }
+                super.runProcess(cmd, env);
+            }
+        };
+        configureMojoDefaultly(mojo);
+        mojo.archiver = "dpkg-deb";
+        mojo.compressionThreads = compressionThreads;
+        if (multiple) {
+            BinaryPackage foo = new BinaryPackage();
+            foo.setName("foo");
+            BinaryPackage bar = new BinaryPackage();
+            bar.setName("bar");
+            mojo.packages = new BinaryPackage[]{foo, bar};
+            mojo.packageThreads = 2;
+            for (String name : new String[]{"foo", "bar"}) {
+                Path file = mojo.stageDir.toPath().resolve(name + "/usr/share/" + name + "/data.txt");
+                file.toFile().getParentFile().mkdirs();
+                java.nio.file.Files.writeString(file, name + "\n", StandardCharsets.UTF_8);
+            }
+        }
+        mojo.executeDebMojo();
+        return commands;
+    }
+
+    @Test
+    public void executeDebMojo_mappings() throws Exception {
+        for (String archiver : new String[]{"dpkg-deb", "java"}) {
+            UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+            configureMojoDefaultly(mojo);
+            mojo.archiver = archiver;
+            File libDir = tempFolder.newFolder();
+            java.nio.file.Files.writeString(libDir.toPath().resolve("foo.jar"), "not really a jar", StandardCharsets.UTF_8);
+            java.nio.file.Files.writeString(libDir.toPath().resolve("foo.txt"), "excluded", StandardCharsets.UTF_8);
+            Mapping libs = new Mapping();
+            libs.setDirectory(libDir);
+            libs.setIncludes(new String[]{"*.jar"});
+            libs.setDestination("/usr/share/foo/lib");
+            libs.setGroup("foo");
+            File script = tempFolder.newFile();
+            java.nio.file.Files.writeString(script.toPath(), "echo foo\n", StandardCharsets.UTF_8);
+            Mapping run = new Mapping();
+            run.setFile(script);
+            run.setDestination("/usr/bin/foo");
+            run.setMode("0755");
+            mojo.mappings = new Mapping[]{libs, run};
+            mojo.executeDebMojo();
+            DebAnalyst analyst = DebAnalyst.createNew(mojo.getPackageFile());
+            DebEntry jarEntry = analyst.contents().findEntryByName("/usr/share/foo/lib/foo.jar");
+            assertNotNull(archiver + " jar entry", jarEntry);
+            assertEquals(archiver + " jar ownership", "java".equals(archiver) ? "root/foo" : "root/root", jarEntry.ownership.replace(':', '/'));
+            assertNull(archiver + " excluded entry", analyst.contents().findEntryByName("/usr/share/foo/lib/foo.txt"));
+            DebEntry scriptEntry = analyst.contents().findEntryByName("/usr/bin/foo");
+            assertNotNull(archiver + " script entry", scriptEntry);
+            assertEquals(archiver + " script permissions", PosixFilePermissions.fromString("rwxr-xr-x"), scriptEntry.getPermissions());
+            assertFalse(archiver + " stage left clean", mojo.stageDir.toPath().resolve("usr/bin").toFile().exists());
+            String md5sums = java.nio.file.Files.readString(mojo.stageDir.toPath().resolve("DEBIAN/md5sums"), StandardCharsets.UTF_8);
+            assertTrue(archiver + " md5sums", md5sums.contains("usr/share/foo/lib/foo.jar"));
+        }
+    }
+
+    @Test
+    public void executeDebMojo_deduplicate() throws Exception {
+        byte[] jar = new byte[10_000];
+        new Random(PackageMojoTest.class.getName().hashCode()).nextBytes(jar);
+        for (String archiver : new String[]{"dpkg-deb", "java"}) {
+            UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+            configureMojoDefaultly(mojo);
+            mojo.archiver = archiver;
+            mojo.deduplicate = true;
+            Path stageDir = mojo.stageDir.toPath();
+            for (String app : new String[]{"a", "b"}) {
+                Path jarFile = stageDir.resolve("usr/share/" + app + "/lib/x.jar");
+                jarFile.toFile().getParentFile().mkdirs();
+                java.nio.file.Files.write(jarFile, jar);
+            }
+            Path duplicateFile = stageDir.resolve("usr/share/b/lib/x.jar");
+            Object duplicateInode = java.nio.file.Files.getAttribute(duplicateFile, "unix:ino");
+            mojo.executeDebMojo();
+            assertFalse(archiver + " staged files not linked", java.nio.file.Files.isSameFile(stageDir.resolve("usr/share/a/lib/x.jar"), duplicateFile));
+            assertEquals(archiver + " staged duplicate restored", duplicateInode, java.nio.file.Files.getAttribute(duplicateFile, "unix:ino"));
+            File debFile = mojo.getPackageFile();
+            Map<String, TarArchiveEntry> entries = JavaDebArchiverTest.readDataTarEntries(debFile);
+            assertEquals(archiver + " original size", jar.length, entries.get("./usr/share/a/lib/x.jar").getSize());
+            TarArchiveEntry linkEntry = entries.get("./usr/share/b/lib/x.jar");
+            assertTrue(archiver + " hard link", linkEntry.isLink());
+            assertEquals(archiver + " link name", "./usr/share/a/lib/x.jar", linkEntry.getLinkName());
+            String md5sums = java.nio.file.Files.readString(stageDir.resolve("DEBIAN/md5sums"), StandardCharsets.UTF_8);
+            assertTrue(archiver + " md5sums lists link", md5sums.contains("usr/share/b/lib/x.jar"));
+            Path extracted = tempFolder.newFolder().toPath();
+            Process process = new ProcessBuilder("dpkg-deb", "-x", debFile.getPath(), extracted.toString()).inheritIO().start();
+            assertEquals(archiver + " extract exit", 0, process.waitFor());
+            assertArrayEquals(archiver + " extracted link content", jar, java.nio.file.Files.readAllBytes(extracted.resolve("usr/share/b/lib/x.jar")));
+            try (Stream<Path> leftovers = java.nio.file.Files.list(mojo.targetDir.toPath())) {
+                assertFalse(archiver + " set-aside directory removed", leftovers.anyMatch(path -> path.getFileName().toString().startsWith("deb-duplicates")));
+            }
+        }
+    }
+
+    @Test
+    public void executeDebMojo_digestAlgorithms() throws Exception {
+        for (String archiver : new String[]{"dpkg-deb", "java"}) {
+            for (String output : new String[]{"control", "target"}) {
+                UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+                configureMojoDefaultly(mojo);
+                mojo.archiver = archiver;
+                mojo.digestAlgorithms = new String[]{"sha256"};
+                mojo.digestsOutput = output;
+                Path scriptFile = mojo.stageDir.toPath().resolve("usr/share/foo/run.sh");
+                scriptFile.toFile().getParentFile().mkdirs();
+                java.nio.file.Files.writeString(scriptFile, "echo foo\n", StandardCharsets.UTF_8);
+                mojo.executeDebMojo();
+                DebAnalyst analyst = DebAnalyst.createNew(mojo.getPackageFile());
+                String expected = DigestUtils.sha256Hex("echo foo\n") + "  usr/share/foo/run.sh";
+                String sha256sums;
+                if ("control".equals(output)) {
+                    sha256sums = analyst.control().getFileText("sha256sums");
+                } else {
+                    assertNull(archiver + " sha256sums not in control archive", analyst.control().getFileText("sha256sums"));
+                    sha256sums = java.nio.file.Files.readString(new File(mojo.getPackageFile().getPath() + ".sha256sums").toPath(), StandardCharsets.UTF_8);
+                }
+                assertNotNull(archiver + " " + output + " sha256sums", sha256sums);
+                assertTrue(archiver + " " + output + " sha256sums content", sha256sums.contains(expected));
+                assertNotNull(archiver + " " + output + " md5sums", analyst.control().getFileText("md5sums"));
+            }
+        }
+    }
+
+    @Test
+    public void executeDebMojo_upToDate() throws Exception {
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        configureMojoDefaultly(mojo);
+        mojo.archiver = "java";
+        mojo.upToDateCheck = true;
+        Path scriptFile = mojo.stageDir.toPath().resolve("usr/share/foo/run.sh");
+        scriptFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.writeString(scriptFile, "echo foo\n", StandardCharsets.UTF_8);
+        mojo.executeDebMojo();
+        File debFile = mojo.getPackageFile();
+        assertTrue("deb file exists", debFile.isFile());
+        LogBucket bucket = new LogBucket();
+        mojo.setLog(bucket);
+        assertFalse("unchanged", rebuilds(mojo));
+        assertTrue("up to date logged", bucket.dump().contains("up to date"));
+        assertTrue("deleted", debFile.delete());
+        mojo.executeDebMojo();
+        assertTrue("rebuilt because package file was missing", debFile.isFile());
+
+        java.nio.file.Files.writeString(scriptFile, "echo foobar\n", StandardCharsets.UTF_8);
+        bucket = new LogBucket();
+        mojo.setLog(bucket);
+        assertTrue("rebuilt after stage changed", rebuilds(mojo));
+        assertFalse("not up to date", bucket.dump().contains("up to date"));
+        DebEntry scriptEntry = DebAnalyst.createNew(debFile).contents().findEntryByName("/usr/share/foo/run.sh");
+        assertNotNull("script entry", scriptEntry);
+        assertEquals("size of new content", 12, scriptEntry.size);
+
+        mojo.packageDescription = "The fooest of all foos";
+        assertTrue("rebuilt after control field changed", rebuilds(mojo));
+        assertTrue("new description", DebAnalyst.createNew(debFile).info().getValue("Description").contains("The fooest of all foos"));
+        assertFalse("unchanged after rebuild", rebuilds(mojo));
+
+        Path postinst = tempFolder.newFolder().toPath().resolve("postinst");
+        java.nio.file.Files.writeString(postinst, "#!/bin/sh\necho installed\n", StandardCharsets.UTF_8);
+        java.nio.file.Files.setPosixFilePermissions(postinst, PosixFilePermissions.fromString("rw-r--r--"));
+        mojo.packagingFiles = new File[]{postinst.toFile()};
+        assertTrue("rebuilt after packaging file added", rebuilds(mojo));
+        java.nio.file.Files.setPosixFilePermissions(postinst, PosixFilePermissions.fromString("rwxr-xr-x"));
+        assertTrue("rebuilt after mode of packaging file changed", rebuilds(mojo));
+        assertFalse("unchanged after mode change", rebuilds(mojo));
+    }
+
+    @Test
+    public void executeDebMojo_upToDateCompressionSettings() throws Exception {
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        configureMojoDefaultly(mojo);
+        mojo.archiver = "java";
+        mojo.upToDateCheck = true;
+        mojo.compressionThreads = 1;
+        Path scriptFile = mojo.stageDir.toPath().resolve("usr/share/foo/run.sh");
+        scriptFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.writeString(scriptFile, "echo foo\n", StandardCharsets.UTF_8);
+        mojo.executeDebMojo();
+        assertFalse("unchanged", rebuilds(mojo));
+        mojo.compressionThreads = 2;
+        assertTrue("rebuilt after compressionThreads changed", rebuilds(mojo));
+        mojo.compressionBlockSize = 64 * 1024;
+        assertTrue("rebuilt after compressionBlockSize changed", rebuilds(mojo));
+        mojo.compressionTimeBudget = mojo.compressionTimeBudget + 1;
+        assertTrue("rebuilt after compressionTimeBudget changed", rebuilds(mojo));
+        assertFalse("unchanged again", rebuilds(mojo));
+    }
+
+    /**
+     * Runs a build after backdating the package file.
+     * @return whether the package file was written again
+     */
+    private static boolean rebuilds(PackageMojo mojo) throws Exception {
+        Path debFile = mojo.getPackageFile().toPath();
+        FileTime backdated = FileTime.fromMillis(0);
+        java.nio.file.Files.setLastModifiedTime(debFile, backdated);
+        mojo.executeDebMojo();
+        return !backdated.equals(java.nio.file.Files.getLastModifiedTime(debFile));
+    }
+
+    @Test
+    public void executeDebMojo_packages() throws Exception {
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        configureMojoDefaultly(mojo);
+        mojo.archiver = "java";
+        mojo.hashCache = true;
+        mojo.upToDateCheck = true;
+        BinaryPackage foo = new BinaryPackage();
+        foo.setName("foo");
+        foo.setDependencies(new String[]{"foo-common"});
+        BinaryPackage common = new BinaryPackage();
+        common.setName("foo-common");
+        common.setTitle("Common files for foo");
+        File libDir = tempFolder.newFolder();
+        java.nio.file.Files.writeString(libDir.toPath().resolve("foo.jar"), "not really a jar", StandardCharsets.UTF_8);
+        Mapping libs = new Mapping();
+        libs.setDirectory(libDir);
+        libs.setDestination("/usr/share/foo/lib");
+        common.setMappings(new Mapping[]{libs});
+        mojo.packages = new BinaryPackage[]{foo, common};
+        mojo.packageThreads = 2;
+        Path scriptFile = mojo.stageDir.toPath().resolve("foo/usr/bin/foo");
+        scriptFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.writeString(scriptFile, "echo foo\n", StandardCharsets.UTF_8);
+        Path dataFile = mojo.stageDir.toPath().resolve("foo-common/usr/share/foo/data.txt");
+        dataFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.writeString(dataFile, "data\n", StandardCharsets.UTF_8);
+
+        mojo.executeDebMojo();
+
+        File fooDeb = new File(mojo.targetDir, "foo_1.2.3-1_all.deb");
+        DebAnalyst fooAnalyst = DebAnalyst.createNew(fooDeb);
+        assertEquals("foo Package", "foo", fooAnalyst.info().getValue("Package"));
+        assertEquals("foo Depends", "foo-common", fooAnalyst.info().getValue("Depends"));
+        assertNotNull("foo script", fooAnalyst.contents().findEntryByName("/usr/bin/foo"));
+        assertNull("foo excludes common data", fooAnalyst.contents().findEntryByName("/usr/share/foo/data.txt"));
+        assertNotNull("foo copyright", fooAnalyst.contents().findEntryByName("/usr/share/doc/foo/copyright"));
+        DebAnalyst commonAnalyst = DebAnalyst.createNew(new File(mojo.targetDir, "foo-common_1.2.3-1_all.deb"));
+        assertEquals("common Package", "foo-common", commonAnalyst.info().getValue("Package"));
+        assertEquals("common Depends inherited", "kay", commonAnalyst.info().getValue("Depends"));
+        assertTrue("common title", commonAnalyst.info().getValue("Description").startsWith("Common files for foo"));
+        assertNotNull("common data", commonAnalyst.contents().findEntryByName("/usr/share/foo/data.txt"));
+        assertNotNull("common mapped jar", commonAnalyst.contents().findEntryByName("/usr/share/foo/lib/foo.jar"));
+        assertNull("common excludes foo script", commonAnalyst.contents().findEntryByName("/usr/bin/foo"));
+        String cache = java.nio.file.Files.readString(mojo.targetDir.toPath().resolve("deb-cache/foo.md5cache"), StandardCharsets.UTF_8);
+        assertTrue("shared cache has foo entry", cache.contains(" foo/usr/bin/foo"));
+        assertTrue("shared cache has common entry", cache.contains(" foo-common/usr/share/foo/data.txt"));
+
+        java.nio.file.Files.writeString(dataFile, "changed\n", StandardCharsets.UTF_8);
+        LogBucket bucket = new LogBucket();
+        mojo.setLog(bucket);
+        mojo.executeDebMojo();
+        assertTrue("foo up to date", bucket.dump().contains("up to date: " + fooDeb));
+        cache = java.nio.file.Files.readString(mojo.targetDir.toPath().resolve("deb-cache/foo.md5cache"), StandardCharsets.UTF_8);
+        assertTrue("entry of skipped package retained", cache.contains(" foo/usr/bin/foo"));
+    }
+
+    @Test
+    public void executeDebMojo_packagesInvalid() throws Exception {
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        configureMojoDefaultly(mojo);
+        BinaryPackage foo = new BinaryPackage();
+        foo.setName("foo");
+        BinaryPackage nested = new BinaryPackage();
+        nested.setName("foo-doc");
+        nested.setStageDir(new File(mojo.stageDir, "foo/usr/share/doc"));
+        mojo.packages = new BinaryPackage[]{foo, nested};
+        try {
+            mojo.executeDebMojo();
+            Assert.fail("nested stage directories accepted");
+        } catch (MojoExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("must not contain one another"));
+        }
+    }
+
+    @Test
+    public void executeDebMojo_architectures() throws Exception {
+        for (String archiver : new String[]{"java", "dpkg-deb"}) {
+            UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+            configureMojoDefaultly(mojo);
+            mojo.archiver = archiver;
+            mojo.hashCache = true;
+            mojo.compression = "gzip";
+            Path scriptFile = mojo.stageDir.toPath().resolve("usr/bin/foo");
+            scriptFile.toFile().getParentFile().mkdirs();
+            java.nio.file.Files.writeString(scriptFile, "exec foo-native\n", StandardCharsets.UTF_8);
+            Path amd64Lib = new File(mojo.stageDir.getParentFile(), mojo.stageDir.getName() + "-amd64").toPath().resolve("usr/lib/foo/libfoo.so");
+            amd64Lib.toFile().getParentFile().mkdirs();
+            java.nio.file.Files.writeString(amd64Lib, "amd64\n", StandardCharsets.UTF_8);
+            File arm64Overlay = tempFolder.newFolder();
+            Path arm64Lib = arm64Overlay.toPath().resolve("usr/bin/foo-native");
+            arm64Lib.toFile().getParentFile().mkdirs();
+            java.nio.file.Files.writeString(arm64Lib, "arm64\n", StandardCharsets.UTF_8);
+            Architecture amd64 = new Architecture();
+            amd64.setName("amd64");
+            Architecture arm64 = new Architecture();
+            arm64.setName("arm64");
+            arm64.setOverlayDir(arm64Overlay);
+            mojo.architectures = new Architecture[]{amd64, arm64};
+
+            mojo.executeDebMojo();
+
+            DebAnalyst amd64Analyst = DebAnalyst.createNew(new File(mojo.targetDir, "foo_1.2.3-1_amd64.deb"));
+            assertEquals(archiver + " amd64 Architecture", "amd64", amd64Analyst.info().getValue("Architecture"));
+            assertNotNull(archiver + " amd64 shared script", amd64Analyst.contents().findEntryByName("/usr/bin/foo"));
+            assertNotNull(archiver + " amd64 copyright", amd64Analyst.contents().findEntryByName("/usr/share/doc/foo/copyright"));
+            assertNotNull(archiver + " amd64 overlay", amd64Analyst.contents().findEntryByName("/usr/lib/foo/libfoo.so"));
+            assertNull(archiver + " amd64 excludes arm64 overlay", amd64Analyst.contents().findEntryByName("/usr/bin/foo-native"));
+            DebAnalyst arm64Analyst = DebAnalyst.createNew(new File(mojo.targetDir, "foo_1.2.3-1_arm64.deb"));
+            assertEquals(archiver + " arm64 Architecture", "arm64", arm64Analyst.info().getValue("Architecture"));
+            assertNotNull(archiver + " arm64 shared script", arm64Analyst.contents().findEntryByName("/usr/bin/foo"));
+            assertNotNull(archiver + " arm64 overlay", arm64Analyst.contents().findEntryByName("/usr/bin/foo-native"));
+            assertNull(archiver + " arm64 excludes amd64 overlay", arm64Analyst.contents().findEntryByName("/usr/lib/foo/libfoo.so"));
+            String md5sums = arm64Analyst.control().getFileText("md5sums");
+            assertTrue(archiver + " arm64 md5sums has shared file", md5sums.contains(" usr/bin/foo\n"));
+            assertTrue(archiver + " arm64 md5sums has overlay file", md5sums.contains(" usr/bin/foo-native\n"));
+            String cache = java.nio.file.Files.readString(mojo.targetDir.toPath().resolve("deb-cache/foo.md5cache"), StandardCharsets.UTF_8);
+            assertTrue(archiver + " cache has shared entry", cache.contains(" usr/bin/foo\n"));
+            assertTrue(archiver + " cache has overlay entry", cache.contains(" amd64/usr/lib/foo/libfoo.so\n"));
+        }
+    }
+
+    @Test
+    public void executeDebMojo_reproducible() throws Exception {
+        Assume.assumeTrue("SOURCE_DATE_EPOCH not set", System.getenv(AbstractDebianMojo.SOURCE_DATE_EPOCH) == null);
+        String[][] variants = {{"java", "xz"}, {"java", "gzip"}, {"java", "zstd"}, {"dpkg-deb", "xz"}};
+        for (String[] variant : variants) {
+            String archiver = variant[0], compression = variant[1];
+            byte[] first = buildReproducibly(archiver, compression, 1, 0);
+            byte[] second = buildReproducibly(archiver, compression, 4, 3600_000);
+            assertArrayEquals(archiver + " " + compression + " package bytes", first, second);
+        }
+    }
+
+    /**
+     * Builds a package in reproducible mode from a new stage directory whose files were
+     * modified after the source date epoch. A group-writable file keeps its mode, in the
+     * stage and in the package.
+     */
+    private byte[] buildReproducibly(String archiver, String compression, int threads, long mtimeOffset) throws Exception {
+        UnitTestPackageMojo mojo = new UnitTestPackageMojo("1.2.3");
+        configureMojoDefaultly(mojo);
+        mojo.archiver = archiver;
+        mojo.compression = compression;
+        mojo.compressionThreads = threads;
+        mojo.compressionBlockSize = 64 * 1024;
+        mojo.reproducible = true;
+        mojo.outputTimestamp = "2024-01-01T00:00:00Z";
+        Path stageDir = mojo.stageDir.toPath();
+        Path scriptFile = stageDir.resolve("usr/share/foo/run.sh");
+        Path dataFile = stageDir.resolve("usr/share/foo/data.bin");
+        scriptFile.toFile().getParentFile().mkdirs();
+        java.nio.file.Files.writeString(scriptFile, "echo foo\n", StandardCharsets.UTF_8);
+        byte[] data = new byte[256 * 1024];
+        new Random(PackageMojoTest.class.getName().hashCode()).nextBytes(data);
+        java.nio.file.Files.write(dataFile, data);
+        for (Path file : new Path[]{scriptFile, dataFile}) {
+            java.nio.file.Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw-r--"));
+            java.nio.file.Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + mtimeOffset));
+        }
+        mojo.executeDebMojo();
+        String copyright = java.nio.file.Files.readString(stageDir.resolve("usr/share/doc/foo/copyright"), StandardCharsets.UTF_8);
+        assertTrue("copyright year is that of the epoch", copyright.contains("Copyright 2024 "));
+        assertEquals("staged permissions", PosixFilePermissions.fromString("rw-rw-r--"), java.nio.file.Files.getPosixFilePermissions(dataFile));
+        DebEntry dataEntry = DebAnalyst.createNew(mojo.getPackageFile()).contents().findEntryByName("/usr/share/foo/data.bin");
+        assertNotNull(archiver + " data entry", dataEntry);
+        assertEquals(archiver + " data permissions", PosixFilePermissions.fromString("rw-rw-r--"), dataEntry.getPermissions());
+        return java.nio.file.Files.readAllBytes(mojo.getPackageFile().toPath());
+    }
+
+    @Test
+    public void getPackageVersion_reproducibleSnapshot() throws Exception {
+        Assume.assumeTrue("SOURCE_DATE_EPOCH not set", System.getenv(AbstractDebianMojo.SOURCE_DATE_EPOCH) == null);
+        PackageMojo mojo = new PackageMojo();
+        mojo.setPackageVersion("1.0-SNAPSHOT");
+        mojo.reproducible = true;
+        mojo.outputTimestamp = "2024-02-03T04:05:06+01:00";
+        assertEquals("version", "1.0+202402030305", mojo.getPackageVersion());
+    }
+
+    @Test
+    public void parseSourceDateEpoch() throws Exception {
+        assertEquals("environment takes precedence", Instant.ofEpochSecond(1700000000), AbstractDebianMojo.parseSourceDateEpoch("1700000000", "2024-01-01T00:00:00Z"));
+        assertEquals("seconds", Instant.ofEpochSecond(1704067200), AbstractDebianMojo.parseSourceDateEpoch(null, "1704067200"));
+        assertEquals("date-time", Instant.ofEpochSecond(1704067200), AbstractDebianMojo.parseSourceDateEpoch("", "2024-01-01T01:00:00+01:00"));
+        assertNull("disabled", AbstractDebianMojo.parseSourceDateEpoch(null, "a"));
+        assertNull("unset", AbstractDebianMojo.parseSourceDateEpoch(null, null));
+        for (String[] invalid : new String[][]{{"yesterday", null}, {null, "2024-01-01"}}) {
+            try {
+                AbstractDebianMojo.parseSourceDateEpoch(invalid[0], invalid[1]);
+                Assert.fail("expected exception for " + Arrays.toString(invalid));
+            } catch (MojoExecutionException ignore) {
+            }
+        }
+    }
+
     private static class UnitTestPackageMojo extends PackageMojo {
 
         private final String packageVersionOverride;
@@ -0,0 +1,102 @@
+package io.github.mike10004.debianmaven;
+
+import org.junit.Test;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class ParallelCompressorOutputStreamTest {
+
+    private interface CompressorFactory {
+        OutputStream open(OutputStream out) throws Exception;
+    }
+
+    private interface DecompressorFactory {
+        InputStream open(InputStream in) throws Exception;
+    }
+
+    @Test
+    public void gzip() throws Exception {
+        testRoundTrip(out -> ParallelCompressorOutputStream.gzip(out, 3, 1000, 6), GZIPInputStream::new);
+    }
+
+    @Test
+    public void xz() throws Exception {
+        testRoundTrip(out -> ParallelCompressorOutputStream.xz(out, 3, 1000, 6), XZInputStream::new);
+    }
+
+    @Test
+    public void writeBlocks() throws Exception {
+        byte[] shared = "shared data that is compressed ahead of time; ".repeat(100).getBytes(StandardCharsets.US_ASCII);
+        byte[] before = "before".getBytes(StandardCharsets.US_ASCII);
+        byte[] after = "after".getBytes(StandardCharsets.US_ASCII);
+        for (Compression compression : new Compression[]{Compression.GZIP, Compression.XZ, Compression.NONE}) {
+            ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+            long[] lengths;
+            try (ParallelCompressorOutputStream collector = ParallelCompressorOutputStream.create(blocks, compression, 6, 2, 1000, true)) {
+                collector.write(shared);
+                collector.finish();
+                lengths = collector.getCollectedBlockLengths();
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (ParallelCompressorOutputStream out = ParallelCompressorOutputStream.create(compressed, compression, 6, 2, 1000, false)) {
+                out.write(before);
+                out.writeBlocks(new ByteArrayInputStream(blocks.toByteArray()), lengths);
+                out.write(after);
+            }
+            byte[] decompressed;
+            try (InputStream in = decompress(compression, new ByteArrayInputStream(compressed.toByteArray()))) {
+                decompressed = in.readAllBytes();
+            }
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            expected.write(before);
+            expected.write(shared);
+            expected.write(after);
+            assertArrayEquals(compression.getName(), expected.toByteArray(), decompressed);
+        }
+    }
+
+    private static InputStream decompress(Compression compression, InputStream in) throws Exception {
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(in);
+            case XZ:
+                return new XZInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    private void testRoundTrip(CompressorFactory compressorFactory, DecompressorFactory decompressorFactory) throws Exception {
+        Random random = new Random(ParallelCompressorOutputStreamTest.class.getName().hashCode());
+        // lengths cover empty input, a partial block, an exact multiple of the block size, and many blocks
+        for (int length : new int[]{0, 1, 999, 1000, 3000, 25_123}) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) ('a' + random.nextInt(4));
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = compressorFactory.open(compressed)) {
+                int offset = 0;
+                while (offset < length) {
+                    int n = Math.min(length - offset, 1 + random.nextInt(700));
+                    out.write(data, offset, n);
+                    offset += n;
+                }
+            }
+            byte[] decompressed;
+            try (InputStream in = decompressorFactory.open(new ByteArrayInputStream(compressed.toByteArray()))) {
+                decompressed = in.readAllBytes();
+            }
+            assertArrayEquals("length " + length, data, decompressed);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.mike10004.debianmaven;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class StageDigesterTest {
+
+    @ClassRule
+    public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void digest() throws Exception {
+        Random random = new Random(getClass().getName().hashCode());
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        for (int i = 0; i < 100; i++) {
+            Path file = stageDir.resolve(String.format("dir%d/file%d.bin", i % 7, i));
+            java.nio.file.Files.createDirectories(file.getParent());
+            // vary sizes so that hashes finish out of order
+            byte[] bytes = new byte[random.nextInt(i % 10 == 0 ? 2 * 1024 * 1024 : 1024)];
+            random.nextBytes(bytes);
+            java.nio.file.Files.write(file, bytes);
+        }
+        StageManifest manifest = StageManifest.scan(stageDir);
+
+        Map<String, String> digests = new StageDigester(4).digest(manifest);
+
+        List<String> expectedOrder = manifest.regularFiles().map(StageEntry::getRelativePath).collect(Collectors.toList());
+        assertEquals("order", expectedOrder, new ArrayList<>(digests.keySet()));
+        for (StageEntry file : manifest.regularFiles().collect(Collectors.toList())) {
+            String expected = DigestUtils.md5Hex(java.nio.file.Files.readAllBytes(file.getPath()));
+            assertEquals("md5 of " + file.getRelativePath(), expected, digests.get(file.getRelativePath()));
+        }
+    }
+
+    @Test
+    public void digestAll() throws Exception {
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        java.nio.file.Files.write(stageDir.resolve("a.bin"), new byte[]{1, 2, 3});
+        java.nio.file.Files.write(stageDir.resolve("b.bin"), new byte[70_000]);
+        StageManifest manifest = StageManifest.scan(stageDir);
+        Map<DigestAlgorithm, DigestCache> caches = new EnumMap<>(DigestAlgorithm.class);
+        caches.put(DigestAlgorithm.MD5, DigestCache.empty());
+        caches.put(DigestAlgorithm.SHA256, DigestCache.empty());
+
+        Map<DigestAlgorithm, Map<String, String>> digests = new StageDigester(2, caches).digestAll(manifest);
+
+        assertEquals("algorithms", caches.keySet(), digests.keySet());
+        for (StageEntry file : manifest.regularFiles().collect(Collectors.toList())) {
+            byte[] bytes = java.nio.file.Files.readAllBytes(file.getPath());
+            assertEquals("md5 of " + file.getRelativePath(), DigestUtils.md5Hex(bytes), digests.get(DigestAlgorithm.MD5).get(file.getRelativePath()));
+            assertEquals("sha256 of " + file.getRelativePath(), DigestUtils.sha256Hex(bytes), digests.get(DigestAlgorithm.SHA256).get(file.getRelativePath()));
+        }
+        Path cacheFile = temporaryFolder.newFile().toPath();
+        caches.get(DigestAlgorithm.SHA256).save(cacheFile);
+        StageEntry a = manifest.get("a.bin");
+        assertEquals("cached sha256", DigestUtils.sha256Hex(new byte[]{1, 2, 3}), DigestCache.load(cacheFile).get(a));
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.mike10004.debianmaven;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class StageManifestTest {
+
+    @ClassRule
+    public static final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void scan() throws Exception {
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        java.nio.file.Files.createDirectories(stageDir.resolve("DEBIAN"));
+        java.nio.file.Files.writeString(stageDir.resolve("DEBIAN/control"), "Package: foo\n", StandardCharsets.UTF_8);
+        Path configFile = stageDir.resolve("etc/foo/foo.conf");
+        java.nio.file.Files.createDirectories(configFile.getParent());
+        java.nio.file.Files.writeString(configFile, "a=b\n", StandardCharsets.UTF_8);
+        java.nio.file.Files.setPosixFilePermissions(configFile, PosixFilePermissions.fromString("rw-r-----"));
+        Path binDir = java.nio.file.Files.createDirectories(stageDir.resolve("usr/bin"));
+        java.nio.file.Files.createSymbolicLink(binDir.resolve("foo"), Path.of("../share/foo/foo.sh"));
+        java.nio.file.Files.createSymbolicLink(stageDir.resolve("usr/config"), Path.of("/etc/foo"));
+
+        StageManifest manifest = StageManifest.scan(stageDir);
+
+        List<String> paths = manifest.entries().stream().map(StageEntry::getRelativePath).collect(Collectors.toList());
+        assertEquals("paths", List.of("", "etc", "etc/foo", "etc/foo/foo.conf", "usr", "usr/bin", "usr/bin/foo", "usr/config"), paths);
+        assertNull("control directory excluded", manifest.get("DEBIAN"));
+        StageEntry config = manifest.get("etc/foo/foo.conf");
+        assertNotNull(config);
+        assertEquals("type", StageEntry.Type.FILE, config.getType());
+        assertEquals("size", 4, config.getSize());
+        assertEquals("mode", 0640, config.getMode());
+        StageEntry link = manifest.get("usr/bin/foo");
+        assertNotNull(link);
+        assertEquals("type", StageEntry.Type.SYMLINK, link.getType());
+        assertEquals("target", "../share/foo/foo.sh", link.getLinkTarget());
+        StageEntry dirLink = manifest.get("usr/config");
+        assertNotNull(dirLink);
+        assertEquals("link to directory is not followed", StageEntry.Type.SYMLINK, dirLink.getType());
+        assertEquals("regular files", List.of(config), manifest.regularFiles().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void subtree() throws Exception {
+        Path stageDir = temporaryFolder.newFolder().toPath();
+        java.nio.file.Files.createDirectories(stageDir.resolve("foo/DEBIAN"));
+        java.nio.file.Files.writeString(stageDir.resolve("foo/DEBIAN/control"), "Package: foo\n", StandardCharsets.UTF_8);
+        java.nio.file.Files.createDirectories(stageDir.resolve("foo/usr/bin"));
+        java.nio.file.Files.writeString(stageDir.resolve("foo/usr/bin/foo"), "echo foo\n", StandardCharsets.UTF_8);
+        java.nio.file.Files.createDirectories(stageDir.resolve("foo-doc/usr/share/doc"));
+
+        StageManifest subtree = StageManifest.scan(stageDir).subtree("foo");
+
+        assertEquals("stage dir", stageDir.resolve("foo"), subtree.getStageDir());
+        List<String> paths = subtree.entries().stream().map(StageEntry::getRelativePath).collect(Collectors.toList());
+        assertEquals("paths", List.of("", "usr", "usr/bin", "usr/bin/foo"), paths);
+        assertEquals("path on disk", stageDir.resolve("foo/usr/bin/foo"), subtree.get("usr/bin/foo").getPath());
+    }
+}
@@ -1,15 +1,38 @@
 package io.github.mike10004.debianmaven;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SubprocessProcessRunnerTest extends ProcessRunnerTestBase {
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Override
     protected ProcessRunner createRunner(Supplier<Log> logGetter) {
         return new SubprocessProcessRunner(logGetter);
@@ -29,6 +52,118 @@ public class SubprocessProcessRunnerTest extends ProcessRunnerTestBase {
         assertEquals("output", expectedOutput, output);
     }
 
+    @Test
+    public void runProcessWithOutput_stream() throws Exception {
+        ProcessRunner runner = createRunner(new LogBucket());
+        int numLines = 100000;
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        runner.runProcessWithOutput(new String[]{"seq", String.valueOf(numLines)}, sink, NonzeroProcessExitAction.throwMojoExecutionException());
+        String expected = IntStream.rangeClosed(1, numLines).mapToObj(i -> i + "\n").collect(Collectors.joining());
+        assertEquals("output", expected, sink.toString(StandardCharsets.US_ASCII));
+        sink.write('x'); // sink is not closed
+    }
+
+    @Test
+    public void runProcess_liveProcesses() throws Exception {
+        List<Process> live = new ArrayList<>();
+        BiConsumer<Log, String> recorder = (log, line) -> live.addAll(SubprocessProcessRunner.LIVE_PROCESSES);
+        ProcessRunner runner = new SubprocessProcessRunner(LogBucket::new, StandardCharsets.US_ASCII, SubprocessProcessRunner.getDefaultProcessTimeout(), recorder, recorder);
+        runner.runProcess(new String[]{"echo", "hello"}, NonzeroProcessExitAction.throwMojoExecutionException());
+        assertFalse("process registered while running", live.isEmpty());
+        live.forEach(process -> assertFalse("process unregistered after run", SubprocessProcessRunner.LIVE_PROCESSES.contains(process)));
+    }
+
+    @Test
+    public void runProcess_chattyStderr() throws Exception {
+        int numLines = 100000;
+        AtomicInteger stderrLines = new AtomicInteger();
+        ProcessRunner runner = new SubprocessProcessRunner(LogBucket::new, StandardCharsets.US_ASCII, SubprocessProcessRunner.getDefaultProcessTimeout(),
+                (log, line) -> {}, (log, line) -> stderrLines.incrementAndGet());
+        runner.runProcess(new String[]{"sh", "-c", "seq " + numLines + " >&2"}, NonzeroProcessExitAction.throwMojoExecutionException());
+        assertEquals("stderr lines", numLines, stderrLines.get());
+    }
+
+    @Test
+    public void runProcess_tailing_success() throws Exception {
+        LogBucket bucket = new LogBucket();
+        SubprocessProcessRunner.tailing(() -> bucket, 10, 1000).runProcess(new String[]{"seq", "500"}, NonzeroProcessExitAction.throwMojoExecutionException());
+        assertEquals("output", "", bucket.dump());
+    }
+
+    @Test
+    public void runProcess_tailing_failure() throws Exception {
+        LogBucket bucket = new LogBucket();
+        // stdout and stderr are read concurrently, so lines of the two streams are written by separate commands
+        SubprocessProcessRunner.tailing(() -> bucket, 10, 1000).runProcess(new String[]{"sh", "-c", "seq 500; exit 2"}, NonzeroProcessExitAction.doNothing());
+        String output = bucket.dump();
+        assertTrue(output, output.contains(String.format("[WARNING] last 10 lines of output from sh (490 earlier lines omitted):%n")));
+        assertTrue(output, output.contains(String.format("[WARNING] 500%n")));
+        assertTrue(output, output.contains(String.format("[WARNING] 491%n")));
+        assertFalse(output, output.contains(String.format("[WARNING] 490%n")));
+        LogBucket stderrBucket = new LogBucket();
+        SubprocessProcessRunner.tailing(() -> stderrBucket, 10, 1000).runProcess(new String[]{"sh", "-c", "echo oops >&2; exit 2"}, NonzeroProcessExitAction.doNothing());
+        String stderrOutput = stderrBucket.dump();
+        assertTrue(stderrOutput, stderrOutput.contains(String.format("[WARNING] output from sh:%n")));
+        assertTrue(stderrOutput, stderrOutput.contains(String.format("[WARNING] stderr: oops%n")));
+    }
+
+    @Test
+    public void runProcess_timeout() throws Exception {
+        ProcessRunner runner = new SubprocessProcessRunner(LogBucket::new, StandardCharsets.US_ASCII, Duration.ofMillis(300));
+        long start = System.nanoTime();
+        try {
+            runner.runProcess(new String[]{"sleep", "30"}, NonzeroProcessExitAction.doNothing());
+            fail("expected timeout");
+        } catch (MojoExecutionException expected) {
+            assertTrue("cause", expected.getCause() instanceof TimeoutException);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("elapsed " + elapsedMillis + " ms", elapsedMillis < 10_000);
+    }
+
+    @Test
+    public void runProcess_timeoutStopsDelivery() throws Exception {
+        AtomicInteger lines = new AtomicInteger();
+        // a slow consumer leaves lines buffered in the reader when the process times out
+        BiConsumer<Log, String> slowConsumer = (log, line) -> {
+            lines.incrementAndGet();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        ProcessRunner runner = new SubprocessProcessRunner(LogBucket::new, StandardCharsets.US_ASCII, Duration.ofMillis(1000), slowConsumer, slowConsumer);
+        try {
+            runner.runProcess(new String[]{"sh", "-c", "seq 1000000; sleep 30"}, NonzeroProcessExitAction.doNothing());
+            fail("expected timeout");
+        } catch (MojoExecutionException expected) {
+            assertTrue("cause", expected.getCause() instanceof TimeoutException);
+        }
+        int linesOnReturn = lines.get();
+        assertTrue("output delivered before timeout", linesOnReturn > 0);
+        Thread.sleep(300);
+        assertEquals("lines delivered after return", linesOnReturn, lines.get());
+    }
+
+    @Test
+    public void flightRecorderEvent() throws Exception {
+        Path recordingFile = temporaryFolder.newFile("process.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(ProcessEvent.class);
+            recording.start();
+            createRunner(new LogBucket()).runProcess(new String[]{"sh", "-c", "exit 3"}, NonzeroProcessExitAction.doNothing());
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals("io.github.mike10004.debianmaven.Process"))
+                .collect(Collectors.toList());
+        assertEquals("events", 1, events.size());
+        assertEquals("command", "sh -c exit 3", events.get(0).getString("command"));
+        assertEquals("exit code", 3, events.get(0).getInt("exitCode"));
+    }
+
     @Test // in case of race condition in the implementation
     public void testEchoManyTimes() throws Exception {
         Random random = new Random(getClass().getName().hashCode());
@@ -0,0 +1,80 @@
+package io.github.mike10004.debianmaven;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkerPoolTest {
+
+    @Test
+    public void limited() throws Exception {
+        ExecutorService delegate = Executors.newFixedThreadPool(8);
+        try {
+            Executor executor = new WorkerPool.LimitedExecutor(delegate, 3);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            List<FutureTask<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                int value = i;
+                FutureTask<Integer> task = new FutureTask<>(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(2);
+                    running.decrementAndGet();
+                    return value;
+                });
+                tasks.add(task);
+                executor.execute(task);
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                assertEquals("result", i, tasks.get(i).get(5, TimeUnit.SECONDS).intValue());
+            }
+            assertTrue("at most 3 tasks at once: " + maxRunning.get(), maxRunning.get() <= 3);
+            assertTrue("tasks ran concurrently: " + maxRunning.get(), maxRunning.get() > 1);
+        } finally {
+            delegate.shutdownNow();
+        }
+    }
+
+    @Test
+    public void limited_taskFails() throws Exception {
+        List<Throwable> uncaught = new CopyOnWriteArrayList<>();
+        ExecutorService delegate = Executors.newSingleThreadExecutor(recordingThreadFactory(uncaught));
+        try {
+            Executor executor = new WorkerPool.LimitedExecutor(delegate, 1);
+            executor.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+            FutureTask<String> next = new FutureTask<>(() -> "ran");
+            executor.execute(next);
+            assertEquals("task after failed task", "ran", next.get(5, TimeUnit.SECONDS));
+            // the slot resubmits itself before the worker takes this task, so shutdown rejects nothing
+            delegate.submit(() -> {}).get(5, TimeUnit.SECONDS);
+        } finally {
+            delegate.shutdown();
+            assertTrue("terminated", delegate.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals("failure reported to the worker thread", 1, uncaught.size());
+        assertEquals("failure", "failed", uncaught.get(0).getMessage());
+    }
+
+    private static ThreadFactory recordingThreadFactory(List<Throwable> uncaught) {
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler((t, e) -> uncaught.add(e));
+            return thread;
+        };
+    }
+}